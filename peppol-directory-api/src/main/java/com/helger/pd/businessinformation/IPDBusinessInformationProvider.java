@@ -41,4 +41,21 @@ public interface IPDBusinessInformationProvider
    */
   @Nullable
   PDExtendedBusinessInformation getBusinessInformation (@Nonnull IPeppolParticipantIdentifier aParticipantID);
+
+  /**
+   * Get the key of the remote host that is queried to retrieve the business
+   * information of the given participant ID. All participants with the same
+   * host key share the per-host concurrency limit and circuit breaker of the
+   * indexer.
+   *
+   * @param aParticipantID
+   *        PEPPOL participant ID. May not be <code>null</code>.
+   * @return <code>null</code> if no remote host is involved or if the host
+   *         cannot be determined. This is the default.
+   */
+  @Nullable
+  default String getHostKey (@Nonnull final IPeppolParticipantIdentifier aParticipantID)
+  {
+    return null;
+  }
 }
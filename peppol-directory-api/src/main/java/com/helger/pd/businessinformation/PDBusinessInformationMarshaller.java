@@ -19,7 +19,9 @@ package com.helger.pd.businessinformation;
 import java.util.List;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.xml.bind.JAXBElement;
+import javax.xml.validation.Schema;
 
 import com.helger.commons.collection.CollectionHelper;
 import com.helger.commons.io.resource.ClassPathResource;
@@ -38,12 +40,43 @@ public class PDBusinessInformationMarshaller extends AbstractJAXBMarshaller <PDB
   /** XSD resources */
   public static final List <? extends IReadableResource> BUSINESS_INFORMATION_XSDS = CollectionHelper.newUnmodifiableList (new ClassPathResource ("/schemas/peppol-directory-business-information-20151103.xsd"));
 
+  private final boolean m_bValidationEnabled;
+
   /**
-   * Constructor
+   * Constructor with XML Schema validation enabled.
    */
   public PDBusinessInformationMarshaller ()
+  {
+    this (true);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param bValidationEnabled
+   *        <code>true</code> to validate read and written documents against
+   *        {@link #BUSINESS_INFORMATION_XSDS}, <code>false</code> to skip the
+   *        validation.
+   */
+  public PDBusinessInformationMarshaller (final boolean bValidationEnabled)
   {
     super (PDBusinessInformationType.class, BUSINESS_INFORMATION_XSDS);
+    m_bValidationEnabled = bValidationEnabled;
+  }
+
+  /**
+   * @return <code>true</code> if XML Schema validation is enabled.
+   */
+  public final boolean isValidationEnabled ()
+  {
+    return m_bValidationEnabled;
+  }
+
+  @Override
+  @Nullable
+  protected Schema createValidationSchema ()
+  {
+    return m_bValidationEnabled ? super.createValidationSchema () : null;
   }
 
   @Override
@@ -1,18 +1,26 @@
 package com.helger.pd.businessinformation;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.collection.CollectionHelper;
+import com.helger.commons.messagedigest.EMessageDigestAlgorithm;
+import com.helger.commons.messagedigest.IMessageDigestGenerator;
+import com.helger.commons.messagedigest.NonBlockingMessageDigestGenerator;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.peppol.identifier.IDocumentTypeIdentifier;
+import com.helger.peppol.identifier.IdentifierHelper;
 import com.helger.peppol.identifier.doctype.SimpleDocumentTypeIdentifier;
 
 /**
@@ -61,6 +69,71 @@ public class PDExtendedBusinessInformation
     return CollectionHelper.newList (m_aDocumentTypeIDs);
   }
 
+  /**
+   * Add a single value to the canonical form. Each value is terminated by a 0
+   * byte, and <code>null</code> is represented by a 1 byte - both may not
+   * occur in XML text.
+   */
+  private static void _updateCanonical (@Nonnull final IMessageDigestGenerator aMDGen, @Nullable final String sValue)
+  {
+    if (sValue == null)
+      aMDGen.update ((byte) 1);
+    else
+      aMDGen.update (sValue, StandardCharsets.UTF_8);
+    aMDGen.update ((byte) 0);
+  }
+
+  /**
+   * Get a stable hash value of the content of this object. It is calculated
+   * over a canonical form of all entities plus the document type IDs, so it
+   * only changes if the content changes. The order of the document type IDs
+   * and duplicate document type IDs are not considered, whereas the order of
+   * the entities and their elements is, because it is visible in the index.
+   *
+   * @return The hex encoded SHA-256 hash value. Never <code>null</code>.
+   */
+  @Nonnull
+  @Nonempty
+  public String getContentHash ()
+  {
+    final IMessageDigestGenerator aMDGen = new NonBlockingMessageDigestGenerator (EMessageDigestAlgorithm.SHA_256);
+    // The number of elements of each list makes the structure unambiguous
+    _updateCanonical (aMDGen, Integer.toString (m_aBusinessInfo.getEntityCount ()));
+    for (final PDEntityType aEntity : m_aBusinessInfo.getEntity ())
+    {
+      _updateCanonical (aMDGen, aEntity.getCountryCode ());
+      _updateCanonical (aMDGen, aEntity.getName ());
+      _updateCanonical (aMDGen, aEntity.getGeoInfo ());
+      _updateCanonical (aMDGen, Integer.toString (aEntity.getIdentifierCount ()));
+      for (final PDIdentifierType aIdentifier : aEntity.getIdentifier ())
+      {
+        _updateCanonical (aMDGen, aIdentifier.getType ());
+        _updateCanonical (aMDGen, aIdentifier.getValue ());
+      }
+      _updateCanonical (aMDGen, Integer.toString (aEntity.getWebSiteCount ()));
+      for (final String sWebSite : aEntity.getWebSite ())
+        _updateCanonical (aMDGen, sWebSite);
+      _updateCanonical (aMDGen, Integer.toString (aEntity.getBusinessContactCount ()));
+      for (final PDBusinessContactType aBusinessContact : aEntity.getBusinessContact ())
+      {
+        _updateCanonical (aMDGen, aBusinessContact.getDescription ());
+        _updateCanonical (aMDGen, aBusinessContact.getName ());
+        _updateCanonical (aMDGen, aBusinessContact.getPhoneNumber ());
+        _updateCanonical (aMDGen, aBusinessContact.getEmail ());
+      }
+      _updateCanonical (aMDGen, aEntity.getFreeText ());
+    }
+
+    // Sorted and unique
+    final Set <String> aDocTypeIDs = new TreeSet <> ();
+    for (final IDocumentTypeIdentifier aDocTypeID : m_aDocumentTypeIDs)
+      aDocTypeIDs.add (IdentifierHelper.getIdentifierURIEncoded (aDocTypeID));
+    _updateCanonical (aMDGen, Integer.toString (aDocTypeIDs.size ()));
+    for (final String sDocTypeID : aDocTypeIDs)
+      _updateCanonical (aMDGen, sDocTypeID);
+    return aMDGen.getDigestHexString ();
+  }
+
   @Override
   public String toString ()
   {
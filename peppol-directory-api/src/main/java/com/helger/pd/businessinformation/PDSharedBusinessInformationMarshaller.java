@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.businessinformation;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.Source;
+import javax.xml.validation.Schema;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Node;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.xml.schema.XMLSchemaCache;
+import com.helger.commons.xml.transform.TransformSourceFactory;
+import com.helger.jaxb.JAXBContextCache;
+
+/**
+ * A reader for {@link PDBusinessInformationType} documents that can be shared
+ * by multiple threads. In contrast to {@link PDBusinessInformationMarshaller},
+ * where every read creates a new unmarshaller, the XML Schema and the JAXB
+ * context are resolved only once, and every thread reuses its own
+ * unmarshallers. Use this class for reading many documents, e.g. from the
+ * fetch workers of the indexer.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class PDSharedBusinessInformationMarshaller
+{
+  /**
+   * Lazily initialized holder of the compiled XML Schema and the JAXB context.
+   */
+  private static final class SingletonHolder
+  {
+    static final Schema s_aSchema = XMLSchemaCache.getInstance ()
+                                                  .getSchema (PDBusinessInformationMarshaller.BUSINESS_INFORMATION_XSDS);
+    static final JAXBContext s_aJAXBContext = JAXBContextCache.getInstance ()
+                                                              .getFromCache (PDBusinessInformationType.class.getPackage ());
+  }
+
+  private static final Logger s_aLogger = LoggerFactory.getLogger (PDSharedBusinessInformationMarshaller.class);
+
+  // Unmarshallers are not thread-safe, but may be reused by the same thread
+  private static final ThreadLocal <Unmarshaller> s_aValidatingUnmarshaller = ThreadLocal.withInitial ( () -> _createUnmarshaller (true));
+  private static final ThreadLocal <Unmarshaller> s_aNonValidatingUnmarshaller = ThreadLocal.withInitial ( () -> _createUnmarshaller (false));
+
+  private PDSharedBusinessInformationMarshaller ()
+  {}
+
+  @Nonnull
+  private static Unmarshaller _createUnmarshaller (final boolean bValidate)
+  {
+    try
+    {
+      final Unmarshaller ret = SingletonHolder.s_aJAXBContext.createUnmarshaller ();
+      if (bValidate)
+        ret.setSchema (SingletonHolder.s_aSchema);
+      return ret;
+    }
+    catch (final JAXBException ex)
+    {
+      throw new IllegalStateException ("Failed to create JAXB unmarshaller", ex);
+    }
+  }
+
+  /**
+   * @return The compiled XML Schema of {@link PDBusinessInformationType}
+   *         documents. Never <code>null</code>.
+   */
+  @Nonnull
+  public static Schema getSchema ()
+  {
+    return SingletonHolder.s_aSchema;
+  }
+
+  /**
+   * Read business information from the provided source.
+   *
+   * @param aSource
+   *        The source to read from. May not be <code>null</code>.
+   * @param bValidate
+   *        <code>true</code> to validate against
+   *        {@link PDBusinessInformationMarshaller#BUSINESS_INFORMATION_XSDS}.
+   * @return <code>null</code> if reading or validation failed.
+   */
+  @Nullable
+  public static PDBusinessInformationType read (@Nonnull final Source aSource, final boolean bValidate)
+  {
+    ValueEnforcer.notNull (aSource, "Source");
+
+    final Unmarshaller aUnmarshaller = bValidate ? s_aValidatingUnmarshaller.get ()
+                                                 : s_aNonValidatingUnmarshaller.get ();
+    try
+    {
+      return aUnmarshaller.unmarshal (aSource, PDBusinessInformationType.class).getValue ();
+    }
+    catch (final JAXBException ex)
+    {
+      // Validation errors are contained in the linked exception
+      final Throwable aCause = ex.getLinkedException () != null ? ex.getLinkedException () : ex;
+      s_aLogger.warn ("Failed to read business information: " + aCause.getMessage ());
+      return null;
+    }
+  }
+
+  /**
+   * Read business information from the provided DOM node, without copying it.
+   *
+   * @param aNode
+   *        The <code>BusinessInformation</code> element or its document. May
+   *        not be <code>null</code>.
+   * @param bValidate
+   *        <code>true</code> to validate against
+   *        {@link PDBusinessInformationMarshaller#BUSINESS_INFORMATION_XSDS}.
+   * @return <code>null</code> if reading or validation failed.
+   */
+  @Nullable
+  public static PDBusinessInformationType read (@Nonnull final Node aNode, final boolean bValidate)
+  {
+    ValueEnforcer.notNull (aNode, "Node");
+    return read (TransformSourceFactory.create (aNode), bValidate);
+  }
+}
@@ -195,6 +195,178 @@ public final class PDSettings extends AbstractGlobalSingleton
     return ret;
   }
 
+  /**
+   * @return The maximum number of minutes between retries. The time between
+   *         retries grows with each failed retry until this value is reached.
+   *         Defaults to 240.
+   */
+  @Nonnegative
+  public static int getReIndexRetryMaxMinutes ()
+  {
+    final int ret = s_aSettings.getIntValue ("reindex.retrymaxminutes", 240);
+    if (ret < getReIndexRetryMinutes ())
+      throw new IllegalStateException ("The reindex.retrymaxminutes property must be >= reindex.retryminutes!");
+    return ret;
+  }
+
+  /**
+   * @return The factor by which the time between retries grows with each
+   *         failed retry. 1 means a constant time between retries. Defaults to
+   *         2.
+   */
+  @Nonnegative
+  public static int getReIndexRetryBackoffFactor ()
+  {
+    final int ret = s_aSettings.getIntValue ("reindex.retrybackofffactor", 2);
+    if (ret <= 0)
+      throw new IllegalStateException ("The reindex.retrybackofffactor property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The maximum random deviation of the time between retries in
+   *         percent, so that items failing together are not retried together.
+   *         Defaults to 20.
+   */
+  @Nonnegative
+  public static int getReIndexRetryJitterPercentage ()
+  {
+    final int ret = s_aSettings.getIntValue ("reindex.retryjitterpercentage", 20);
+    if (ret < 0 || ret > 100)
+      throw new IllegalStateException ("The reindex.retryjitterpercentage property must be between 0 and 100!");
+    return ret;
+  }
+
+  /**
+   * @return <code>true</code> if the business information retrieved from the
+   *         SMPs is validated against the XML Schema. Defaults to
+   *         <code>true</code>.
+   */
+  public static boolean isIndexerBusinessInformationValidationEnabled ()
+  {
+    return s_aSettings.getBooleanValue ("indexer.businessinformation.validation", true);
+  }
+
+  /**
+   * @return The number of worker threads fetching business information from
+   *         SMPs in parallel. Defaults to 4.
+   */
+  @Nonnegative
+  public static int getIndexerFetchThreads ()
+  {
+    final int ret = s_aSettings.getIntValue ("indexer.fetch.threads", 4);
+    if (ret <= 0)
+      throw new IllegalStateException ("The indexer.fetch.threads property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The maximum number of fetched participants that are written to
+   *         the index at once. Defaults to 100.
+   */
+  @Nonnegative
+  public static int getIndexerWriteBatchSize ()
+  {
+    final int ret = s_aSettings.getIntValue ("indexer.write.batchsize", 100);
+    if (ret <= 0)
+      throw new IllegalStateException ("The indexer.write.batchsize property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The maximum number of business information fetches that are
+   *         performed concurrently against a single SMP host. Defaults to 2.
+   */
+  @Nonnegative
+  public static int getIndexerMaxConcurrentFetchesPerHost ()
+  {
+    final int ret = s_aSettings.getIntValue ("indexer.host.maxconcurrent", 2);
+    if (ret <= 0)
+      throw new IllegalStateException ("The indexer.host.maxconcurrent property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The number of most recent fetches per SMP host that are considered
+   *         for the error rate of the circuit breaker. Defaults to 20.
+   */
+  @Nonnegative
+  public static int getIndexerCircuitBreakerWindowSize ()
+  {
+    final int ret = s_aSettings.getIntValue ("indexer.host.breaker.windowsize", 20);
+    if (ret <= 0)
+      throw new IllegalStateException ("The indexer.host.breaker.windowsize property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The error rate in percent at which the circuit breaker of an SMP
+   *         host opens. Defaults to 50.
+   */
+  @Nonnegative
+  public static int getIndexerCircuitBreakerFailurePercentage ()
+  {
+    final int ret = s_aSettings.getIntValue ("indexer.host.breaker.failurepercentage", 50);
+    if (ret <= 0 || ret > 100)
+      throw new IllegalStateException ("The indexer.host.breaker.failurepercentage property must be between 1 and 100!");
+    return ret;
+  }
+
+  /**
+   * @return The number of minutes an opened circuit breaker of an SMP host
+   *         stays open before fetches are tried again. Defaults to 5.
+   */
+  @Nonnegative
+  public static int getIndexerCircuitBreakerOpenMinutes ()
+  {
+    final int ret = s_aSettings.getIntValue ("indexer.host.breaker.openminutes", 5);
+    if (ret <= 0)
+      throw new IllegalStateException ("The indexer.host.breaker.openminutes property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The number of days participants marked as deleted are kept in the
+   *         index before they are purged. Defaults to 30.
+   */
+  @Nonnegative
+  public static int getPurgeRetentionDays ()
+  {
+    final int ret = s_aSettings.getIntValue ("purge.retentiondays", 30);
+    if (ret < 0)
+      throw new IllegalStateException ("The purge.retentiondays property must be >= 0!");
+    return ret;
+  }
+
+  /**
+   * @return The first hour of the day (0-23) of the off-peak window in which
+   *         the purge of deleted participants may run. Defaults to 2.
+   */
+  @Nonnegative
+  public static int getPurgeOffPeakStartHour ()
+  {
+    final int ret = s_aSettings.getIntValue ("purge.offpeak.starthour", 2);
+    if (ret < 0 || ret > 23)
+      throw new IllegalStateException ("The purge.offpeak.starthour property must be between 0 and 23!");
+    return ret;
+  }
+
+  /**
+   * @return The hour of the day (0-23) at which the off-peak window in which
+   *         the purge of deleted participants may run ends (exclusive). If it
+   *         is less than the start hour, the window spans midnight. If it is
+   *         equal to the start hour the purge may run at any time. Defaults to
+   *         5.
+   */
+  @Nonnegative
+  public static int getPurgeOffPeakEndHour ()
+  {
+    final int ret = s_aSettings.getIntValue ("purge.offpeak.endhour", 5);
+    if (ret < 0 || ret > 23)
+      throw new IllegalStateException ("The purge.offpeak.endhour property must be between 0 and 23!");
+    return ret;
+  }
+
   /**
    * @return The SML to be used. Never <code>null</code>. Defaults to
    *         {@link ESML#DIGIT_PRODUCTION}.
@@ -205,4 +377,261 @@ public final class PDSettings extends AbstractGlobalSingleton
     final String sID = s_aSettings.getStringValue ("sml.id");
     return ESML.getFromIDOrDefault (sID, ESML.DIGIT_PRODUCTION);
   }
+
+  /**
+   * @return The maximum number of milliseconds to establish a connection to an
+   *         SMP. Defaults to 5000.
+   */
+  @Nonnegative
+  public static int getSMPClientConnectTimeoutMS ()
+  {
+    final int ret = s_aSettings.getIntValue ("smpclient.connecttimeoutms", 5000);
+    if (ret <= 0)
+      throw new IllegalStateException ("The smpclient.connecttimeoutms property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The maximum number of milliseconds to wait for data from an SMP.
+   *         Defaults to 10000.
+   */
+  @Nonnegative
+  public static int getSMPClientSocketTimeoutMS ()
+  {
+    final int ret = s_aSettings.getIntValue ("smpclient.sockettimeoutms", 10000);
+    if (ret <= 0)
+      throw new IllegalStateException ("The smpclient.sockettimeoutms property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The maximum number of milliseconds to wait for a free connection
+   *         from the SMP connection pool. Defaults to 5000.
+   */
+  @Nonnegative
+  public static int getSMPClientConnectionRequestTimeoutMS ()
+  {
+    final int ret = s_aSettings.getIntValue ("smpclient.connectionrequesttimeoutms", 5000);
+    if (ret <= 0)
+      throw new IllegalStateException ("The smpclient.connectionrequesttimeoutms property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The maximum number of pooled connections per SMP host. Defaults
+   *         to {@link #getIndexerMaxConcurrentFetchesPerHost()}.
+   */
+  @Nonnegative
+  public static int getSMPClientMaxConnectionsPerRoute ()
+  {
+    final int ret = s_aSettings.getIntValue ("smpclient.maxconnections.perroute", getIndexerMaxConcurrentFetchesPerHost ());
+    if (ret <= 0)
+      throw new IllegalStateException ("The smpclient.maxconnections.perroute property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The maximum number of pooled connections to all SMP hosts.
+   *         Defaults to 100.
+   */
+  @Nonnegative
+  public static int getSMPClientMaxConnectionsTotal ()
+  {
+    final int ret = s_aSettings.getIntValue ("smpclient.maxconnections.total", 100);
+    if (ret < getSMPClientMaxConnectionsPerRoute ())
+      throw new IllegalStateException ("The smpclient.maxconnections.total property must be >= smpclient.maxconnections.perroute!");
+    return ret;
+  }
+
+  /**
+   * @return The maximum number of milliseconds an idle SMP connection is kept
+   *         open for reuse. Shorter durations announced by the SMP take
+   *         precedence. Defaults to 30000.
+   */
+  @Nonnegative
+  public static long getSMPClientKeepAliveMS ()
+  {
+    final long ret = s_aSettings.getLongValue ("smpclient.keepalivems", 30000);
+    if (ret <= 0)
+      throw new IllegalStateException ("The smpclient.keepalivems property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The maximum number of milliseconds after which changes to the
+   *         Lucene index become visible to searches. Defaults to 1000.
+   */
+  @Nonnegative
+  public static long getLuceneRefreshIntervalMS ()
+  {
+    final long ret = s_aSettings.getLongValue ("lucene.refreshintervalms", 1000);
+    if (ret <= 0)
+      throw new IllegalStateException ("The lucene.refreshintervalms property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The maximum number of milliseconds pending Lucene index changes
+   *         stay uncommitted. Defaults to 5000.
+   */
+  @Nonnegative
+  public static long getLuceneCommitIntervalMS ()
+  {
+    final long ret = s_aSettings.getLongValue ("lucene.commit.intervalms", 5000);
+    if (ret <= 0)
+      throw new IllegalStateException ("The lucene.commit.intervalms property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The number of pending Lucene index changes that trigger a commit
+   *         before the commit interval elapsed. Defaults to 1000.
+   */
+  @Nonnegative
+  public static int getLuceneCommitMaxChanges ()
+  {
+    final int ret = s_aSettings.getIntValue ("lucene.commit.maxchanges", 1000);
+    if (ret <= 0)
+      throw new IllegalStateException ("The lucene.commit.maxchanges property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The ID of the Lucene directory implementation to use. May be
+   *         <code>null</code> to let Lucene choose the best file system
+   *         directory for the current platform.
+   */
+  @Nullable
+  public static String getLuceneDirectoryType ()
+  {
+    return s_aSettings.getStringValue ("lucene.directory");
+  }
+
+  /**
+   * @return <code>true</code> if small, freshly flushed segments should be
+   *         cached in memory by wrapping the Lucene directory. Defaults to
+   *         <code>false</code>.
+   */
+  public static boolean isLuceneNRTCachingEnabled ()
+  {
+    return s_aSettings.getBooleanValue ("lucene.nrtcaching.enabled", false);
+  }
+
+  /**
+   * @return The maximum size in MB of a merged segment to be cached in memory.
+   *         Only relevant if NRT caching is enabled. Defaults to 5.
+   */
+  @Nonnegative
+  public static double getLuceneNRTCachingMaxMergeSizeMB ()
+  {
+    final double ret = s_aSettings.getDoubleValue ("lucene.nrtcaching.maxmergesizemb", 5);
+    if (ret <= 0)
+      throw new IllegalStateException ("The lucene.nrtcaching.maxmergesizemb property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The maximum total size in MB of all segments cached in memory.
+   *         Only relevant if NRT caching is enabled. Defaults to 60.
+   */
+  @Nonnegative
+  public static double getLuceneNRTCachingMaxCachedMB ()
+  {
+    final double ret = s_aSettings.getDoubleValue ("lucene.nrtcaching.maxcachedmb", 60);
+    if (ret <= 0)
+      throw new IllegalStateException ("The lucene.nrtcaching.maxcachedmb property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The amount of RAM in MB that may be used for buffering added
+   *         documents before they are flushed as a new segment. Defaults to
+   *         16.
+   */
+  @Nonnegative
+  public static double getLuceneRAMBufferSizeMB ()
+  {
+    final double ret = s_aSettings.getDoubleValue ("lucene.rambuffersizemb", 16);
+    if (ret <= 0)
+      throw new IllegalStateException ("The lucene.rambuffersizemb property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The number of buffered documents that trigger a flush of a new
+   *         segment or -1 to flush by RAM usage only. Defaults to -1.
+   */
+  public static int getLuceneMaxBufferedDocs ()
+  {
+    final int ret = s_aSettings.getIntValue ("lucene.maxbuffereddocs", -1);
+    if (ret != -1 && ret < 2)
+      throw new IllegalStateException ("The lucene.maxbuffereddocs property must be >= 2 or -1!");
+    return ret;
+  }
+
+  /**
+   * @return The number of segments allowed per tier of the merge policy.
+   *         Defaults to 10.
+   */
+  @Nonnegative
+  public static double getLuceneMergeSegmentsPerTier ()
+  {
+    final double ret = s_aSettings.getDoubleValue ("lucene.merge.segmentspertier", 10);
+    if (ret < 2)
+      throw new IllegalStateException ("The lucene.merge.segmentspertier property must be >= 2!");
+    return ret;
+  }
+
+  /**
+   * @return The maximum size in MB of a segment created by merging. Defaults
+   *         to 5120.
+   */
+  @Nonnegative
+  public static double getLuceneMergeMaxMergedSegmentMB ()
+  {
+    final double ret = s_aSettings.getDoubleValue ("lucene.merge.maxmergedsegmentmb", 5 * 1024);
+    if (ret <= 0)
+      throw new IllegalStateException ("The lucene.merge.maxmergedsegmentmb property must be > 0!");
+    return ret;
+  }
+
+  /**
+   * @return The percentage of deleted documents a segment may contain before
+   *         it is rewritten when deletes are expunged. Defaults to 10.
+   */
+  @Nonnegative
+  public static double getLuceneMergeDeletesPctAllowed ()
+  {
+    final double ret = s_aSettings.getDoubleValue ("lucene.merge.deletespctallowed", 10);
+    if (ret < 0 || ret > 100)
+      throw new IllegalStateException ("The lucene.merge.deletespctallowed property must be between 0 and 100!");
+    return ret;
+  }
+
+  /**
+   * @return The maximum number of concurrent merge threads or -1 to let Lucene
+   *         decide based on the hardware. Defaults to -1.
+   */
+  public static int getLuceneMergeThreads ()
+  {
+    final int ret = s_aSettings.getIntValue ("lucene.merge.threads", -1);
+    if (ret != -1 && ret <= 0)
+      throw new IllegalStateException ("The lucene.merge.threads property must be > 0 or -1!");
+    return ret;
+  }
+
+  /**
+   * @return <code>true</code> if stored fields should be compressed for a
+   *         smaller index, <code>false</code> if they should be compressed for
+   *         faster access. Defaults to <code>false</code>.
+   */
+  public static boolean isLuceneStoredFieldsBestCompression ()
+  {
+    final String sMode = s_aSettings.getStringValue ("lucene.storedfields.mode", "speed");
+    if ("compression".equals (sMode))
+      return true;
+    if ("speed".equals (sMode))
+      return false;
+    throw new IllegalStateException ("The lucene.storedfields.mode property must be 'speed' or 'compression'!");
+  }
 }
@@ -0,0 +1,76 @@
+package com.helger.pd.businessinformation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link PDSharedBusinessInformationMarshaller}.
+ *
+ * @author Philip Helger
+ */
+public final class PDSharedBusinessInformationMarshallerTest
+{
+  @Test
+  public void testReadConcurrently () throws Exception
+  {
+    final Document aDoc = DOMReader.readXMLDOM (new ClassPathResource ("business-information-test1.xml"));
+    assertNotNull (aDoc);
+    assertNotNull (PDSharedBusinessInformationMarshaller.getSchema ());
+
+    final ExecutorService aES = Executors.newFixedThreadPool (8);
+    try
+    {
+      final List <Future <PDBusinessInformationType>> aResults = new ArrayList <> ();
+      for (int i = 0; i < 200; ++i)
+      {
+        final boolean bValidate = (i % 2) == 0;
+        // Each task reads its own copy, as DOM nodes are not thread-safe
+        final Document aCopy = (Document) aDoc.cloneNode (true);
+        aResults.add (aES.submit ( () -> PDSharedBusinessInformationMarshaller.read (aCopy, bValidate)));
+      }
+      for (final Future <PDBusinessInformationType> aResult : aResults)
+      {
+        final PDBusinessInformationType aBI = aResult.get ();
+        assertNotNull (aBI);
+        assertEquals (2, aBI.getEntityCount ());
+        assertEquals ("Austrian Federal Government", aBI.getEntityAtIndex (0).getName ());
+      }
+    }
+    finally
+    {
+      aES.shutdown ();
+    }
+  }
+
+  @Test
+  public void testReadInvalid () throws Exception
+  {
+    final Document aDoc = DOMReader.readXMLDOM (new ClassPathResource ("business-information-test1.xml"));
+    assertNotNull (aDoc);
+
+    // Remove the mandatory name of the first entity
+    final Element eName = (Element) aDoc.getElementsByTagNameNS ("*", "Name").item (0);
+    eName.getParentNode ().removeChild (eName);
+
+    assertNull (PDSharedBusinessInformationMarshaller.read (aDoc, true));
+    // The unmarshaller of this thread can still be used afterwards
+    assertNull (PDSharedBusinessInformationMarshaller.read (aDoc, true));
+    final PDBusinessInformationType aBI = PDSharedBusinessInformationMarshaller.read (aDoc, false);
+    assertNotNull (aBI);
+    assertNull (aBI.getEntityAtIndex (0).getName ());
+  }
+}
@@ -17,14 +17,18 @@
 package com.helger.pd.indexer.domain;
 
 import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
 import org.joda.time.LocalDateTime;
 
+import com.helger.commons.CGlobal;
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.hashcode.HashCodeGenerator;
@@ -35,7 +39,9 @@ import com.helger.pd.settings.PDSettings;
 
 /**
  * This class holds a single item to be re-indexed. It is only invoked if
- * regular indexing failed.
+ * regular indexing failed. The time between retries grows exponentially with
+ * each failed retry up to a configurable maximum, and is randomly varied so
+ * that items failing together are not retried together.
  *
  * @author Philip Helger
  */
@@ -47,22 +53,41 @@ public class ReIndexWorkItem implements IHasID <String>, Serializable
   private int m_nRetries;
   private LocalDateTime m_aPreviousRetryDT;
   private LocalDateTime m_aNextRetryDT;
+  private long m_nRetryDelayMillis;
 
   public ReIndexWorkItem (@Nonnull final IndexerWorkItem aWorkItem)
   {
-    // The next retry happens from now in the configured number of minutes
+    // The next retry happens from now in about the configured number of
+    // minutes
+    this (aWorkItem,
+          PDTFactory.getCurrentLocalDateTime ().plus (new Duration (getJitteredDelayMillis (getInitialRetryDelayMillis ()))));
+  }
+
+  /**
+   * Constructor for an item that should not be retried before the provided
+   * date time.
+   *
+   * @param aWorkItem
+   *        The work item to be re-indexed. May not be <code>null</code>.
+   * @param aNextRetryDT
+   *        The date time of the first retry. May not be <code>null</code>.
+   */
+  public ReIndexWorkItem (@Nonnull final IndexerWorkItem aWorkItem, @Nonnull final LocalDateTime aNextRetryDT)
+  {
     this (aWorkItem,
           aWorkItem.getCreationDT ().plusHours (PDSettings.getReIndexMaxRetryHours ()),
           0,
           (LocalDateTime) null,
-          PDTFactory.getCurrentLocalDateTime ().plusMinutes (PDSettings.getReIndexRetryMinutes ()));
+          aNextRetryDT,
+          getInitialRetryDelayMillis ());
   }
 
   ReIndexWorkItem (@Nonnull final IndexerWorkItem aWorkItem,
                    @Nonnull final LocalDateTime aMaxRetryDT,
                    final int nRetries,
                    @Nullable final LocalDateTime aPreviousRetryDT,
-                   @Nonnull final LocalDateTime aNextRetryDT)
+                   @Nonnull final LocalDateTime aNextRetryDT,
+                   @Nonnegative final long nRetryDelayMillis)
   {
     m_aWorkItem = ValueEnforcer.notNull (aWorkItem, "WorkItem");
     m_aMaxRetryDT = ValueEnforcer.notNull (aMaxRetryDT, "MaxRetryDT");
@@ -71,6 +96,87 @@ public class ReIndexWorkItem implements IHasID <String>, Serializable
     if (nRetries > 0)
       ValueEnforcer.notNull (aPreviousRetryDT, "PreviousRetryDT");
     m_aNextRetryDT = ValueEnforcer.notNull (aNextRetryDT, "NextRetryDT");
+    m_nRetryDelayMillis = ValueEnforcer.isGT0 (nRetryDelayMillis, "RetryDelayMillis");
+  }
+
+  /**
+   * @return The configured time until the first retry in milliseconds.
+   */
+  @Nonnegative
+  public static long getInitialRetryDelayMillis ()
+  {
+    return PDSettings.getReIndexRetryMinutes () * CGlobal.MILLISECONDS_PER_MINUTE;
+  }
+
+  /**
+   * Get the time between retries after the provided number of failed retries,
+   * without jitter. This is used for items persisted without the retry delay.
+   *
+   * @param nRetries
+   *        The number of failed retries. Must be &ge; 0.
+   * @return The retry delay in milliseconds.
+   */
+  @Nonnegative
+  public static long getRetryDelayMillis (@Nonnegative final int nRetries)
+  {
+    ValueEnforcer.isGE0 (nRetries, "Retries");
+    long ret = getInitialRetryDelayMillis ();
+    for (int i = 0; i < nRetries; ++i)
+      ret = getNextRetryDelayMillis (ret);
+    return ret;
+  }
+
+  /**
+   * Get the time between retries following the provided one, without jitter.
+   *
+   * @param nRetryDelayMillis
+   *        The current retry delay in milliseconds.
+   * @return The next retry delay in milliseconds, never exceeding the
+   *         configured maximum.
+   */
+  @Nonnegative
+  public static long getNextRetryDelayMillis (@Nonnegative final long nRetryDelayMillis)
+  {
+    final long nMaxMillis = PDSettings.getReIndexRetryMaxMinutes () * CGlobal.MILLISECONDS_PER_MINUTE;
+    return Math.min (nRetryDelayMillis * PDSettings.getReIndexRetryBackoffFactor (), nMaxMillis);
+  }
+
+  /**
+   * Randomly vary the provided delay by the configured jitter percentage.
+   *
+   * @param nDelayMillis
+   *        The delay in milliseconds.
+   * @return The varied delay in milliseconds. Always &gt; 0.
+   */
+  @Nonnegative
+  public static long getJitteredDelayMillis (@Nonnegative final long nDelayMillis)
+  {
+    final long nMaxJitter = nDelayMillis * PDSettings.getReIndexRetryJitterPercentage () / 100;
+    if (nMaxJitter <= 0)
+      return nDelayMillis;
+    return Math.max (1, nDelayMillis + ThreadLocalRandom.current ().nextLong (-nMaxJitter, nMaxJitter + 1));
+  }
+
+  /**
+   * Get the date time for a retry that must not happen before the provided
+   * date time. The deferral from now is randomly prolonged by up to the
+   * configured jitter percentage, so that items deferred together are not
+   * retried together.
+   *
+   * @param aEarliestDT
+   *        The earliest date time for the retry. May not be <code>null</code>.
+   * @return The date time for the retry. Never before the provided date time.
+   */
+  @Nonnull
+  public static LocalDateTime getJitteredDeferralDT (@Nonnull final LocalDateTime aEarliestDT)
+  {
+    ValueEnforcer.notNull (aEarliestDT, "EarliestDT");
+    final long nDeferralMillis = aEarliestDT.toDateTime (DateTimeZone.UTC).getMillis () -
+                                 PDTFactory.getCurrentLocalDateTime ().toDateTime (DateTimeZone.UTC).getMillis ();
+    if (nDeferralMillis <= 0)
+      return aEarliestDT;
+    // Only prolong, to not retry while the reason for the deferral persists
+    return aEarliestDT.plus (new Duration (Math.abs (getJitteredDelayMillis (nDeferralMillis) - nDeferralMillis)));
   }
 
   /**
@@ -95,8 +201,24 @@ public class ReIndexWorkItem implements IHasID <String>, Serializable
   public void incRetryCount ()
   {
     m_nRetries++;
+    m_nRetryDelayMillis = getNextRetryDelayMillis (m_nRetryDelayMillis);
     m_aPreviousRetryDT = PDTFactory.getCurrentLocalDateTime ();
-    m_aNextRetryDT = m_aPreviousRetryDT.plusMinutes (PDSettings.getReIndexRetryMinutes ());
+    // Long based - the delay may exceed the int range
+    m_aNextRetryDT = m_aPreviousRetryDT.plus (new Duration (getJitteredDelayMillis (m_nRetryDelayMillis)));
+  }
+
+  /**
+   * Defer the next retry without counting it as a failed retry, so the retry
+   * count and the retry delay are kept.
+   *
+   * @param aEarliestDT
+   *        The earliest date time for the next retry. May not be
+   *        <code>null</code>.
+   * @see #getJitteredDeferralDT(LocalDateTime)
+   */
+  public void deferRetry (@Nonnull final LocalDateTime aEarliestDT)
+  {
+    m_aNextRetryDT = getJitteredDeferralDT (aEarliestDT);
   }
 
   @Nonnull
@@ -154,6 +276,16 @@ public class ReIndexWorkItem implements IHasID <String>, Serializable
     return m_aNextRetryDT;
   }
 
+  /**
+   * @return The time between the previous and the next retry in milliseconds
+   *         without jitter. The next failed retry increases it.
+   */
+  @Nonnegative
+  public long getRetryDelayMillis ()
+  {
+    return m_nRetryDelayMillis;
+  }
+
   @Nonnull
   @Nonempty
   public String getLogText ()
@@ -186,6 +318,7 @@ public class ReIndexWorkItem implements IHasID <String>, Serializable
                                        .append ("Retries", m_nRetries)
                                        .append ("PreviousRetryDT", m_aPreviousRetryDT)
                                        .append ("NextRetryDT", m_aNextRetryDT)
+                                       .append ("RetryDelayMillis", m_nRetryDelayMillis)
                                        .toString ();
   }
 }
@@ -34,6 +34,7 @@ public final class ReIndexWorkItemMicroTypeConverter implements IMicroTypeConver
   private static final String ATTR_RETRY_COUNT = "retries";
   private static final String ATTR_PREVIOUS_RETRY_DT = "prevretrydt";
   private static final String ATTR_NEXT_RETRY_DT = "nextretrydt";
+  private static final String ATTR_RETRY_DELAY = "retrydelay";
 
   @Nullable
   public IMicroElement convertToMicroElement (@Nonnull final Object aObject,
@@ -49,6 +50,7 @@ public final class ReIndexWorkItemMicroTypeConverter implements IMicroTypeConver
     aElement.setAttribute (ATTR_RETRY_COUNT, aValue.getRetryCount ());
     aElement.setAttributeWithConversion (ATTR_PREVIOUS_RETRY_DT, aValue.getPreviousRetryDT ());
     aElement.setAttributeWithConversion (ATTR_NEXT_RETRY_DT, aValue.getNextRetryDT ());
+    aElement.setAttribute (ATTR_RETRY_DELAY, aValue.getRetryDelayMillis ());
     return aElement;
   }
 
@@ -71,7 +73,14 @@ public final class ReIndexWorkItemMicroTypeConverter implements IMicroTypeConver
     final LocalDateTime aNextRetryDT = aElement.getAttributeValueWithConversion (ATTR_NEXT_RETRY_DT,
                                                                                  LocalDateTime.class);
 
-    return new ReIndexWorkItem (aWorkItem, aMaxRetryDT, nRetryCount, aPreviousRetryDT, aNextRetryDT);
+    // Not present in files written by previous versions
+    final String sRetryDelay = aElement.getAttributeValue (ATTR_RETRY_DELAY);
+    final long nRetryDelay = sRetryDelay == null ? ReIndexWorkItem.getRetryDelayMillis (nRetryCount)
+                                                 : StringParser.parseLong (sRetryDelay, -1);
+    if (nRetryDelay <= 0)
+      throw new IllegalStateException ("Invalid retry delay '" + sRetryDelay + "'");
+
+    return new ReIndexWorkItem (aWorkItem, aMaxRetryDT, nRetryCount, aPreviousRetryDT, aNextRetryDT, nRetryDelay);
   }
 
 }
@@ -16,11 +16,13 @@
  */
 package com.helger.pd.indexer.job;
 
+import java.io.IOException;
 import java.util.Date;
 
 import javax.annotation.Nonnull;
 import javax.servlet.ServletContext;
 
+import org.joda.time.LocalDateTime;
 import org.quartz.DisallowConcurrentExecution;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
@@ -28,12 +30,15 @@ import org.quartz.ScheduleBuilder;
 import org.quartz.SimpleTrigger;
 import org.quartz.TriggerBuilder;
 import org.quartz.TriggerKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.OverrideOnDemand;
-import com.helger.pd.indexer.mgr.PDIndexerManager;
+import com.helger.datetime.PDTFactory;
 import com.helger.pd.indexer.mgr.PDMetaManager;
+import com.helger.pd.settings.PDSettings;
 import com.helger.photon.core.job.AbstractPhotonJob;
 import com.helger.schedule.quartz.GlobalQuartzScheduler;
 import com.helger.web.mock.MockHttpServletRequest;
@@ -41,20 +46,23 @@ import com.helger.web.mock.OfflineHttpServletRequest;
 import com.helger.web.scope.mgr.WebScopeManager;
 
 /**
- * A Quartz job that is scheduled to re-index existing entries that failed to
- * re-index previously.
+ * A Quartz job that is scheduled to purge participants that were marked as
+ * deleted longer than the configured retention period from the index. The
+ * purge only runs within the configured off-peak window.
  *
  * @author Philip Helger
  */
 @DisallowConcurrentExecution
-public class ReIndexJob extends AbstractPhotonJob
+public class PurgeDeletedJob extends AbstractPhotonJob
 {
+  private static final Logger s_aLogger = LoggerFactory.getLogger (PurgeDeletedJob.class);
+
   private final ServletContext m_aSC;
 
   /**
    * Public no argument constructor must be available.
    */
-  public ReIndexJob ()
+  public PurgeDeletedJob ()
   {
     // Save to avoid global scope access
     m_aSC = WebScopeManager.getGlobalScope ().getServletContext ();
@@ -68,23 +76,57 @@ public class ReIndexJob extends AbstractPhotonJob
     return new OfflineHttpServletRequest (m_aSC, false);
   }
 
+  /**
+   * Check if the passed hour of the day is inside the off-peak window.
+   *
+   * @param nHour
+   *        Hour of the day to check (0-23).
+   * @param nStartHour
+   *        First hour of the window (inclusive).
+   * @param nEndHour
+   *        Last hour of the window (exclusive). If it is less than the start
+   *        hour, the window spans midnight. If it is equal to the start hour,
+   *        every hour is inside the window.
+   * @return <code>true</code> if the hour is inside the window.
+   */
+  public static boolean isInOffPeakWindow (final int nHour, final int nStartHour, final int nEndHour)
+  {
+    if (nStartHour == nEndHour)
+      return true;
+    if (nStartHour < nEndHour)
+      return nHour >= nStartHour && nHour < nEndHour;
+    // Spans midnight
+    return nHour >= nStartHour || nHour < nEndHour;
+  }
+
   @Override
   protected void onExecute (@Nonnull final JobExecutionContext aContext) throws JobExecutionException
   {
-    final PDIndexerManager aIndexerMgr = PDMetaManager.getIndexerMgr ();
-
-    // First expire all old entries
-    aIndexerMgr.expireOldEntries ();
+    final LocalDateTime aNow = PDTFactory.getCurrentLocalDateTime ();
+    if (!isInOffPeakWindow (aNow.getHourOfDay (),
+                            PDSettings.getPurgeOffPeakStartHour (),
+                            PDSettings.getPurgeOffPeakEndHour ()))
+    {
+      if (s_aLogger.isDebugEnabled ())
+        s_aLogger.debug ("Not purging deleted participants outside of the off-peak window");
+      return;
+    }
 
-    // Re-index all items now
-    aIndexerMgr.reIndexParticipantData ();
+    try
+    {
+      PDMetaManager.getStorageMgr ().purgeDeletedEntries (aNow.minusDays (PDSettings.getPurgeRetentionDays ()));
+    }
+    catch (final IOException ex)
+    {
+      throw new JobExecutionException ("Failed to purge deleted participants", ex);
+    }
   }
 
   /**
    * @param aScheduleBuilder
    *        The schedule builder to be used. May not be <code>null</code>.
    *        Example:
-   *        <code>SimpleScheduleBuilder.repeatMinutelyForever (1)</code>
+   *        <code>SimpleScheduleBuilder.repeatHourlyForever (1)</code>
    * @param sApplicationID
    *        The internal application ID to be used. May neither be
    *        <code>null</code> nor empty.
@@ -97,12 +139,12 @@ public class ReIndexJob extends AbstractPhotonJob
     ValueEnforcer.notNull (aScheduleBuilder, "ScheduleBuilder");
 
     setApplicationScopeID (sApplicationID);
-    return GlobalQuartzScheduler.getInstance ().scheduleJob (ReIndexJob.class.getName (),
+    return GlobalQuartzScheduler.getInstance ().scheduleJob (PurgeDeletedJob.class.getName (),
                                                              TriggerBuilder.newTrigger ()
                                                                            .startAt (new Date (new Date ().getTime () +
                                                                                                5000))
                                                                            .withSchedule (aScheduleBuilder),
-                                                             ReIndexJob.class,
+                                                             PurgeDeletedJob.class,
                                                              null);
   }
 }
@@ -6,6 +6,8 @@ import java.util.function.Consumer;
 import javax.annotation.Nonnull;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.SimpleCollector;
 
@@ -13,18 +15,18 @@ import com.helger.commons.ValueEnforcer;
 
 /**
  * A Lucene {@link Collector} that always collets all {@link Document} objects.
+ * The stored fields are loaded directly from the segment currently collected,
+ * so no additional reader is needed to resolve the documents.
  *
  * @author Philip Helger
  */
 public class AllDocumentsCollector extends SimpleCollector
 {
-  private final ILuceneDocumentProvider m_aDocProvider;
   private final Consumer <Document> m_aConsumer;
+  private LeafReader m_aLeafReader;
 
-  public AllDocumentsCollector (@Nonnull final ILuceneDocumentProvider aDocProvider,
-                                @Nonnull final Consumer <Document> aConsumer)
+  public AllDocumentsCollector (@Nonnull final Consumer <Document> aConsumer)
   {
-    m_aDocProvider = ValueEnforcer.notNull (aDocProvider, "DocProvider");
     m_aConsumer = ValueEnforcer.notNull (aConsumer, "Consumer");
   }
 
@@ -33,10 +35,17 @@ public class AllDocumentsCollector extends SimpleCollector
     return false;
   }
 
+  @Override
+  protected void doSetNextReader (@Nonnull final LeafReaderContext aContext) throws IOException
+  {
+    m_aLeafReader = aContext.reader ();
+  }
+
   @Override
   public void collect (final int nDocID) throws IOException
   {
-    final Document aDoc = m_aDocProvider.getDocument (nDocID);
+    // The document ID is relative to the current segment
+    final Document aDoc = m_aLeafReader.document (nDocID);
     m_aConsumer.accept (aDoc);
   }
 }
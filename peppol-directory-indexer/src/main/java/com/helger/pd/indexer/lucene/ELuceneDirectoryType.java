@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.lucene;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+
+/**
+ * The Lucene {@link Directory} implementations that can be used for the PYP
+ * index.
+ *
+ * @author Philip Helger
+ */
+public enum ELuceneDirectoryType implements IHasID <String>
+{
+ /** Let Lucene choose the best file system directory for the platform */
+ DEFAULT ("default")
+ {
+   @Override
+   @Nonnull
+   public Directory createDirectory (@Nonnull final Path aPath) throws IOException
+   {
+     return FSDirectory.open (aPath);
+   }
+ },
+ /** Memory mapped files - for large indices on 64-bit hosts */
+ MMAP ("mmap")
+ {
+   @Override
+   @Nonnull
+   public Directory createDirectory (@Nonnull final Path aPath) throws IOException
+   {
+     return new MMapDirectory (aPath);
+   }
+ },
+ /** Positional NIO reads - for hosts with limited virtual memory */
+ NIO ("nio")
+ {
+   @Override
+   @Nonnull
+   public Directory createDirectory (@Nonnull final Path aPath) throws IOException
+   {
+     return new NIOFSDirectory (aPath);
+   }
+ },
+ /** Non-persistent in-memory index - for tests and benchmarks only */
+ MEMORY ("memory")
+ {
+   @Override
+   @Nonnull
+   public Directory createDirectory (@Nonnull final Path aPath)
+   {
+     return new RAMDirectory ();
+   }
+
+   @Override
+   public boolean isPersistent ()
+   {
+     return false;
+   }
+ };
+
+  private final String m_sID;
+
+  private ELuceneDirectoryType (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  /**
+   * @return <code>true</code> if the index content survives a restart,
+   *         <code>false</code> if it is lost on close.
+   */
+  public boolean isPersistent ()
+  {
+    return true;
+  }
+
+  /**
+   * Create a new directory of this type.
+   *
+   * @param aPath
+   *        The file system path of the index. Ignored for non-persistent
+   *        directories. May not be <code>null</code>.
+   * @return The created directory. Never <code>null</code>.
+   * @throws IOException
+   *         On error opening the directory
+   */
+  @Nonnull
+  public abstract Directory createDirectory (@Nonnull Path aPath) throws IOException;
+
+  @Nullable
+  public static ELuceneDirectoryType getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (ELuceneDirectoryType.class, sID);
+  }
+
+  @Nullable
+  public static ELuceneDirectoryType getFromIDOrDefault (@Nullable final String sID,
+                                                         @Nullable final ELuceneDirectoryType eDefault)
+  {
+    return EnumHelper.getFromIDOrDefault (ELuceneDirectoryType.class, sID, eDefault);
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.lucene;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.RandomAccessWeight;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.ToStringUtils;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.hashcode.HashCodeGenerator;
+
+/**
+ * A constant score {@link Query} that matches all documents whose numeric doc
+ * value of a field is in an inclusive range. Documents without a value for the
+ * field are treated as having the value 0. No terms or postings are read, the
+ * value is checked per candidate document, so this is best used as a filter
+ * clause in combination with another query.
+ *
+ * @author Philip Helger
+ */
+public final class NumericDocValuesRangeQuery extends Query
+{
+  private final String m_sField;
+  private final long m_nMin;
+  private final long m_nMax;
+
+  /**
+   * Constructor
+   *
+   * @param sField
+   *        The numeric doc values field to check. May neither be
+   *        <code>null</code> nor empty.
+   * @param nMin
+   *        Minimum value (inclusive).
+   * @param nMax
+   *        Maximum value (inclusive). Must be &ge; nMin.
+   */
+  public NumericDocValuesRangeQuery (@Nonnull @Nonempty final String sField, final long nMin, final long nMax)
+  {
+    ValueEnforcer.notEmpty (sField, "Field");
+    ValueEnforcer.isTrue (nMin <= nMax, "Min must be <= Max");
+    m_sField = sField;
+    m_nMin = nMin;
+    m_nMax = nMax;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getField ()
+  {
+    return m_sField;
+  }
+
+  public long getMin ()
+  {
+    return m_nMin;
+  }
+
+  public long getMax ()
+  {
+    return m_nMax;
+  }
+
+  @Override
+  public Weight createWeight (@Nonnull final IndexSearcher aSearcher, final boolean bNeedsScores) throws IOException
+  {
+    return new RandomAccessWeight (this)
+    {
+      @Override
+      protected Bits getMatchingDocs (@Nonnull final LeafReaderContext aContext) throws IOException
+      {
+        final NumericDocValues aValues = aContext.reader ().getNumericDocValues (m_sField);
+        final int nMaxDoc = aContext.reader ().maxDoc ();
+        if (aValues == null)
+        {
+          // Segment without values for this field
+          return m_nMin <= 0 && m_nMax >= 0 ? new Bits.MatchAllBits (nMaxDoc) : new Bits.MatchNoBits (nMaxDoc);
+        }
+        return new Bits ()
+        {
+          public boolean get (final int nDocID)
+          {
+            final long nValue = aValues.get (nDocID);
+            return nValue >= m_nMin && nValue <= m_nMax;
+          }
+
+          public int length ()
+          {
+            return nMaxDoc;
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public String toString (final String sDefaultField)
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    if (!m_sField.equals (sDefaultField))
+      aSB.append (m_sField).append (':');
+    aSB.append ("dv[").append (m_nMin).append (" TO ").append (m_nMax).append (']');
+    aSB.append (ToStringUtils.boost (getBoost ()));
+    return aSB.toString ();
+  }
+
+  @Override
+  public boolean equals (final Object o)
+  {
+    if (!super.equals (o))
+      return false;
+    final NumericDocValuesRangeQuery rhs = (NumericDocValuesRangeQuery) o;
+    return m_sField.equals (rhs.m_sField) && m_nMin == rhs.m_nMin && m_nMax == rhs.m_nMax;
+  }
+
+  @Override
+  public int hashCode ()
+  {
+    return new HashCodeGenerator (this).append (super.hashCode ())
+                                       .append (m_sField)
+                                       .append (m_nMin)
+                                       .append (m_nMax)
+                                       .getHashCode ();
+  }
+}
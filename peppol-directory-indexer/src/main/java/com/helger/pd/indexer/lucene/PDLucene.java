@@ -18,58 +18,110 @@ package com.helger.pd.indexer.lucene;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat.Mode;
+import org.apache.lucene.codecs.lucene53.Lucene53Codec;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.CorruptIndexException;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexNotFoundException;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.index.TrackingIndexWriter;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.NRTCachingDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.helger.commons.ValueEnforcer;
 import com.helger.commons.callback.IThrowingCallable;
+import com.helger.commons.callback.IThrowingCallableWithParameter;
 import com.helger.commons.callback.IThrowingRunnable;
+import com.helger.commons.collection.CollectionHelper;
+import com.helger.commons.concurrent.ExtendedDefaultThreadFactory;
+import com.helger.commons.concurrent.ManagedExecutorService;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
 import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.state.ESuccess;
+import com.helger.commons.statistics.IMutableStatisticsHandlerCounter;
+import com.helger.commons.statistics.IMutableStatisticsHandlerTimer;
+import com.helger.commons.statistics.StatisticsManager;
+import com.helger.commons.timing.StopWatch;
+import com.helger.pd.indexer.storage.CPDStorage;
+import com.helger.pd.settings.PDSettings;
 import com.helger.photon.basic.app.io.WebFileIO;
 
 /**
- * The singleton wrapper around the Lucene index to be used in PYP.
+ * The singleton wrapper around the Lucene index to be used in PYP.<br>
+ * Searches are performed on near-real-time {@link IndexSearcher} objects
+ * opened from the {@link IndexWriter} and managed by a {@link SearcherManager}.
+ * A background thread refreshes the searcher so that changes become visible
+ * after at most {@link PDSettings#getLuceneRefreshIntervalMS()} milliseconds.
+ * Changes are committed by a separate background committer thread, either
+ * after {@link PDSettings#getLuceneCommitIntervalMS()} milliseconds or after
+ * {@link PDSettings#getLuceneCommitMaxChanges()} changes, whatever comes first.
  *
  * @author Philip Helger
  */
 public final class PDLucene implements Closeable, ILuceneDocumentProvider, ILuceneAnalyzerProvider
 {
   private static final Logger s_aLogger = LoggerFactory.getLogger (PDLucene.class);
+  private static final IMutableStatisticsHandlerCounter s_aStatsCommits = StatisticsManager.getCounterHandler (PDLucene.class.getName () +
+                                                                                                               "$commits");
+  private static final IMutableStatisticsHandlerTimer s_aStatsCommitTimer = StatisticsManager.getTimerHandler (PDLucene.class.getName () +
+                                                                                                              "$commit");
 
-  private final Lock m_aLock = new ReentrantLock ();
+  // Held shared by searches and writers, held exclusively by close
+  private final SimpleReadWriteLock m_aLifecycleLock = new SimpleReadWriteLock ();
+  // Serializes all index mutations
+  private final Lock m_aWriteLock = new ReentrantLock ();
   private final Directory m_aDir;
+  private final ELuceneDirectoryType m_eDirType;
   private final Analyzer m_aAnalyzer;
   private final IndexWriter m_aIndexWriter;
-  private DirectoryReader m_aIndexReader;
-  private IndexReader m_aSearchReader;
-  private IndexSearcher m_aSearcher;
+  private final TrackingIndexWriter m_aTrackingWriter;
+  private final SearcherManager m_aSearcherMgr;
+  private final ControlledRealTimeReopenThread <IndexSearcher> m_aReopenThread;
   private final AtomicBoolean m_aClosing = new AtomicBoolean (false);
-  private final AtomicInteger m_aWriterChanges = new AtomicInteger (0);
+  private final AtomicLong m_aLastWriteGeneration = new AtomicLong (0);
+  private final int m_nCommitMaxChanges;
+  private final ScheduledExecutorService m_aCommitter = Executors.newSingleThreadScheduledExecutor (new ExtendedDefaultThreadFactory ("PDLucene-Committer"));
+  private final AtomicInteger m_aUncommittedChanges = new AtomicInteger (0);
+  private final AtomicBoolean m_aCommitScheduled = new AtomicBoolean (false);
+  private final AtomicLong m_aLastCommitGeneration = new AtomicLong (-1);
+  private final AtomicLong m_aLastCommitDurationMS = new AtomicLong (-1);
 
   @Nonnull
   public static File getLuceneIndexDir ()
@@ -77,23 +129,174 @@ public final class PDLucene implements Closeable, ILuceneDocumentProvider, ILuce
     return WebFileIO.getDataIO ().getFile ("lucene-index");
   }
 
+  /**
+   * Create the index writer configuration based on the settings in
+   * {@link PDSettings}.
+   *
+   * @param aAnalyzer
+   *        The analyzer to use. May not be <code>null</code>.
+   * @return The new writer configuration. Never <code>null</code>.
+   */
+  @Nonnull
+  private static IndexWriterConfig _createWriterConfig (@Nonnull final Analyzer aAnalyzer)
+  {
+    final double dRAMBufferSizeMB = PDSettings.getLuceneRAMBufferSizeMB ();
+    final int nMaxBufferedDocs = PDSettings.getLuceneMaxBufferedDocs ();
+    final double dSegmentsPerTier = PDSettings.getLuceneMergeSegmentsPerTier ();
+    final double dMaxMergedSegmentMB = PDSettings.getLuceneMergeMaxMergedSegmentMB ();
+    final double dDeletesPctAllowed = PDSettings.getLuceneMergeDeletesPctAllowed ();
+    final int nMergeThreads = PDSettings.getLuceneMergeThreads ();
+    final Mode eStoredFieldsMode = PDSettings.isLuceneStoredFieldsBestCompression () ? Mode.BEST_COMPRESSION
+                                                                                      : Mode.BEST_SPEED;
+
+    final TieredMergePolicy aMergePolicy = new TieredMergePolicy ();
+    aMergePolicy.setSegmentsPerTier (dSegmentsPerTier);
+    aMergePolicy.setMaxMergedSegmentMB (dMaxMergedSegmentMB);
+    aMergePolicy.setForceMergeDeletesPctAllowed (dDeletesPctAllowed);
+
+    final ConcurrentMergeScheduler aMergeScheduler = new ConcurrentMergeScheduler ();
+    if (nMergeThreads > 0)
+    {
+      // Allow a few merges to queue up before indexing threads are stalled
+      aMergeScheduler.setMaxMergesAndThreads (nMergeThreads + 5, nMergeThreads);
+    }
+
+    final IndexWriterConfig aWriterConfig = new IndexWriterConfig (aAnalyzer);
+    aWriterConfig.setOpenMode (OpenMode.CREATE_OR_APPEND);
+    // Set max buffered docs first, as it may not be disabled together with the
+    // RAM buffer
+    aWriterConfig.setMaxBufferedDocs (nMaxBufferedDocs);
+    aWriterConfig.setRAMBufferSizeMB (dRAMBufferSizeMB);
+    aWriterConfig.setMergePolicy (aMergePolicy);
+    aWriterConfig.setMergeScheduler (aMergeScheduler);
+    aWriterConfig.setCodec (new Lucene53Codec (eStoredFieldsMode));
+
+    s_aLogger.info ("Lucene index writer uses a RAM buffer of " +
+                    dRAMBufferSizeMB +
+                    " MB, max buffered docs " +
+                    (nMaxBufferedDocs > 0 ? Integer.toString (nMaxBufferedDocs) : "disabled") +
+                    ", " +
+                    dSegmentsPerTier +
+                    " segments per tier, max merged segment " +
+                    dMaxMergedSegmentMB +
+                    " MB, " +
+                    dDeletesPctAllowed +
+                    "% deletes allowed, " +
+                    (nMergeThreads > 0 ? Integer.toString (nMergeThreads) : "auto") +
+                    " merge threads and stored fields mode " +
+                    eStoredFieldsMode);
+    return aWriterConfig;
+  }
+
+  /**
+   * Constructor using the directory settings from {@link PDSettings}.
+   *
+   * @throws IOException
+   *         On error opening the index
+   */
   public PDLucene () throws IOException
   {
+    this (ELuceneDirectoryType.getFromIDOrDefault (PDSettings.getLuceneDirectoryType (), ELuceneDirectoryType.DEFAULT),
+          PDSettings.isLuceneNRTCachingEnabled ());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param eDirType
+   *        The Lucene directory implementation to use. May not be
+   *        <code>null</code>.
+   * @param bNRTCaching
+   *        <code>true</code> to cache small freshly flushed segments in memory
+   *        using an {@link NRTCachingDirectory}.
+   * @throws IOException
+   *         On error opening the index
+   */
+  public PDLucene (@Nonnull final ELuceneDirectoryType eDirType, final boolean bNRTCaching) throws IOException
+  {
+    ValueEnforcer.notNull (eDirType, "DirType");
+
     // Where to store the index files
     final Path aPath = getLuceneIndexDir ().toPath ();
-    m_aDir = FSDirectory.open (aPath);
+    final Directory aBaseDir = eDirType.createDirectory (aPath);
+    m_aDir = bNRTCaching ? new NRTCachingDirectory (aBaseDir,
+                                                    PDSettings.getLuceneNRTCachingMaxMergeSizeMB (),
+                                                    PDSettings.getLuceneNRTCachingMaxCachedMB ())
+                         : aBaseDir;
+    m_eDirType = eDirType;
 
-    // Analyzer to use
-    m_aAnalyzer = new StandardAnalyzer ();
+    // Analyzer to use - the substring field is split into n-grams
+    m_aAnalyzer = new PerFieldAnalyzerWrapper (new StandardAnalyzer (),
+                                               CollectionHelper.newMap (CPDStorage.FIELD_ALL_FIELDS_NGRAM,
+                                                                        new PDNGramAnalyzer ()));
 
     // Create the index writer
-    final IndexWriterConfig aWriterConfig = new IndexWriterConfig (m_aAnalyzer);
-    aWriterConfig.setOpenMode (OpenMode.CREATE_OR_APPEND);
-    m_aIndexWriter = new IndexWriter (m_aDir, aWriterConfig);
+    m_aIndexWriter = new IndexWriter (m_aDir, _createWriterConfig (m_aAnalyzer));
+    m_aTrackingWriter = new TrackingIndexWriter (m_aIndexWriter);
+
+    // Near-real-time searchers directly from the writer
+    m_aSearcherMgr = new SearcherManager (m_aIndexWriter, true, new SearcherFactory ());
+
+    // Background refresher - waiting for a generation triggers an immediate
+    // refresh
+    final double dMaxStaleSecs = PDSettings.getLuceneRefreshIntervalMS () / 1000d;
+    m_aReopenThread = new ControlledRealTimeReopenThread <> (m_aTrackingWriter, m_aSearcherMgr, dMaxStaleSecs, 0);
+    m_aReopenThread.setName ("PDLucene-NRT-Refresher");
+    m_aReopenThread.setDaemon (true);
+    m_aReopenThread.start ();
 
-    // Reader and searcher are opened on demand
+    // Background committer
+    final long nCommitIntervalMS = PDSettings.getLuceneCommitIntervalMS ();
+    m_nCommitMaxChanges = PDSettings.getLuceneCommitMaxChanges ();
+    m_aCommitter.scheduleWithFixedDelay (this::_commitPendingChanges,
+                                         nCommitIntervalMS,
+                                         nCommitIntervalMS,
+                                         TimeUnit.MILLISECONDS);
 
-    s_aLogger.info ("Lucene index operating on " + aPath);
+    s_aLogger.info ("Lucene index operating on " +
+                    (eDirType.isPersistent () ? aPath : "memory") +
+                    " using " +
+                    m_aDir +
+                    " with a refresh interval of " +
+                    dMaxStaleSecs +
+                    " seconds and a commit interval of " +
+                    nCommitIntervalMS +
+                    " ms or " +
+                    m_nCommitMaxChanges +
+                    " changes");
+  }
+
+  /**
+   * Commit all pending changes of the index writer. This is only invoked from
+   * the committer thread.
+   */
+  private void _commitPendingChanges ()
+  {
+    m_aCommitScheduled.set (false);
+    final int nChanges = m_aUncommittedChanges.getAndSet (0);
+    if (nChanges > 0 && !isClosing ())
+    {
+      try
+      {
+        final StopWatch aSW = StopWatch.createdStarted ();
+        m_aIndexWriter.commit ();
+        final long nMillis = aSW.stopAndGetMillis ();
+
+        m_aLastCommitGeneration.set (SegmentInfos.getLastCommitGeneration (m_aDir));
+        m_aLastCommitDurationMS.set (nMillis);
+        s_aStatsCommits.increment ();
+        s_aStatsCommitTimer.addTime (nMillis);
+
+        if (s_aLogger.isDebugEnabled ())
+          s_aLogger.debug ("Committed " + nChanges + " changes to the Lucene index in " + nMillis + " ms");
+      }
+      catch (final IOException | RuntimeException ex)
+      {
+        // Try again next time
+        m_aUncommittedChanges.addAndGet (nChanges);
+        s_aLogger.error ("Failed to commit " + nChanges + " changes to the Lucene index", ex);
+      }
+    }
   }
 
   public void close () throws IOException
@@ -101,11 +304,14 @@ public final class PDLucene implements Closeable, ILuceneDocumentProvider, ILuce
     // Avoid double closing
     if (!m_aClosing.getAndSet (true))
     {
-      m_aLock.lock ();
+      // Wait until all running searches and writes are finished
+      m_aLifecycleLock.writeLock ().lock ();
       try
       {
         // Start closing
-        StreamHelper.close (m_aIndexReader);
+        ManagedExecutorService.shutdownAndWaitUntilAllTasksAreFinished (m_aCommitter);
+        StreamHelper.close (m_aReopenThread);
+        StreamHelper.close (m_aSearcherMgr);
 
         // Ensure to commit the writer in case of pending changes
         if (m_aIndexWriter != null && m_aIndexWriter.isOpen ())
@@ -116,7 +322,7 @@ public final class PDLucene implements Closeable, ILuceneDocumentProvider, ILuce
       }
       finally
       {
-        m_aLock.unlock ();
+        m_aLifecycleLock.writeLock ().unlock ();
       }
     }
   }
@@ -132,6 +338,16 @@ public final class PDLucene implements Closeable, ILuceneDocumentProvider, ILuce
       throw new IllegalStateException ("The Lucene index is shutting down so no access is possible");
   }
 
+  /**
+   * @return The Lucene directory implementation in use. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public ELuceneDirectoryType getDirectoryType ()
+  {
+    return m_eDirType;
+  }
+
   /**
    * @return The analyzer to be used for all Lucene based actions
    */
@@ -143,97 +359,201 @@ public final class PDLucene implements Closeable, ILuceneDocumentProvider, ILuce
   }
 
   @Nonnull
-  private IndexWriter _getWriter ()
+  private TrackingIndexWriter _getWriter ()
   {
     _checkClosing ();
-    return m_aIndexWriter;
+    return m_aTrackingWriter;
   }
 
-  @Nullable
-  private DirectoryReader _getReader () throws IOException
+  private void _onWrite (final long nGeneration)
   {
-    _checkClosing ();
-    try
-    {
-      // Commit the writer changes only if a reader is requested
-      if (m_aWriterChanges.intValue () > 0)
+    // Remember the highest generation written so far
+    m_aLastWriteGeneration.accumulateAndGet (nGeneration, Math::max);
+
+    // Commit early if too many changes are pending
+    if (m_aUncommittedChanges.incrementAndGet () >= m_nCommitMaxChanges && !m_aCommitScheduled.getAndSet (true))
+      try
       {
-        s_aLogger.info ("Lazily committing " + m_aWriterChanges.intValue () + " changes to the Lucene index");
-        _getWriter ().commit ();
-        m_aWriterChanges.set (0);
+        m_aCommitter.execute (this::_commitPendingChanges);
       }
-
-      // Is a new reader required because the index changed?
-      final DirectoryReader aNewReader = m_aIndexReader != null ? DirectoryReader.openIfChanged (m_aIndexReader)
-                                                                : DirectoryReader.open (m_aDir);
-      if (aNewReader != null)
+      catch (final RejectedExecutionException ex)
       {
-        // Something changed in the index
-        m_aIndexReader = aNewReader;
-        m_aSearcher = null;
-
-        if (s_aLogger.isDebugEnabled ())
-          s_aLogger.debug ("Contents of index changed. Creating new index reader");
+        // Shutting down - the final commit happens in close
       }
-      return m_aIndexReader;
-    }
-    catch (final IndexNotFoundException ex)
-    {
-      // No such index
-      return null;
-    }
   }
 
   /**
-   * Get the Lucene {@link Document} matching the specified ID
+   * Get a value from the user data of the last commit.
    *
-   * @param nDocID
-   *        Document ID
-   * @return <code>null</code> if no reader could be obtained or no such
-   *         document exists.
-   * @throws IOException
-   *         On IO error
+   * @param sKey
+   *        The key to query. May not be <code>null</code>.
+   * @return <code>null</code> if no such user data is present.
    */
   @Nullable
-  public Document getDocument (final int nDocID) throws IOException
+  public String getCommitUserData (@Nonnull final String sKey)
   {
+    ValueEnforcer.notNull (sKey, "Key");
     _checkClosing ();
+    return m_aIndexWriter.getCommitData ().get (sKey);
+  }
 
-    final IndexReader aReader = _getReader ();
-    if (aReader == null)
-      return null;
-    return aReader.document (nDocID);
+  /**
+   * Set a value in the user data that is stored with the next commit. Should
+   * be called from within {@link #runAtomic(IThrowingRunnable)}.
+   *
+   * @param sKey
+   *        The key to set. May not be <code>null</code>.
+   * @param sValue
+   *        The value to set. May not be <code>null</code>.
+   */
+  public void setCommitUserData (@Nonnull final String sKey, @Nonnull final String sValue)
+  {
+    ValueEnforcer.notNull (sKey, "Key");
+    ValueEnforcer.notNull (sValue, "Value");
+
+    _checkClosing ();
+    final Map <String, String> aUserData = new HashMap <> (m_aIndexWriter.getCommitData ());
+    aUserData.put (sKey, sValue);
+    m_aIndexWriter.setCommitData (aUserData);
+    // Ensure it gets committed
+    _onWrite (m_aLastWriteGeneration.get ());
   }
 
   /**
-   * Get a searcher on this index.
+   * @return The generation of the last commit performed by the background
+   *         committer or -1 if no commit happened so far.
+   */
+  public long getLastCommitGeneration ()
+  {
+    return m_aLastCommitGeneration.get ();
+  }
+
+  /**
+   * @return The duration of the last commit performed by the background
+   *         committer in milliseconds or -1 if no commit happened so far.
+   */
+  public long getLastCommitDurationMS ()
+  {
+    return m_aLastCommitDurationMS.get ();
+  }
+
+  /**
+   * @return The number of changes that are not yet committed.
+   */
+  @Nonnegative
+  public int getUncommittedChangeCount ()
+  {
+    return m_aUncommittedChanges.get ();
+  }
+
+  /**
+   * Acquire the current near-real-time searcher. Each searcher acquired with
+   * this method must be released with {@link #releaseSearcher(IndexSearcher)}
+   * after usage. This method never commits or reopens the index.
    *
-   * @return <code>null</code> if no reader or no searcher could be obtained
+   * @return The current searcher. Never <code>null</code>.
    * @throws IOException
    *         On IO error
+   * @see #callWithSearcher(IThrowingCallableWithParameter)
    */
-  @Nullable
-  public IndexSearcher getSearcher () throws IOException
+  @Nonnull
+  public IndexSearcher acquireSearcher () throws IOException
   {
     _checkClosing ();
-    final IndexReader aReader = _getReader ();
-    if (aReader == null)
+    return m_aSearcherMgr.acquire ();
+  }
+
+  /**
+   * Release a searcher previously acquired with {@link #acquireSearcher()}.
+   *
+   * @param aSearcher
+   *        The searcher to be released. May be <code>null</code>.
+   * @throws IOException
+   *         On IO error
+   */
+  public void releaseSearcher (@Nullable final IndexSearcher aSearcher) throws IOException
+  {
+    if (aSearcher != null)
+      m_aSearcherMgr.release (aSearcher);
+  }
+
+  /**
+   * Run the provided callback with the current searcher. The searcher is
+   * acquired before and released after the callback is invoked. Searches don't
+   * block each other and are not blocked by index modifications. Only
+   * {@link #close()} waits until all running searches are finished.
+   *
+   * @param aCallback
+   *        The callback to be invoked. May not be <code>null</code>.
+   * @return The result of the callback or <code>null</code> if the index is
+   *         just closing.
+   * @throws IOException
+   *         On IO error or if thrown by the callback
+   * @param <T>
+   *        Result type
+   */
+  @Nullable
+  public <T> T callWithSearcher (@Nonnull final IThrowingCallableWithParameter <T, IndexSearcher, IOException> aCallback) throws IOException
+  {
+    m_aLifecycleLock.readLock ().lock ();
+    try
+    {
+      if (isClosing ())
+        return null;
+
+      final IndexSearcher aSearcher = m_aSearcherMgr.acquire ();
+      try
+      {
+        return aCallback.call (aSearcher);
+      }
+      finally
+      {
+        m_aSearcherMgr.release (aSearcher);
+      }
+    }
+    finally
     {
-      // Index not readable
-      return null;
+      m_aLifecycleLock.readLock ().unlock ();
     }
+  }
 
-    if (m_aSearchReader == aReader)
+  /**
+   * Wait until all changes performed so far are visible to newly acquired
+   * searchers. This triggers an immediate refresh in the background refresher
+   * and should only be used where read-your-writes semantics are required.
+   *
+   * @throws IOException
+   *         If waiting was interrupted
+   */
+  public void waitForPendingChanges () throws IOException
+  {
+    _checkClosing ();
+    try
+    {
+      m_aReopenThread.waitForGeneration (m_aLastWriteGeneration.get ());
+    }
+    catch (final InterruptedException ex)
     {
-      // Reader did not change - use cached searcher
-      assert m_aSearcher != null;
-      return m_aSearcher;
+      Thread.currentThread ().interrupt ();
+      throw new IOException ("Interrupted while waiting for Lucene index refresh", ex);
     }
+  }
 
-    // Create new searcher only if necessary
-    m_aSearchReader = aReader;
-    m_aSearcher = new IndexSearcher (aReader);
-    return m_aSearcher;
+  /**
+   * Get the Lucene {@link Document} matching the specified ID from the current
+   * searcher. Document IDs are only stable within a single searcher, so prefer
+   * to resolve documents from the searcher that was used for searching.
+   *
+   * @param nDocID
+   *        Document ID
+   * @return <code>null</code> if no such document exists.
+   * @throws IOException
+   *         On IO error
+   */
+  @Nullable
+  public Document getDocument (final int nDocID) throws IOException
+  {
+    return callWithSearcher (aSearcher -> aSearcher.doc (nDocID));
   }
 
   /**
@@ -255,8 +575,7 @@ public final class PDLucene implements Closeable, ILuceneDocumentProvider, ILuce
   public void updateDocument (@Nullable final Term aDelTerm,
                               @Nonnull final Iterable <? extends IndexableField> aDoc) throws IOException
   {
-    _getWriter ().updateDocument (aDelTerm, aDoc);
-    m_aWriterChanges.incrementAndGet ();
+    _onWrite (_getWriter ().updateDocument (aDelTerm, aDoc));
   }
 
   /**
@@ -277,8 +596,7 @@ public final class PDLucene implements Closeable, ILuceneDocumentProvider, ILuce
   public void updateDocuments (@Nullable final Term aDelTerm,
                                @Nonnull final Iterable <? extends Iterable <? extends IndexableField>> aDocs) throws IOException
   {
-    _getWriter ().updateDocuments (aDelTerm, aDocs);
-    m_aWriterChanges.incrementAndGet ();
+    _onWrite (_getWriter ().updateDocuments (aDelTerm, aDocs));
   }
 
   /**
@@ -294,12 +612,120 @@ public final class PDLucene implements Closeable, ILuceneDocumentProvider, ILuce
    */
   public void deleteDocuments (final Term... terms) throws IOException
   {
-    _getWriter ().deleteDocuments (terms);
-    m_aWriterChanges.incrementAndGet ();
+    _onWrite (_getWriter ().deleteDocuments (terms));
+  }
+
+  /**
+   * Deletes the document(s) matching any of the provided queries. All given
+   * deletes are applied and flushed atomically at the same time.
+   *
+   * @param aQueries
+   *        array of queries to identify the documents to be deleted
+   * @throws CorruptIndexException
+   *         if the index is corrupt
+   * @throws IOException
+   *         if there is a low-level IO error
+   */
+  public void deleteDocuments (final Query... aQueries) throws IOException
+  {
+    _onWrite (_getWriter ().deleteDocuments (aQueries));
   }
 
   /**
-   * Run the provided action within a locked section.
+   * Updates a document's numeric doc values field in place for all documents
+   * containing the provided term. The field must have been added as a numeric
+   * doc values field to the documents before. No document is re-indexed.
+   *
+   * @param aTerm
+   *        the term to identify the document(s) to be updated. May not be
+   *        <code>null</code>.
+   * @param sField
+   *        field name of the numeric doc values field to update. May not be
+   *        <code>null</code>.
+   * @param nValue
+   *        new value for the field
+   * @throws CorruptIndexException
+   *         if the index is corrupt
+   * @throws IOException
+   *         if there is a low-level IO error
+   */
+  public void updateNumericDocValue (@Nonnull final Term aTerm,
+                                     @Nonnull final String sField,
+                                     final long nValue) throws IOException
+  {
+    final TrackingIndexWriter aWriter = _getWriter ();
+    aWriter.getIndexWriter ().updateNumericDocValue (aTerm, sField, nValue);
+    // TrackingIndexWriter has no such method, so the generation needs to be
+    // incremented manually so that waitForPendingChanges sees the update
+    _onWrite (aWriter.getAndIncrementGeneration ());
+  }
+
+  /**
+   * Merge all segments with more deleted documents than the configured
+   * percentage and commit the result, so that the disk space of the deleted
+   * documents is released. This blocks until the merges are finished and may
+   * be expensive on large indices, so it should only be called at off-peak
+   * times. Nothing is merged or committed if the index does not contain any
+   * deleted documents - neither flushed nor buffered ones.
+   *
+   * @throws IOException
+   *         if there is a low-level IO error
+   */
+  public void forceMergeDeletes () throws IOException
+  {
+    final IndexWriter aIndexWriter = _getWriter ().getIndexWriter ();
+    if (!aIndexWriter.hasDeletions ())
+    {
+      // maxDoc equals numDocs - nothing to reclaim
+      return;
+    }
+    aIndexWriter.forceMergeDeletes (true);
+
+    // Commit in the committer thread and wait for it, so that the files of the
+    // merged segments can be deleted
+    m_aUncommittedChanges.incrementAndGet ();
+    try
+    {
+      m_aCommitter.submit (this::_commitPendingChanges).get ();
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new IOException ("Interrupted while waiting for commit", ex);
+    }
+    catch (final ExecutionException | RejectedExecutionException ex)
+    {
+      throw new IOException ("Failed to commit merged segments", ex);
+    }
+  }
+
+  /**
+   * @return The total size of all files in the index directory in bytes.
+   *         Always &ge; 0.
+   * @throws IOException
+   *         if there is a low-level IO error
+   */
+  @Nonnegative
+  public long getDirectorySizeBytes () throws IOException
+  {
+    _checkClosing ();
+    long ret = 0;
+    for (final String sFilename : m_aDir.listAll ())
+      try
+      {
+        ret += m_aDir.fileLength (sFilename);
+      }
+      catch (final FileNotFoundException | NoSuchFileException ex)
+      {
+        // File was deleted in the meantime
+      }
+    return ret;
+  }
+
+  /**
+   * Run the provided action within a locked section. Only one locked section
+   * can be active at a time, but searches performed via
+   * {@link #callWithSearcher(IThrowingCallableWithParameter)} are not blocked.
    *
    * @param aRunnable
    *        Callback to be executed
@@ -310,16 +736,24 @@ public final class PDLucene implements Closeable, ILuceneDocumentProvider, ILuce
   @Nonnull
   public ESuccess runAtomic (@Nonnull final IThrowingRunnable <IOException> aRunnable) throws IOException
   {
-    m_aLock.lock ();
+    m_aLifecycleLock.readLock ().lock ();
     try
     {
       if (isClosing ())
         return ESuccess.FAILURE;
-      aRunnable.run ();
+      m_aWriteLock.lock ();
+      try
+      {
+        aRunnable.run ();
+      }
+      finally
+      {
+        m_aWriteLock.unlock ();
+      }
     }
     finally
     {
-      m_aLock.unlock ();
+      m_aLifecycleLock.readLock ().unlock ();
     }
     return ESuccess.SUCCESS;
   }
@@ -341,11 +775,21 @@ public final class PDLucene implements Closeable, ILuceneDocumentProvider, ILuce
   @Nullable
   public <T> T callAtomic (@Nonnull final IThrowingCallable <T, Exception> aRunnable) throws IOException
   {
-    m_aLock.lock ();
+    m_aLifecycleLock.readLock ().lock ();
     try
     {
       if (!isClosing ())
-        return aRunnable.call ();
+      {
+        m_aWriteLock.lock ();
+        try
+        {
+          return aRunnable.call ();
+        }
+        finally
+        {
+          m_aWriteLock.unlock ();
+        }
+      }
     }
     catch (final Exception ex)
     {
@@ -355,7 +799,7 @@ public final class PDLucene implements Closeable, ILuceneDocumentProvider, ILuce
     }
     finally
     {
-      m_aLock.unlock ();
+      m_aLifecycleLock.readLock ().unlock ();
     }
     return null;
   }
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.lucene;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.ngram.NGramTokenFilter;
+import org.apache.lucene.analysis.standard.StandardFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+
+/**
+ * Analyzer that splits the text like the
+ * {@link org.apache.lucene.analysis.standard.StandardAnalyzer} and indexes all
+ * n-grams of each token between {@link #MIN_GRAM} and {@link #MAX_GRAM}
+ * characters. All n-grams of a token share the position of the token. This
+ * allows substring searches with plain term queries.
+ *
+ * @author Philip Helger
+ */
+public final class PDNGramAnalyzer extends Analyzer
+{
+  /** The minimum n-gram length */
+  public static final int MIN_GRAM = 2;
+  /** The maximum n-gram length */
+  public static final int MAX_GRAM = 10;
+
+  public PDNGramAnalyzer ()
+  {}
+
+  @Override
+  protected TokenStreamComponents createComponents (final String sFieldName)
+  {
+    final StandardTokenizer aSource = new StandardTokenizer ();
+    TokenStream aResult = new StandardFilter (aSource);
+    aResult = new LowerCaseFilter (aResult);
+    aResult = new NGramTokenFilter (aResult, MIN_GRAM, MAX_GRAM);
+    return new TokenStreamComponents (aSource, aResult);
+  }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.mgr;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.joda.time.LocalDateTime;
+
+import com.helger.commons.state.ESuccess;
+import com.helger.pd.indexer.domain.IndexerWorkItem;
+
+/**
+ * Callback interface for the {@link IndexerWorkItemQueue} that performs the
+ * actual work.
+ *
+ * @author Philip Helger
+ */
+interface IIndexerWorkItemHandler
+{
+  /**
+   * Determine the key of the remote host that is contacted when executing the
+   * provided item. This method is invoked in a worker thread.
+   *
+   * @param aItem
+   *        The item to be executed. Never <code>null</code>.
+   * @return <code>null</code> if no remote host is contacted, so that neither
+   *         the per-host limit nor the circuit breaker apply.
+   */
+  @Nullable
+  String getHostKey (@Nonnull IndexerWorkItem aItem);
+
+  /**
+   * Execute the provided item.
+   *
+   * @param aItem
+   *        The item to be executed. Never <code>null</code>.
+   * @return {@link ESuccess}
+   */
+  @Nonnull
+  ESuccess execute (@Nonnull IndexerWorkItem aItem);
+
+  /**
+   * Invoked instead of {@link #execute(IndexerWorkItem)} if the circuit
+   * breaker of the host of the item is open.
+   *
+   * @param aItem
+   *        The item that was not executed. Never <code>null</code>.
+   * @param aRetryDT
+   *        The earliest date time at which the item should be retried. Never
+   *        <code>null</code>.
+   */
+  void onHostUnavailable (@Nonnull IndexerWorkItem aItem, @Nonnull LocalDateTime aRetryDT);
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.mgr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.CollectionHelper;
+import com.helger.commons.concurrent.ExtendedDefaultThreadFactory;
+import com.helger.commons.concurrent.ManagedExecutorService;
+import com.helger.commons.state.ESuccess;
+import com.helger.commons.statistics.IMutableStatisticsHandlerSize;
+import com.helger.commons.statistics.StatisticsManager;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.pd.indexer.storage.PDIndexEntry;
+import com.helger.pd.indexer.storage.PDStorageManager;
+
+/**
+ * The single index writer stage that is fed by the fetch workers of the
+ * {@link IndexerWorkItemQueue}. All entries handed in concurrently are
+ * collected and written to the index with a single
+ * {@link PDStorageManager#createOrUpdateEntries(Iterable)} call. The calling
+ * fetch worker is blocked until its entry was written, so that the result can
+ * be handled as before.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+final class IndexerBatchWriter
+{
+  /**
+   * A single entry to write together with the future of the waiting caller.
+   */
+  private static final class PendingEntry
+  {
+    private final PDIndexEntry m_aEntry;
+    private final CompletableFuture <ESuccess> m_aResult = new CompletableFuture <> ();
+
+    PendingEntry (@Nonnull final PDIndexEntry aEntry)
+    {
+      m_aEntry = aEntry;
+    }
+  }
+
+  private static final Logger s_aLogger = LoggerFactory.getLogger (IndexerBatchWriter.class);
+  private static final IMutableStatisticsHandlerSize s_aStatsBatchSize = StatisticsManager.getSizeHandler (IndexerBatchWriter.class.getName () +
+                                                                                                            "$batchsize");
+  /** The time the writer thread waits for new entries before re-checking */
+  private static final long POLL_MILLIS = 100;
+
+  private final PDStorageManager m_aStorageMgr;
+  private final int m_nMaxBatchSize;
+  private final BlockingQueue <PendingEntry> m_aQueue = new LinkedBlockingQueue <> ();
+  private final ThreadPoolExecutor m_aWriterThreadPool = new ThreadPoolExecutor (1,
+                                                                                 1,
+                                                                                 60L,
+                                                                                 TimeUnit.SECONDS,
+                                                                                 new LinkedBlockingQueue <Runnable> (),
+                                                                                 new ExtendedDefaultThreadFactory ("IndexerBatchWriter"));
+  private volatile boolean m_bStopped = false;
+
+  public IndexerBatchWriter (@Nonnull final PDStorageManager aStorageMgr, @Nonnegative final int nMaxBatchSize)
+  {
+    m_aStorageMgr = ValueEnforcer.notNull (aStorageMgr, "StorageMgr");
+    m_nMaxBatchSize = ValueEnforcer.isGT0 (nMaxBatchSize, "MaxBatchSize");
+    m_aWriterThreadPool.submit (this::_run);
+  }
+
+  private void _run ()
+  {
+    final List <PendingEntry> aBatch = new ArrayList <> (m_nMaxBatchSize);
+    while (true)
+    {
+      try
+      {
+        final PendingEntry aFirst = m_aQueue.poll (POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (aFirst == null)
+        {
+          if (m_bStopped)
+            break;
+          continue;
+        }
+        aBatch.add (aFirst);
+      }
+      catch (final InterruptedException ex)
+      {
+        s_aLogger.warn ("Indexer batch writer was interrupted");
+        Thread.currentThread ().interrupt ();
+        break;
+      }
+
+      // Take everything that arrived in the meantime
+      m_aQueue.drainTo (aBatch, m_nMaxBatchSize - 1);
+      _writeBatch (aBatch);
+      aBatch.clear ();
+    }
+
+    // Write everything that is left
+    m_aQueue.drainTo (aBatch);
+    if (!aBatch.isEmpty ())
+      _writeBatch (aBatch);
+  }
+
+  private void _writeBatch (@Nonnull final List <PendingEntry> aBatch)
+  {
+    s_aStatsBatchSize.addSize (aBatch.size ());
+
+    final List <PDIndexEntry> aEntries = new ArrayList <> (aBatch.size ());
+    for (final PendingEntry aPending : aBatch)
+      aEntries.add (aPending.m_aEntry);
+
+    try
+    {
+      final ESuccess eSuccess = m_aStorageMgr.createOrUpdateEntries (aEntries);
+      for (final PendingEntry aPending : aBatch)
+        aPending.m_aResult.complete (eSuccess);
+    }
+    catch (final Throwable t)
+    {
+      for (final PendingEntry aPending : aBatch)
+        aPending.m_aResult.completeExceptionally (t);
+    }
+  }
+
+  /**
+   * Create or update the provided entry as part of the next batch. This method
+   * blocks until the entry was written.
+   *
+   * @param aEntry
+   *        The entry to be written. May not be <code>null</code>.
+   * @return {@link ESuccess}
+   * @throws IOException
+   *         On Lucene error
+   */
+  @Nonnull
+  public ESuccess createOrUpdateEntry (@Nonnull final PDIndexEntry aEntry) throws IOException
+  {
+    ValueEnforcer.notNull (aEntry, "Entry");
+
+    if (m_bStopped)
+    {
+      // Writer is already stopped - write directly
+      return m_aStorageMgr.createOrUpdateEntries (CollectionHelper.newList (aEntry));
+    }
+
+    final PendingEntry aPending = new PendingEntry (aEntry);
+    m_aQueue.add (aPending);
+    try
+    {
+      return aPending.m_aResult.get ();
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new IOException ("Interrupted while waiting for the index writer", ex);
+    }
+    catch (final ExecutionException ex)
+    {
+      final Throwable aCause = ex.getCause ();
+      if (aCause instanceof IOException)
+        throw (IOException) aCause;
+      if (aCause instanceof RuntimeException)
+        throw (RuntimeException) aCause;
+      throw new IOException ("Failed to write index entry", aCause);
+    }
+  }
+
+  /**
+   * Stop the writer thread. All queued entries are written before this method
+   * returns.
+   */
+  public void stop ()
+  {
+    m_bStopped = true;
+    ManagedExecutorService.shutdownAndWaitUntilAllTasksAreFinished (m_aWriterThreadPool);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("MaxBatchSize", m_nMaxBatchSize)
+                                       .append ("PendingEntries", m_aQueue.size ())
+                                       .toString ();
+  }
+}
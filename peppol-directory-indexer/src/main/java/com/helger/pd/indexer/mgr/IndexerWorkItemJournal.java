@@ -0,0 +1,734 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.mgr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.concurrent.ExtendedDefaultThreadFactory;
+import com.helger.commons.concurrent.ManagedExecutorService;
+import com.helger.commons.microdom.IMicroAttribute;
+import com.helger.commons.microdom.IMicroElement;
+import com.helger.commons.microdom.MicroElement;
+import com.helger.commons.microdom.convert.MicroTypeConverter;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.pd.indexer.domain.IndexerWorkItem;
+
+/**
+ * A crash-safe, append-only journal of the {@link IndexerWorkItem}s of the
+ * indexer work queue. Each queued item is recorded as an enqueue record, and
+ * each item leaving the queue is recorded as a completion record. After a JVM
+ * crash all items without a completion record are replayed.<br>
+ * The journal consists of memory-mapped segment files of a fixed size. Each
+ * record consists of its length, a CRC32 checksum and the payload, so that a
+ * torn record at the end of a segment is detected and ignored. Appending a
+ * record only copies it into the mapped memory, which survives a crash of the
+ * JVM. The next segment is mapped in advance by a background thread, so that
+ * rolling over to it only swaps the buffers. The same thread flushes the mapped
+ * memory to disk periodically and compacts the journal: the still open items of
+ * all previous segments are copied into the current segment, and the previous
+ * segments are deleted afterwards. Flushing, encoding and deleting happen
+ * outside of the lock that is used for appending, so that appending is never
+ * blocked by disk I/O.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+final class IndexerWorkItemJournal implements Closeable
+{
+  /** The default size of a single segment file in bytes */
+  public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+  private static final Logger s_aLogger = LoggerFactory.getLogger (IndexerWorkItemJournal.class);
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".journal";
+  private static final String ELEMENT_ITEM = "item";
+  private static final byte RECORD_ENQUEUE = 1;
+  private static final byte RECORD_COMPLETE = 2;
+  // length + checksum
+  private static final int RECORD_HEADER_SIZE = 4 + 4;
+  private static final long FLUSH_MILLIS = 1000;
+
+  private final File m_aDir;
+  private final int m_nSegmentSize;
+  private final Lock m_aLock = new ReentrantLock ();
+  /** Serializes flushing and compacting without blocking appends */
+  private final Lock m_aCompactLock = new ReentrantLock ();
+  /** The items read from the journal upon startup */
+  private final List <IndexerWorkItem> m_aReplayedItems;
+  /** The segments existing upon startup */
+  private final List <File> m_aReplayedSegments;
+  @GuardedBy ("m_aLock")
+  private int m_nCurrentSegment;
+  @GuardedBy ("m_aLock")
+  private MappedByteBuffer m_aCurrentBuffer;
+  @GuardedBy ("m_aLock")
+  private boolean m_bDirty = false;
+  /** The mapped segment following the current segment - may be null */
+  @GuardedBy ("m_aLock")
+  private MappedByteBuffer m_aNextBuffer;
+  /** The buffers of previous segments that were not yet flushed to disk */
+  @GuardedBy ("m_aLock")
+  private final List <MappedByteBuffer> m_aUnflushedBuffers = new ArrayList <> ();
+  /** All previous segments that are not yet compacted */
+  @GuardedBy ("m_aLock")
+  private final List <Integer> m_aPreviousSegments = new ArrayList <> ();
+  /** All items without completion record by ID and the segment they are in */
+  @GuardedBy ("m_aLock")
+  private final Map <String, IndexerWorkItem> m_aOpenItems = new LinkedHashMap <> ();
+  @GuardedBy ("m_aLock")
+  private final Map <String, Integer> m_aOpenItemSegments = new HashMap <> ();
+  @GuardedBy ("m_aLock")
+  private boolean m_bClosed = false;
+  private final ScheduledExecutorService m_aBackgroundExecutor = Executors.newSingleThreadScheduledExecutor (new ExtendedDefaultThreadFactory ("IndexerWorkItemJournal"));
+
+  /**
+   * Open the journal in the provided directory and read all open items from
+   * existing segments. The existing segments are kept until
+   * {@link #deleteReplayedSegments()} is called.
+   *
+   * @param aDir
+   *        The directory to store the segment files in. May not be
+   *        <code>null</code>. Is created if it does not exist.
+   * @param nSegmentSize
+   *        The size of each segment file in bytes. Must be &gt; 0.
+   * @throws IOException
+   *         if the journal cannot be opened
+   */
+  public IndexerWorkItemJournal (@Nonnull final File aDir, @Nonnegative final int nSegmentSize) throws IOException
+  {
+    ValueEnforcer.notNull (aDir, "Dir");
+    ValueEnforcer.isGT0 (nSegmentSize, "SegmentSize");
+
+    m_aDir = aDir;
+    m_nSegmentSize = nSegmentSize;
+    if (!aDir.isDirectory () && !aDir.mkdirs ())
+      throw new IOException ("Failed to create journal directory " + aDir);
+
+    // Read all existing segments in order
+    final Map <Integer, File> aSegments = _getAllSegmentFiles (aDir);
+    final Map <String, IndexerWorkItem> aOpenItems = new LinkedHashMap <> ();
+    for (final File aSegmentFile : aSegments.values ())
+      _readSegment (aSegmentFile, aOpenItems);
+    m_aReplayedItems = new ArrayList <> (aOpenItems.values ());
+    m_aReplayedSegments = new ArrayList <> (aSegments.values ());
+    if (!m_aReplayedItems.isEmpty ())
+      s_aLogger.info ("Read " +
+                      m_aReplayedItems.size () +
+                      " open indexer work items from " +
+                      m_aReplayedSegments.size () +
+                      " journal segments");
+
+    // Start a new segment after the existing ones and prepare the next one
+    m_nCurrentSegment = aSegments.isEmpty () ? 0 : Collections.max (aSegments.keySet ()).intValue () + 1;
+    m_aCurrentBuffer = _mapSegment (_getSegmentFile (m_nCurrentSegment), nSegmentSize);
+    m_aNextBuffer = _mapSegment (_getSegmentFile (m_nCurrentSegment + 1), nSegmentSize);
+
+    m_aBackgroundExecutor.scheduleWithFixedDelay (this::_flushAndCompact,
+                                                  FLUSH_MILLIS,
+                                                  FLUSH_MILLIS,
+                                                  TimeUnit.MILLISECONDS);
+  }
+
+  @Nonnull
+  private static Map <Integer, File> _getAllSegmentFiles (@Nonnull final File aDir)
+  {
+    final Map <Integer, File> ret = new TreeMap <> ();
+    final File [] aFiles = aDir.listFiles ();
+    if (aFiles != null)
+      for (final File aFile : aFiles)
+      {
+        final String sName = aFile.getName ();
+        if (sName.startsWith (SEGMENT_PREFIX) && sName.endsWith (SEGMENT_SUFFIX))
+        {
+          try
+          {
+            final int nSegment = Integer.parseInt (sName.substring (SEGMENT_PREFIX.length (),
+                                                                    sName.length () - SEGMENT_SUFFIX.length ()));
+            ret.put (Integer.valueOf (nSegment), aFile);
+          }
+          catch (final NumberFormatException ex)
+          {
+            s_aLogger.warn ("Ignoring unexpected journal file " + aFile);
+          }
+        }
+      }
+    return ret;
+  }
+
+  @Nonnull
+  private File _getSegmentFile (final int nSegment)
+  {
+    return new File (m_aDir, SEGMENT_PREFIX + String.format ("%08d", Integer.valueOf (nSegment)) + SEGMENT_SUFFIX);
+  }
+
+  private static void _readSegment (@Nonnull final File aSegmentFile,
+                                    @Nonnull final Map <String, IndexerWorkItem> aOpenItems) throws IOException
+  {
+    final byte [] aBytes = Files.readAllBytes (aSegmentFile.toPath ());
+    final ByteBuffer aBuffer = ByteBuffer.wrap (aBytes);
+    final CRC32 aCRC = new CRC32 ();
+    while (aBuffer.remaining () >= RECORD_HEADER_SIZE)
+    {
+      final int nLength = aBuffer.getInt ();
+      if (nLength == 0)
+      {
+        // End of written data
+        break;
+      }
+      final int nChecksum = aBuffer.getInt ();
+      if (nLength < 0 || nLength > aBuffer.remaining ())
+      {
+        s_aLogger.warn ("Invalid record length " + nLength + " in journal segment " + aSegmentFile);
+        break;
+      }
+      aCRC.reset ();
+      aCRC.update (aBytes, aBuffer.position (), nLength);
+      if ((int) aCRC.getValue () != nChecksum)
+      {
+        s_aLogger.warn ("Checksum mismatch in journal segment " + aSegmentFile + " - ignoring the rest of it");
+        break;
+      }
+
+      final ByteBuffer aRecord = ByteBuffer.wrap (aBytes, aBuffer.position (), nLength).slice ();
+      aBuffer.position (aBuffer.position () + nLength);
+      try
+      {
+        final byte nType = aRecord.get ();
+        switch (nType)
+        {
+          case RECORD_ENQUEUE:
+          {
+            final IndexerWorkItem aItem = _decodeItem (aRecord);
+            if (!aOpenItems.containsKey (aItem.getID ()))
+              aOpenItems.put (aItem.getID (), aItem);
+            break;
+          }
+          case RECORD_COMPLETE:
+            aOpenItems.remove (_readString (aRecord));
+            break;
+          default:
+            s_aLogger.warn ("Unknown record type " + nType + " in journal segment " + aSegmentFile);
+            break;
+        }
+      }
+      catch (final RuntimeException ex)
+      {
+        s_aLogger.warn ("Failed to decode record in journal segment " + aSegmentFile, ex);
+      }
+    }
+  }
+
+  @Nonnull
+  private static String _readString (@Nonnull final ByteBuffer aBuffer) throws BufferUnderflowException
+  {
+    final byte [] aBytes = new byte [aBuffer.getShort () & 0xffff];
+    aBuffer.get (aBytes);
+    return new String (aBytes, StandardCharsets.UTF_8);
+  }
+
+  private static void _writeString (@Nonnull final DataOutputStream aDOS, @Nonnull final String s) throws IOException
+  {
+    final byte [] aBytes = s.getBytes (StandardCharsets.UTF_8);
+    if (aBytes.length > 0xffff)
+      throw new IllegalArgumentException ("String too long for the journal: " + aBytes.length + " bytes");
+    aDOS.writeShort (aBytes.length);
+    aDOS.write (aBytes);
+  }
+
+  /**
+   * The items are encoded as the attributes of the element created by the
+   * {@link MicroTypeConverter}, so that the conversion logic is shared with the
+   * XML files.
+   */
+  @Nonnull
+  private static byte [] _encodeItem (@Nonnull final IndexerWorkItem aItem)
+  {
+    final IMicroElement eItem = MicroTypeConverter.convertToMicroElement (aItem, ELEMENT_ITEM);
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream (256);
+    try (final DataOutputStream aDOS = new DataOutputStream (aBAOS))
+    {
+      aDOS.writeByte (RECORD_ENQUEUE);
+      aDOS.writeShort (eItem.getAttributeCount ());
+      for (final IMicroAttribute aAttr : eItem.getAllAttributeObjs ())
+      {
+        _writeString (aDOS, aAttr.getAttributeName ());
+        _writeString (aDOS, aAttr.getAttributeValue ());
+      }
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException (ex);
+    }
+    return aBAOS.toByteArray ();
+  }
+
+  @Nonnull
+  private static IndexerWorkItem _decodeItem (@Nonnull final ByteBuffer aRecord)
+  {
+    final IMicroElement eItem = new MicroElement (ELEMENT_ITEM);
+    final int nAttrCount = aRecord.getShort () & 0xffff;
+    for (int i = 0; i < nAttrCount; ++i)
+    {
+      final String sName = _readString (aRecord);
+      eItem.setAttribute (sName, _readString (aRecord));
+    }
+    final IndexerWorkItem ret = MicroTypeConverter.convertToNative (eItem, IndexerWorkItem.class);
+    if (ret == null)
+      throw new IllegalStateException ("Failed to convert journal record to work item");
+    return ret;
+  }
+
+  @Nonnull
+  private static byte [] _encodeCompletion (@Nonnull final String sItemID)
+  {
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream (64);
+    try (final DataOutputStream aDOS = new DataOutputStream (aBAOS))
+    {
+      aDOS.writeByte (RECORD_COMPLETE);
+      _writeString (aDOS, sItemID);
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException (ex);
+    }
+    return aBAOS.toByteArray ();
+  }
+
+  @Nonnull
+  private static MappedByteBuffer _mapSegment (@Nonnull final File aFile, final int nSegmentSize) throws IOException
+  {
+    try (final RandomAccessFile aRAF = new RandomAccessFile (aFile, "rw"))
+    {
+      aRAF.setLength (nSegmentSize);
+      // The mapping stays valid after the file is closed
+      return aRAF.getChannel ().map (FileChannel.MapMode.READ_WRITE, 0, nSegmentSize);
+    }
+  }
+
+  /**
+   * Map the segment following the current segment, if this did not happen
+   * yet. The file system is only accessed outside of the append lock.
+   */
+  private void _prepareNextSegment ()
+  {
+    final int nNextSegment;
+    m_aLock.lock ();
+    try
+    {
+      if (m_bClosed || m_aNextBuffer != null)
+        return;
+      nNextSegment = m_nCurrentSegment + 1;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+
+    try
+    {
+      final MappedByteBuffer aBuffer = _mapSegment (_getSegmentFile (nNextSegment), m_nSegmentSize);
+      m_aLock.lock ();
+      try
+      {
+        // Only hand over if there was no roll over in the meantime
+        if (!m_bClosed && m_aNextBuffer == null && m_nCurrentSegment + 1 == nNextSegment)
+          m_aNextBuffer = aBuffer;
+      }
+      finally
+      {
+        m_aLock.unlock ();
+      }
+    }
+    catch (final IOException ex)
+    {
+      s_aLogger.error ("Failed to prepare the next indexer journal segment", ex);
+    }
+  }
+
+  /**
+   * @return The buffers that contain data not yet flushed to disk. The caller
+   *         must flush them outside of the lock.
+   */
+  @GuardedBy ("m_aLock")
+  @Nonnull
+  @ReturnsMutableCopy
+  private List <MappedByteBuffer> _getAndClearUnflushedBuffers ()
+  {
+    final List <MappedByteBuffer> ret = new ArrayList <> (m_aUnflushedBuffers);
+    m_aUnflushedBuffers.clear ();
+    if (m_bDirty)
+    {
+      ret.add (m_aCurrentBuffer);
+      m_bDirty = false;
+    }
+    return ret;
+  }
+
+  private static void _flush (@Nonnull final List <MappedByteBuffer> aBuffers)
+  {
+    for (final MappedByteBuffer aBuffer : aBuffers)
+      aBuffer.force ();
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _appendRecord (@Nonnull final byte [] aPayload) throws IOException
+  {
+    final int nRecordSize = RECORD_HEADER_SIZE + aPayload.length;
+    if (nRecordSize > m_nSegmentSize - 4)
+      throw new IllegalArgumentException ("Journal record of " + nRecordSize + " bytes exceeds the segment size");
+
+    // Keep 4 bytes for the terminating 0 length
+    if (m_aCurrentBuffer.remaining () - 4 < nRecordSize)
+    {
+      // Roll over to the next segment. The previous buffer is flushed by the
+      // background thread.
+      m_aUnflushedBuffers.add (m_aCurrentBuffer);
+      m_aPreviousSegments.add (Integer.valueOf (m_nCurrentSegment));
+      if (m_aNextBuffer != null)
+      {
+        m_aCurrentBuffer = m_aNextBuffer;
+        m_aNextBuffer = null;
+      }
+      else
+      {
+        // The background thread did not catch up
+        m_aCurrentBuffer = _mapSegment (_getSegmentFile (m_nCurrentSegment + 1), m_nSegmentSize);
+      }
+      m_nCurrentSegment++;
+      try
+      {
+        m_aBackgroundExecutor.execute (this::_prepareNextSegment);
+      }
+      catch (final RejectedExecutionException ex)
+      {
+        // Closing - no further segment is needed
+      }
+    }
+
+    final CRC32 aCRC = new CRC32 ();
+    aCRC.update (aPayload);
+    final int nStart = m_aCurrentBuffer.position ();
+    // Write the length last, so that a partially written record is not
+    // visible
+    m_aCurrentBuffer.position (nStart + 4);
+    m_aCurrentBuffer.putInt ((int) aCRC.getValue ());
+    m_aCurrentBuffer.put (aPayload);
+    m_aCurrentBuffer.putInt (nStart, aPayload.length);
+    m_bDirty = true;
+  }
+
+  /**
+   * Record that the provided item was queued.
+   *
+   * @param aItem
+   *        The queued item. May not be <code>null</code>.
+   */
+  public void onEnqueue (@Nonnull final IndexerWorkItem aItem)
+  {
+    ValueEnforcer.notNull (aItem, "Item");
+
+    // Encode outside of the lock
+    final byte [] aPayload = _encodeItem (aItem);
+    m_aLock.lock ();
+    try
+    {
+      if (m_bClosed)
+        throw new IllegalStateException ("The journal is already closed!");
+      _appendRecord (aPayload);
+      m_aOpenItems.put (aItem.getID (), aItem);
+      m_aOpenItemSegments.put (aItem.getID (), Integer.valueOf (m_nCurrentSegment));
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException ("Failed to append to the indexer journal", ex);
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Record that the provided item left the queue, either because it was
+   * executed, or because it was handed over to the re-index list.
+   *
+   * @param aItem
+   *        The completed item. May not be <code>null</code>.
+   */
+  public void onComplete (@Nonnull final IndexerWorkItem aItem)
+  {
+    ValueEnforcer.notNull (aItem, "Item");
+
+    final byte [] aPayload = _encodeCompletion (aItem.getID ());
+    m_aLock.lock ();
+    try
+    {
+      if (m_bClosed)
+      {
+        // Nothing to record - the item is replayed upon next startup
+        return;
+      }
+      if (m_aOpenItems.remove (aItem.getID ()) != null)
+      {
+        m_aOpenItemSegments.remove (aItem.getID ());
+        _appendRecord (aPayload);
+      }
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException ("Failed to append to the indexer journal", ex);
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return All items that were read from the journal upon startup and that
+   *         have no completion record. Never <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <IndexerWorkItem> getAllReplayedItems ()
+  {
+    return new ArrayList <> (m_aReplayedItems);
+  }
+
+  /**
+   * Delete all segments that existed upon startup. Call this after the
+   * replayed items were queued again, so that they are contained in the
+   * current segment.
+   */
+  public void deleteReplayedSegments ()
+  {
+    for (final File aFile : m_aReplayedSegments)
+      if (!aFile.delete ())
+        s_aLogger.warn ("Failed to delete replayed journal segment " + aFile);
+    m_aReplayedSegments.clear ();
+  }
+
+  private void _flushAndCompact ()
+  {
+    m_aCompactLock.lock ();
+    try
+    {
+      // Take a snapshot and do all I/O outside of the append lock
+      final List <MappedByteBuffer> aUnflushedBuffers;
+      final List <Integer> aObsoleteSegments;
+      final List <IndexerWorkItem> aItemsToCopy = new ArrayList <> ();
+      m_aLock.lock ();
+      try
+      {
+        if (m_bClosed)
+          return;
+        aUnflushedBuffers = _getAndClearUnflushedBuffers ();
+        aObsoleteSegments = new ArrayList <> (m_aPreviousSegments);
+        for (final IndexerWorkItem aItem : m_aOpenItems.values ())
+          if (aObsoleteSegments.contains (m_aOpenItemSegments.get (aItem.getID ())))
+            aItemsToCopy.add (aItem);
+      }
+      finally
+      {
+        m_aLock.unlock ();
+      }
+      _flush (aUnflushedBuffers);
+
+      if (!aObsoleteSegments.isEmpty ())
+      {
+        // Copy all open items of previous segments to the current segment. If
+        // this rolls over to another segment, the segment that was current
+        // before is compacted in the next run.
+        final List <byte []> aPayloads = new ArrayList <> (aItemsToCopy.size ());
+        for (final IndexerWorkItem aItem : aItemsToCopy)
+          aPayloads.add (_encodeItem (aItem));
+
+        int nCopied = 0;
+        final List <MappedByteBuffer> aCopyBuffers;
+        m_aLock.lock ();
+        try
+        {
+          if (m_bClosed)
+            return;
+          for (int i = 0; i < aItemsToCopy.size (); ++i)
+          {
+            final String sItemID = aItemsToCopy.get (i).getID ();
+            // Skip items that were completed or queued again in the meantime
+            if (m_aOpenItems.containsKey (sItemID) &&
+                aObsoleteSegments.contains (m_aOpenItemSegments.get (sItemID)))
+            {
+              _appendRecord (aPayloads.get (i));
+              m_aOpenItemSegments.put (sItemID, Integer.valueOf (m_nCurrentSegment));
+              nCopied++;
+            }
+          }
+          aCopyBuffers = _getAndClearUnflushedBuffers ();
+        }
+        finally
+        {
+          m_aLock.unlock ();
+        }
+        _flush (aCopyBuffers);
+
+        // Now the previous segments are obsolete
+        for (final Integer aSegment : aObsoleteSegments)
+        {
+          final File aFile = _getSegmentFile (aSegment.intValue ());
+          if (!aFile.delete ())
+            s_aLogger.warn ("Failed to delete compacted journal segment " + aFile);
+        }
+        m_aLock.lock ();
+        try
+        {
+          m_aPreviousSegments.removeAll (aObsoleteSegments);
+        }
+        finally
+        {
+          m_aLock.unlock ();
+        }
+        if (s_aLogger.isDebugEnabled ())
+          s_aLogger.debug ("Compacted indexer journal - copied " + nCopied + " open items");
+      }
+
+      _prepareNextSegment ();
+    }
+    catch (final Exception ex)
+    {
+      s_aLogger.error ("Error flushing the indexer journal", ex);
+    }
+    finally
+    {
+      m_aCompactLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The number of items without completion record.
+   */
+  @Nonnegative
+  public int getOpenItemCount ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      return m_aOpenItems.size ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Compact the journal synchronously. Usually this happens in the background.
+   */
+  void compact ()
+  {
+    _flushAndCompact ();
+  }
+
+  /**
+   * Flush all pending data and close the journal. Open items stay in the
+   * journal and are replayed upon next startup.
+   */
+  public void close ()
+  {
+    ManagedExecutorService.shutdownAndWaitUntilAllTasksAreFinished (m_aBackgroundExecutor);
+    m_aCompactLock.lock ();
+    try
+    {
+      final List <MappedByteBuffer> aUnflushedBuffers;
+      int nUnusedSegment = -1;
+      m_aLock.lock ();
+      try
+      {
+        if (m_bClosed)
+          return;
+        m_bClosed = true;
+        aUnflushedBuffers = _getAndClearUnflushedBuffers ();
+        if (m_aNextBuffer != null)
+        {
+          nUnusedSegment = m_nCurrentSegment + 1;
+          m_aNextBuffer = null;
+        }
+      }
+      finally
+      {
+        m_aLock.unlock ();
+      }
+      _flush (aUnflushedBuffers);
+
+      // The prepared segment contains no records
+      if (nUnusedSegment >= 0)
+      {
+        final File aFile = _getSegmentFile (nUnusedSegment);
+        if (!aFile.delete ())
+          s_aLogger.warn ("Failed to delete unused journal segment " + aFile);
+      }
+    }
+    finally
+    {
+      m_aCompactLock.unlock ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Dir", m_aDir)
+                                       .append ("SegmentSize", m_nSegmentSize)
+                                       .append ("CurrentSegment", m_nCurrentSegment)
+                                       .append ("OpenItems", getOpenItemCount ())
+                                       .toString ();
+  }
+}
@@ -16,53 +16,309 @@
  */
 package com.helger.pd.indexer.mgr;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.joda.time.LocalDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.ReturnsMutableCopy;
-import com.helger.commons.callback.IThrowingRunnableWithParameter;
 import com.helger.commons.concurrent.ExtendedDefaultThreadFactory;
 import com.helger.commons.concurrent.ManagedExecutorService;
-import com.helger.commons.concurrent.collector.ConcurrentCollectorSingle;
+import com.helger.commons.state.ESuccess;
+import com.helger.commons.statistics.IMutableStatisticsHandlerCounter;
+import com.helger.commons.statistics.StatisticsManager;
+import com.helger.commons.string.ToStringGenerator;
 import com.helger.pd.indexer.domain.IndexerWorkItem;
 
 /**
  * The indexer queue that holds all items to be indexed initially. If indexing
  * fails, items are shifted to the re-index queue where graceful retries will
- * happen.
+ * happen.<br>
+ * Items are executed by a fixed size pool of worker threads, so that multiple
+ * SMPs can be queried in parallel. Items of the same participant are never
+ * executed concurrently but strictly in the order they were queued: while an
+ * item of a participant is running, all further items of that participant are
+ * parked and handed to the pool one after another.<br>
+ * Additionally the number of items running concurrently against the same
+ * remote host is limited. Items exceeding this limit are parked without
+ * blocking a worker thread, until another item of that host finished. If the
+ * circuit breaker of a host is open, the items of that host are not executed
+ * but handed back via
+ * {@link IIndexerWorkItemHandler#onHostUnavailable(IndexerWorkItem, LocalDateTime)}.
  *
  * @author Philip Helger
  */
+@ThreadSafe
 final class IndexerWorkItemQueue
 {
-  private final ConcurrentCollectorSingle <IndexerWorkItem> m_aImmediateCollector;
+  /**
+   * The pool task wrapping a single work item, so that not yet started items
+   * can be retrieved upon stop.
+   */
+  private final class WorkItemTask implements Runnable
+  {
+    private final IndexerWorkItem m_aItem;
+    // Resolved by the first worker executing the task
+    private String m_sHostKey;
+
+    WorkItemTask (@Nonnull final IndexerWorkItem aItem)
+    {
+      m_aItem = aItem;
+    }
+
+    public void run ()
+    {
+      _execute (this);
+    }
+  }
+
+  /**
+   * A task that already holds its host slot.
+   */
+  private final class SlotGrantedTask implements Runnable
+  {
+    private final WorkItemTask m_aTask;
+
+    SlotGrantedTask (@Nonnull final WorkItemTask aTask)
+    {
+      m_aTask = aTask;
+    }
+
+    public void run ()
+    {
+      _executeWithSlot (m_aTask);
+    }
+  }
+
+  /**
+   * The per-host execution state.
+   */
+  private static final class HostSlots
+  {
+    private int m_nRunning = 0;
+    private final Queue <WorkItemTask> m_aWaiting = new ArrayDeque <> ();
+  }
+
+  private static final Logger s_aLogger = LoggerFactory.getLogger (IndexerWorkItemQueue.class);
+  private static final IMutableStatisticsHandlerCounter s_aStatsHostLimited = StatisticsManager.getCounterHandler (IndexerWorkItemQueue.class.getName () +
+                                                                                                                     "$hostlimited");
+  private static final IMutableStatisticsHandlerCounter s_aStatsHostUnavailable = StatisticsManager.getCounterHandler (IndexerWorkItemQueue.class.getName () +
+                                                                                                                         "$hostunavailable");
+
+  private final int m_nMaxPerHost;
+  private final IIndexerWorkItemHandler m_aHandler;
+  private final SMPHostCircuitBreaker m_aCircuitBreaker;
   private final ThreadFactory m_aThreadFactory = new ExtendedDefaultThreadFactory ("IndexerWorkQueue");
-  private final ExecutorService m_aSenderThreadPool = new ThreadPoolExecutor (1,
-                                                                              1,
-                                                                              60L,
-                                                                              TimeUnit.SECONDS,
-                                                                              new SynchronousQueue <Runnable> (),
-                                                                              m_aThreadFactory);
-
-  public IndexerWorkItemQueue (@Nonnull final IThrowingRunnableWithParameter <IndexerWorkItem, Exception> aPerformer)
+  private final ThreadPoolExecutor m_aWorkerThreadPool;
+  private final Lock m_aLock = new ReentrantLock ();
+  /**
+   * Participant ID (URI encoded) of all participants with a running item to
+   * the items of that participant waiting for it.
+   */
+  @GuardedBy ("m_aLock")
+  private final Map <String, Queue <IndexerWorkItem>> m_aActiveParticipants = new HashMap <> ();
+  /**
+   * Host key to the running and waiting items of that host.
+   */
+  @GuardedBy ("m_aLock")
+  private final Map <String, HostSlots> m_aActiveHosts = new HashMap <> ();
+  @GuardedBy ("m_aLock")
+  private boolean m_bStopped = false;
+
+  /**
+   * Constructor
+   *
+   * @param nWorkerThreads
+   *        The number of worker threads. Must be &gt; 0.
+   * @param nMaxPerHost
+   *        The maximum number of items executed concurrently against the same
+   *        host. Must be &gt; 0.
+   * @param aCircuitBreaker
+   *        The circuit breaker to be used. May not be <code>null</code>.
+   * @param aHandler
+   *        The handler performing the actual work. May not be
+   *        <code>null</code>.
+   */
+  public IndexerWorkItemQueue (@Nonnegative final int nWorkerThreads,
+                               @Nonnegative final int nMaxPerHost,
+                               @Nonnull final SMPHostCircuitBreaker aCircuitBreaker,
+                               @Nonnull final IIndexerWorkItemHandler aHandler)
   {
-    m_aImmediateCollector = new ConcurrentCollectorSingle <> (new LinkedBlockingQueue <> ());
-    m_aImmediateCollector.setPerformer (aPerformer);
+    ValueEnforcer.isGT0 (nWorkerThreads, "WorkerThreads");
+    ValueEnforcer.isGT0 (nMaxPerHost, "MaxPerHost");
+    ValueEnforcer.notNull (aCircuitBreaker, "CircuitBreaker");
+    ValueEnforcer.notNull (aHandler, "Handler");
 
-    // Start the collector
-    m_aSenderThreadPool.submit (m_aImmediateCollector);
+    m_nMaxPerHost = nMaxPerHost;
+    m_aCircuitBreaker = aCircuitBreaker;
+    m_aHandler = aHandler;
+    m_aWorkerThreadPool = new ThreadPoolExecutor (nWorkerThreads,
+                                                  nWorkerThreads,
+                                                  60L,
+                                                  TimeUnit.SECONDS,
+                                                  new LinkedBlockingQueue <Runnable> (),
+                                                  m_aThreadFactory);
   }
 
   /**
-   * Stop the indexer work queue immediately.
+   * Try to get a slot for the host of the provided task. If no slot is
+   * available the task is parked.
+   *
+   * @param aTask
+   *        The task to be executed. Never <code>null</code>.
+   * @return <code>true</code> if a slot was acquired, <code>false</code> if the
+   *         task was parked.
+   */
+  private boolean _acquireHostSlot (@Nonnull final WorkItemTask aTask)
+  {
+    m_aLock.lock ();
+    try
+    {
+      final HostSlots aSlots = m_aActiveHosts.computeIfAbsent (aTask.m_sHostKey, k -> new HostSlots ());
+      if (aSlots.m_nRunning >= m_nMaxPerHost)
+      {
+        aSlots.m_aWaiting.add (aTask);
+        s_aStatsHostLimited.increment ();
+        return false;
+      }
+      aSlots.m_nRunning++;
+      return true;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _releaseHostSlot (@Nonnull final String sHostKey)
+  {
+    final HostSlots aSlots = m_aActiveHosts.get (sHostKey);
+    aSlots.m_nRunning--;
+    if (!aSlots.m_aWaiting.isEmpty ())
+    {
+      if (!m_bStopped)
+      {
+        // Hand over the slot to the next waiting task of the same host
+        aSlots.m_nRunning++;
+        m_aWorkerThreadPool.execute (new SlotGrantedTask (aSlots.m_aWaiting.remove ()));
+      }
+      // else the waiting items are returned by stop
+    }
+    else
+      if (aSlots.m_nRunning == 0)
+        m_aActiveHosts.remove (sHostKey);
+  }
+
+  private void _execute (@Nonnull final WorkItemTask aTask)
+  {
+    final IndexerWorkItem aItem = aTask.m_aItem;
+    try
+    {
+      aTask.m_sHostKey = m_aHandler.getHostKey (aItem);
+    }
+    catch (final Exception ex)
+    {
+      s_aLogger.warn ("Failed to determine host of " + aItem.getLogText (), ex);
+    }
+
+    final String sHostKey = aTask.m_sHostKey;
+    if (sHostKey != null)
+    {
+      final LocalDateTime aRetryDT = m_aCircuitBreaker.tryAcquire (sHostKey);
+      if (aRetryDT != null)
+      {
+        // Host is currently not available - don't waste a worker on it
+        s_aStatsHostUnavailable.increment ();
+        try
+        {
+          m_aHandler.onHostUnavailable (aItem, aRetryDT);
+        }
+        catch (final Exception ex)
+        {
+          s_aLogger.error ("Error handling unavailable host of " + aItem.getLogText (), ex);
+        }
+        _onItemFinished (aItem, null);
+        return;
+      }
+
+      if (!_acquireHostSlot (aTask))
+      {
+        // Parked - continued when another item of the host finished
+        return;
+      }
+    }
+
+    _executeWithSlot (aTask);
+  }
+
+  private void _executeWithSlot (@Nonnull final WorkItemTask aTask)
+  {
+    final IndexerWorkItem aItem = aTask.m_aItem;
+    final String sHostKey = aTask.m_sHostKey;
+    ESuccess eSuccess = ESuccess.FAILURE;
+    try
+    {
+      eSuccess = m_aHandler.execute (aItem);
+    }
+    catch (final Exception ex)
+    {
+      s_aLogger.error ("Error executing " + aItem.getLogText (), ex);
+    }
+    finally
+    {
+      if (sHostKey != null)
+        m_aCircuitBreaker.onResult (sHostKey, eSuccess);
+      _onItemFinished (aItem, sHostKey);
+    }
+  }
+
+  private void _onItemFinished (@Nonnull final IndexerWorkItem aItem, @Nullable final String sHostKey)
+  {
+    final String sKey = aItem.getParticipantID ().getURIEncoded ();
+    m_aLock.lock ();
+    try
+    {
+      if (sHostKey != null)
+        _releaseHostSlot (sHostKey);
+
+      // Hand over to the next item of the same participant
+      final Queue <IndexerWorkItem> aWaiting = m_aActiveParticipants.get (sKey);
+      if (aWaiting.isEmpty ())
+        m_aActiveParticipants.remove (sKey);
+      else
+        if (!m_bStopped)
+          m_aWorkerThreadPool.execute (new WorkItemTask (aWaiting.remove ()));
+      // else the waiting items are returned by stop
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Stop the indexer work queue. Items that are currently executed are
+   * finished, but no new item is started.
    *
    * @return The list of all remaining objects in the queue. Never
    *         <code>null</code>.
@@ -71,21 +327,90 @@ final class IndexerWorkItemQueue
   @ReturnsMutableCopy
   public List <IndexerWorkItem> stop ()
   {
-    // don't take any more actions
-    m_aImmediateCollector.stopQueuingNewObjects ();
+    final List <IndexerWorkItem> aRemainingItems = new ArrayList <> ();
 
-    // Get all remaining objects and save them for late reuse
-    final List <IndexerWorkItem> aRemainingItems = m_aImmediateCollector.drainQueue ();
+    m_aLock.lock ();
+    try
+    {
+      // don't take any more actions
+      m_bStopped = true;
+
+      // Get all items not yet started
+      final List <Runnable> aPendingTasks = new ArrayList <> ();
+      m_aWorkerThreadPool.getQueue ().drainTo (aPendingTasks);
+      for (final Runnable aTask : aPendingTasks)
+        if (aTask instanceof SlotGrantedTask)
+          aRemainingItems.add (((SlotGrantedTask) aTask).m_aTask.m_aItem);
+        else
+          aRemainingItems.add (((WorkItemTask) aTask).m_aItem);
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
 
     // Shutdown the thread pool afterwards
-    ManagedExecutorService.shutdownAndWaitUntilAllTasksAreFinished (m_aSenderThreadPool);
+    ManagedExecutorService.shutdownAndWaitUntilAllTasksAreFinished (m_aWorkerThreadPool);
+
+    m_aLock.lock ();
+    try
+    {
+      // Get all remaining items that were waiting for a host slot
+      for (final HostSlots aSlots : m_aActiveHosts.values ())
+        for (final WorkItemTask aTask : aSlots.m_aWaiting)
+          aRemainingItems.add (aTask.m_aItem);
+      m_aActiveHosts.clear ();
 
+      // Get all remaining items that were waiting for another item of the same
+      // participant
+      for (final Queue <IndexerWorkItem> aWaiting : m_aActiveParticipants.values ())
+        aRemainingItems.addAll (aWaiting);
+      m_aActiveParticipants.clear ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
     return aRemainingItems;
   }
 
   public void queueObject (@Nonnull final IndexerWorkItem aItem)
   {
     ValueEnforcer.notNull (aItem, "Item");
-    m_aImmediateCollector.queueObject (aItem);
+
+    final String sKey = aItem.getParticipantID ().getURIEncoded ();
+    m_aLock.lock ();
+    try
+    {
+      if (m_bStopped)
+        throw new IllegalStateException ("The indexer work queue is already stopped!");
+
+      final Queue <IndexerWorkItem> aWaiting = m_aActiveParticipants.get (sKey);
+      if (aWaiting != null)
+      {
+        // Another item of this participant is running
+        aWaiting.add (aItem);
+      }
+      else
+      {
+        m_aActiveParticipants.put (sKey, new ArrayDeque <> ());
+        m_aWorkerThreadPool.execute (new WorkItemTask (aItem));
+      }
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("WorkerThreads", m_aWorkerThreadPool.getMaximumPoolSize ())
+                                       .append ("ActiveWorkers", m_aWorkerThreadPool.getActiveCount ())
+                                       .append ("PendingItems", m_aWorkerThreadPool.getQueue ().size ())
+                                       .append ("MaxPerHost", m_nMaxPerHost)
+                                       .append ("CircuitBreaker", m_aCircuitBreaker)
+                                       .toString ();
   }
 }
@@ -19,11 +19,14 @@ package com.helger.pd.indexer.mgr;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
 import org.joda.time.LocalDateTime;
@@ -36,14 +39,15 @@ import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.microdom.IMicroDocument;
 import com.helger.commons.microdom.IMicroElement;
-import com.helger.commons.microdom.MicroDocument;
 import com.helger.commons.microdom.convert.MicroTypeConverter;
 import com.helger.commons.microdom.serialize.MicroReader;
-import com.helger.commons.microdom.serialize.MicroWriter;
 import com.helger.commons.state.EChange;
 import com.helger.commons.state.ESuccess;
+import com.helger.commons.statistics.IMutableStatisticsHandlerKeyedCounter;
+import com.helger.commons.statistics.StatisticsManager;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.datetime.PDTFactory;
 import com.helger.pd.businessinformation.IPDBusinessInformationProvider;
@@ -51,8 +55,10 @@ import com.helger.pd.businessinformation.PDExtendedBusinessInformation;
 import com.helger.pd.indexer.domain.EIndexerWorkItemType;
 import com.helger.pd.indexer.domain.IndexerWorkItem;
 import com.helger.pd.indexer.domain.ReIndexWorkItem;
-import com.helger.pd.indexer.job.ReIndexJob;
+import com.helger.pd.indexer.job.PurgeDeletedJob;
+import com.helger.pd.indexer.storage.PDIndexEntry;
 import com.helger.pd.indexer.storage.PDStorageManager;
+import com.helger.pd.settings.PDSettings;
 import com.helger.peppol.identifier.IParticipantIdentifier;
 import com.helger.peppol.identifier.participant.IPeppolParticipantIdentifier;
 import com.helger.photon.basic.app.dao.impl.DAOException;
@@ -62,25 +68,40 @@ import com.helger.schedule.quartz.GlobalQuartzScheduler;
 
 /**
  * The global indexer manager that takes an item for queuing and maintains the
- * uniqueness of the items to queue.
+ * coalescing of the items to queue: only the most recent item of a
+ * participant is executed.
  *
  * @author Philip Helger
  */
 public final class PDIndexerManager implements Closeable
 {
   private static final Logger s_aLogger = LoggerFactory.getLogger (PDIndexerManager.class);
-  private static final String ELEMENT_ROOT = "root";
   private static final String ELEMENT_ITEM = "item";
+  private static final IMutableStatisticsHandlerKeyedCounter s_aStatsCoalesced = StatisticsManager.getKeyedCounterHandler (PDIndexerManager.class.getName () +
+                                                                                                                           "$coalesced");
 
   private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
   private final PDStorageManager m_aStorageMgr;
   private final File m_aIndexerWorkItemFile;
-  private final IndexerWorkItemQueue m_aIndexerWorkQueue = new IndexerWorkItemQueue (this::_asyncFetchParticipantData);
+  private final IndexerWorkItemJournal m_aJournal;
+  private final IndexerBatchWriter m_aBatchWriter;
+  private final IndexerWorkItemQueue m_aIndexerWorkQueue;
   private final ReIndexWorkItemList m_aReIndexList;
   private final ReIndexWorkItemList m_aDeadList;
-  private final TriggerKey m_aTriggerKey;
+  private final ReIndexScheduler m_aReIndexScheduler;
+  private final TriggerKey m_aPurgeTriggerKey;
+  /**
+   * Participant ID (URI encoded) to the most recent work item of that
+   * participant that is queued or waiting for re-indexing. Older items of the
+   * same participant are superseded and skipped.
+   */
   @GuardedBy ("m_aRWLock")
-  private final Set <IndexerWorkItem> m_aUniqueItems = new HashSet <> ();
+  private final Map <String, IndexerWorkItem> m_aPendingItems = new HashMap <> ();
+  /**
+   * Work item ID to the re-index item of all retries currently in the work
+   * queue, so that a failed retry keeps its retry count.
+   */
+  private final Map <String, ReIndexWorkItem> m_aRetriesInQueue = new ConcurrentHashMap <> ();
   @GuardedBy ("m_aRWLock")
   private IPDBusinessInformationProvider m_aBIProvider = new SMPBusinessInformationProvider ();
 
@@ -93,12 +114,70 @@ public final class PDIndexerManager implements Closeable
     m_aReIndexList = new ReIndexWorkItemList ("reindex-work-items.xml");
     m_aDeadList = new ReIndexWorkItemList ("dead-work-items.xml");
 
+    // All items waiting for re-indexing are pending
+    for (final ReIndexWorkItem aReIndexItem : m_aReIndexList.getAllItems ())
+    {
+      final IndexerWorkItem aWorkItem = aReIndexItem.getWorkItem ();
+      final IndexerWorkItem aOld = m_aPendingItems.get (_getPendingKey (aWorkItem));
+      if (aOld == null || aOld.getCreationDT ().isBefore (aWorkItem.getCreationDT ()))
+        m_aPendingItems.put (_getPendingKey (aWorkItem), aWorkItem);
+    }
+
+    // The fetch workers feed the single batched index writer
+    m_aBatchWriter = new IndexerBatchWriter (aStorageMgr, PDSettings.getIndexerWriteBatchSize ());
+    m_aIndexerWorkQueue = new IndexerWorkItemQueue (PDSettings.getIndexerFetchThreads (),
+                                                    PDSettings.getIndexerMaxConcurrentFetchesPerHost (),
+                                                    new SMPHostCircuitBreaker (PDSettings.getIndexerCircuitBreakerWindowSize (),
+                                                                               PDSettings.getIndexerCircuitBreakerFailurePercentage (),
+                                                                               PDSettings.getIndexerCircuitBreakerOpenMinutes ()),
+                                                    new IIndexerWorkItemHandler ()
+                                                    {
+                                                      @Nullable
+                                                      public String getHostKey (@Nonnull final IndexerWorkItem aItem)
+                                                      {
+                                                        return _getHostKey (aItem);
+                                                      }
+
+                                                      @Nonnull
+                                                      public ESuccess execute (@Nonnull final IndexerWorkItem aItem)
+                                                      {
+                                                        return _asyncFetchParticipantData (aItem);
+                                                      }
+
+                                                      public void onHostUnavailable (@Nonnull final IndexerWorkItem aItem,
+                                                                                     @Nonnull final LocalDateTime aRetryDT)
+                                                      {
+                                                        _onHostUnavailable (aItem, aRetryDT);
+                                                      }
+                                                    });
+
     // Remember the file because upon shutdown WebFileIO may already be
     // discarded
     m_aIndexerWorkItemFile = WebFileIO.getDataIO ().getFile ("indexer-work-items.xml");
 
-    // Schedule re-index job
-    m_aTriggerKey = ReIndexJob.schedule (SimpleScheduleBuilder.repeatMinutelyForever (1), CApplication.APP_ID_SECURE);
+    // Journal of all queued work items
+    try
+    {
+      m_aJournal = new IndexerWorkItemJournal (WebFileIO.getDataIO ().getFile ("indexer-journal"),
+                                               IndexerWorkItemJournal.DEFAULT_SEGMENT_SIZE);
+    }
+    catch (final IOException ex)
+    {
+      throw new DAOException ("Failed to open the indexer work item journal", ex);
+    }
+
+    // Re-index items exactly when they are due - started after the initial
+    // data was read
+    m_aReIndexScheduler = new ReIndexScheduler (m_aReIndexList, () -> {
+      // First expire all old entries
+      expireOldEntries ();
+
+      // Re-index all items now
+      reIndexParticipantData ();
+    });
+
+    // Schedule purge job - it only runs in the off-peak window
+    m_aPurgeTriggerKey = PurgeDeletedJob.schedule (SimpleScheduleBuilder.repeatHourlyForever (1), CApplication.APP_ID_SECURE);
 
     // remember here
     m_aScheduler = GlobalQuartzScheduler.getInstance ();
@@ -106,12 +185,16 @@ public final class PDIndexerManager implements Closeable
 
   /**
    * Read all work items persisted to disk. This happens when the application is
-   * shutdown while elements are still in the queue. This should be called
+   * shutdown or crashed while elements are still in the queue. All items of the
+   * work item journal without a completion record are queued again, as well as
+   * the items of the XML file written by previous versions. This should be
+   * called
    * directly after the constructor. But please note that the queuing of the
    * items might directly trigger the usage of the
    * {@link #getBusinessInformationProvider()} so make sure to call
    * {@link #setBusinessInformationProvider(IPDBusinessInformationProvider)}
-   * before calling this method.
+   * before calling this method. Afterwards the re-indexing of failed items is
+   * started.
    *
    * @return this for chaining
    */
@@ -133,40 +216,41 @@ public final class PDIndexerManager implements Closeable
       // Delete the files to ensure it is not read again next startup time
       WebFileIO.getFileOpMgr ().deleteFile (m_aIndexerWorkItemFile);
     }
-    return this;
-  }
 
-  /**
-   * Write all work items to a file.
-   *
-   * @param aItems
-   *        The items to be written. May not be <code>null</code> but maybe
-   *        empty.
-   */
-  private void _writeWorkItems (@Nonnull final List <IndexerWorkItem> aItems)
-  {
-    if (!aItems.isEmpty ())
-    {
-      s_aLogger.info ("Persisting " + aItems.size () + " indexer work items");
-      final IMicroDocument aDoc = new MicroDocument ();
-      final IMicroElement eRoot = aDoc.appendElement (ELEMENT_ROOT);
-      for (final IndexerWorkItem aItem : aItems)
-        eRoot.appendChild (MicroTypeConverter.convertToMicroElement (aItem, ELEMENT_ITEM));
-      if (MicroWriter.writeToFile (aDoc, m_aIndexerWorkItemFile).isFailure ())
-        throw new IllegalStateException ("Failed to write IndexerWorkItems to " + m_aIndexerWorkItemFile);
-    }
+    // Queue all open items of the journal again - this records them in the
+    // current journal segment, so the old segments can be deleted afterwards
+    for (final IndexerWorkItem aWorkItem : m_aJournal.getAllReplayedItems ())
+      _queueUniqueWorkItem (aWorkItem);
+    m_aJournal.deleteReplayedSegments ();
+
+    m_aReIndexScheduler.start ();
+    return this;
   }
 
   public void close () throws IOException
   {
-    // Get all remaining objects and save them for late reuse
+    // No more retries
+    m_aReIndexScheduler.stop ();
+
+    // Stop the queue - all remaining items have no completion record in the
+    // journal and are queued again upon next startup
     final List <IndexerWorkItem> aRemainingWorkItems = m_aIndexerWorkQueue.stop ();
-    _writeWorkItems (aRemainingWorkItems);
+    if (!aRemainingWorkItems.isEmpty ())
+      s_aLogger.info ("Leaving " + aRemainingWorkItems.size () + " indexer work items in the journal");
+
+    // Write all pending index entries
+    m_aBatchWriter.stop ();
+    m_aJournal.close ();
+
+    // Close pooled SMP connections - no more fetches are running
+    final IPDBusinessInformationProvider aBIProvider = getBusinessInformationProvider ();
+    if (aBIProvider instanceof Closeable)
+      StreamHelper.close ((Closeable) aBIProvider);
 
     // Unschedule the job to avoid problems on shutdown. Use the saved instance
     // because GlobalQuartzScheduler.getInstance() would fail because the global
     // scope is already in destruction.
-    m_aScheduler.unscheduleJob (m_aTriggerKey);
+    m_aScheduler.unscheduleJob (m_aPurgeTriggerKey);
 
     // Close Lucene index etc.
     m_aStorageMgr.close ();
@@ -199,9 +283,95 @@ public final class PDIndexerManager implements Closeable
     return this;
   }
 
+  @Nonnull
+  @Nonempty
+  private static String _getPendingKey (@Nonnull final IndexerWorkItem aWorkItem)
+  {
+    return aWorkItem.getParticipantID ().getURIEncoded ();
+  }
+
+  private static void _onSuperseded (@Nonnull final IndexerWorkItem aOldItem, @Nonnull final IndexerWorkItem aNewItem)
+  {
+    s_aStatsCoalesced.increment (aOldItem.getType ().getID ());
+    s_aLogger.info ("Work item " + aOldItem.getLogText () + " is superseded by " + aNewItem.getLogText ());
+  }
+
+  /**
+   * Check if the provided work item is the most recent pending item of its
+   * participant.
+   *
+   * @param aWorkItem
+   *        The work item to check. May not be <code>null</code>.
+   * @return <code>false</code> if the item was superseded by a newer one.
+   */
+  private boolean _isMostRecentPending (@Nonnull final IndexerWorkItem aWorkItem)
+  {
+    return m_aRWLock.readLocked ( () -> {
+      final IndexerWorkItem aPending = m_aPendingItems.get (_getPendingKey (aWorkItem));
+      return aPending != null && aPending.getID ().equals (aWorkItem.getID ());
+    });
+  }
+
+  /**
+   * Remove the provided work item from the pending items, because it is about
+   * to be executed. Work items queued afterwards for the same participant are
+   * executed afterwards.
+   *
+   * @param aWorkItem
+   *        The work item to be executed. May not be <code>null</code>.
+   * @return <code>true</code> if the item should be executed,
+   *         <code>false</code> if it was superseded by a newer one.
+   */
+  private boolean _claimForExecution (@Nonnull final IndexerWorkItem aWorkItem)
+  {
+    return m_aRWLock.writeLocked ( () -> {
+      final String sKey = _getPendingKey (aWorkItem);
+      final IndexerWorkItem aPending = m_aPendingItems.get (sKey);
+      if (aPending == null || !aPending.getID ().equals (aWorkItem.getID ()))
+        return false;
+      m_aPendingItems.remove (sKey);
+      return true;
+    });
+  }
+
+  /**
+   * Make a work item that failed pending again, so that it can be retried.
+   *
+   * @param aWorkItem
+   *        The work item that failed. May not be <code>null</code>.
+   * @return <code>true</code> if the item should be retried,
+   *         <code>false</code> if a newer item of the same participant was
+   *         queued in the meantime.
+   */
+  private boolean _markPendingForRetry (@Nonnull final IndexerWorkItem aWorkItem)
+  {
+    return m_aRWLock.writeLocked ( () -> {
+      final IndexerWorkItem aPending = m_aPendingItems.putIfAbsent (_getPendingKey (aWorkItem), aWorkItem);
+      if (aPending == null || aPending.getID ().equals (aWorkItem.getID ()))
+        return true;
+      _onSuperseded (aWorkItem, aPending);
+      return false;
+    });
+  }
+
+  /**
+   * @return The number of work items that were skipped, because a newer item
+   *         of the same participant was queued. Superseded items never reach
+   *         the SMP or the index.
+   */
+  @Nonnegative
+  public long getCoalescedItemCount ()
+  {
+    long ret = 0;
+    for (final String sKey : s_aStatsCoalesced.getAllKeys ())
+      ret += s_aStatsCoalesced.getCount (sKey);
+    return ret;
+  }
+
   /**
-   * Queue a single work item of any type. If the item is already in the queue,
-   * it is ignored.
+   * Queue a single work item of any type. If another item of the same
+   * participant is pending, it is superseded by the new item and skipped when
+   * it is due (last write wins).
    *
    * @param aWorkItem
    *        Work item to be queued. May not be <code>null</code>.
@@ -212,20 +382,16 @@ public final class PDIndexerManager implements Closeable
   {
     ValueEnforcer.notNull (aWorkItem, "WorkItem");
 
-    // Check for duplicate
-    m_aRWLock.writeLock ().lock ();
-    try
-    {
-      if (!m_aUniqueItems.add (aWorkItem))
-      {
-        s_aLogger.info ("Ignoring work item " + aWorkItem.getLogText () + " because it is already in the queue!");
-        return EChange.UNCHANGED;
-      }
-    }
-    finally
-    {
-      m_aRWLock.writeLock ().unlock ();
-    }
+    // Supersede any pending item of the same participant
+    m_aRWLock.writeLocked ( () -> {
+      final IndexerWorkItem aOld = m_aPendingItems.put (_getPendingKey (aWorkItem), aWorkItem);
+      if (aOld != null)
+        _onSuperseded (aOld, aWorkItem);
+    });
+
+    // Record it before queuing, so that the completion is always recorded
+    // afterwards
+    m_aJournal.onEnqueue (aWorkItem);
 
     // Queue it
     m_aIndexerWorkQueue.queueObject (aWorkItem);
@@ -247,8 +413,8 @@ public final class PDIndexerManager implements Closeable
    *        Owner of this action
    * @param sRequestingHost
    *        Requesting host (IP address)
-   * @return {@link EChange#UNCHANGED} if the item was queued,
-   *         {@link EChange#UNCHANGED} if this item is already in the queue!
+   * @return {@link EChange#CHANGED} if the item was queued. A pending item of
+   *         the same participant is superseded by the new item.
    */
   @Nonnull
   public EChange queueWorkItem (@Nonnull final IParticipantIdentifier aParticipantID,
@@ -285,8 +451,8 @@ public final class PDIndexerManager implements Closeable
       return ESuccess.FAILURE;
     }
 
-    // Got data - put in storage
-    return m_aStorageMgr.createOrUpdateEntry (aParticipantID, aBI, aWorkItem.getAsMetaData ());
+    // Got data - put in storage with the next batch
+    return m_aBatchWriter.createOrUpdateEntry (new PDIndexEntry (aParticipantID, aBI, aWorkItem.getAsMetaData ()));
   }
 
   /**
@@ -337,9 +503,6 @@ public final class PDIndexerManager implements Closeable
 
       if (eSuccess.isSuccess ())
       {
-        // Item handled - remove from overall list
-        m_aRWLock.writeLocked ((Runnable) () -> m_aUniqueItems.remove (aWorkItem));
-
         // And we're done
         return ESuccess.SUCCESS;
       }
@@ -365,16 +528,90 @@ public final class PDIndexerManager implements Closeable
   @Nonnull
   private ESuccess _asyncFetchParticipantData (@Nonnull final IndexerWorkItem aItem)
   {
-    final ESuccess eSuccess = _executeWorkItem (aItem);
+    try
+    {
+      if (!_claimForExecution (aItem))
+      {
+        // A newer item of the same participant is pending
+        if (s_aLogger.isDebugEnabled ())
+          s_aLogger.debug ("Skipping superseded work item " + aItem.getLogText ());
+        return ESuccess.SUCCESS;
+      }
 
-    if (eSuccess.isFailure ())
+      final ESuccess eSuccess = _executeWorkItem (aItem);
+
+      if (eSuccess.isFailure ())
+      {
+        s_aLogger.warn ("Error fetching " + aItem.getLogText ());
+        // Failed to fetch participant data - add to re-index queue and leave in
+        // the pending items
+        if (_markPendingForRetry (aItem))
+        {
+          final ReIndexWorkItem aReIndexItem = m_aRetriesInQueue.remove (aItem.getID ());
+          if (aReIndexItem != null)
+          {
+            // Still no success - retry later than before
+            m_aReIndexList.incRetryCountAndAddItem (aReIndexItem);
+          }
+          else
+            m_aReIndexList.addItem (new ReIndexWorkItem (aItem));
+        }
+      }
+      return eSuccess;
+    }
+    finally
     {
-      s_aLogger.warn ("Error fetching " + aItem.getLogText ());
-      // Failed to fetch participant data - add to re-index queue and leave in
-      // the overall list
-      m_aReIndexList.addItem (new ReIndexWorkItem (aItem));
+      m_aRetriesInQueue.remove (aItem.getID ());
+      // The item left the work queue
+      m_aJournal.onComplete (aItem);
     }
-    return eSuccess;
+  }
+
+  /**
+   * Determine the host that is queried for the provided work item.
+   *
+   * @param aItem
+   *        The item to be fetched. Never <code>null</code>.
+   * @return <code>null</code> if no remote host is queried.
+   */
+  @Nullable
+  private String _getHostKey (@Nonnull final IndexerWorkItem aItem)
+  {
+    // Deletions are handled locally and superseded items are skipped anyway
+    if (aItem.getType () != EIndexerWorkItemType.CREATE_UPDATE || !_isMostRecentPending (aItem))
+      return null;
+    return getBusinessInformationProvider ().getHostKey (aItem.getParticipantID ());
+  }
+
+  /**
+   * Called for items that are not fetched because the circuit breaker of the
+   * host is open.
+   *
+   * @param aItem
+   *        The item that was not fetched. Never <code>null</code>.
+   * @param aRetryDT
+   *        The earliest date time for the retry. Never <code>null</code>.
+   */
+  private void _onHostUnavailable (@Nonnull final IndexerWorkItem aItem, @Nonnull final LocalDateTime aRetryDT)
+  {
+    final ReIndexWorkItem aReIndexItem = m_aRetriesInQueue.remove (aItem.getID ());
+    if (_isMostRecentPending (aItem))
+    {
+      s_aLogger.info ("Deferring " + aItem.getLogText () + " until at least " + aRetryDT + " because the SMP host is unavailable");
+      // Add to re-index queue and leave in the pending items. The deferral is
+      // jittered so that the items of the host are not retried all at once
+      if (aReIndexItem != null)
+      {
+        // Keep the retry count and delay of the existing retry
+        m_aReIndexList.deferRetryAndAddItem (aReIndexItem, aRetryDT);
+      }
+      else
+        m_aReIndexList.addItem (new ReIndexWorkItem (aItem, ReIndexWorkItem.getJitteredDeferralDT (aRetryDT)));
+    }
+    // else superseded anyway
+
+    // The item left the work queue
+    m_aJournal.onComplete (aItem);
   }
 
   /**
@@ -383,44 +620,60 @@ public final class PDIndexerManager implements Closeable
   public void expireOldEntries ()
   {
     // Expire old entries
-    final List <ReIndexWorkItem> aExpiredItems = m_aReIndexList.getAndRemoveAllEntries (aWorkItem -> aWorkItem.isExpired ());
+    final List <ReIndexWorkItem> aExpiredItems = m_aReIndexList.getAndRemoveAllExpiredEntries (PDTFactory.getCurrentLocalDateTime ());
     if (!aExpiredItems.isEmpty ())
     {
       s_aLogger.info ("Expiring " + aExpiredItems.size () + " re-index work items");
 
       m_aRWLock.writeLocked ( () -> {
-        // remove them from the overall list but move to dead item list
+        // remove them from the pending items but move to dead item list
         for (final ReIndexWorkItem aItem : aExpiredItems)
         {
-          m_aUniqueItems.remove (aItem.getWorkItem ());
-          m_aDeadList.addItem (aItem);
+          final IndexerWorkItem aWorkItem = aItem.getWorkItem ();
+          final String sKey = _getPendingKey (aWorkItem);
+          final IndexerWorkItem aPending = m_aPendingItems.get (sKey);
+          if (aPending != null && aPending.getID ().equals (aWorkItem.getID ()))
+          {
+            m_aPendingItems.remove (sKey);
+            m_aDeadList.addItem (aItem);
+          }
+          // else superseded by a newer item
         }
       });
     }
   }
 
   /**
-   * Re-index all entries that are ready to be re-indexed now.
+   * Re-index all entries that are ready to be re-indexed now. The items are
+   * handed to the work queue and fetched in parallel like new items.
    */
   public void reIndexParticipantData ()
   {
     // Get and remove all items to re-index "now"
     final LocalDateTime aNow = PDTFactory.getCurrentLocalDateTime ();
-    final List <ReIndexWorkItem> aReIndexNowItems = m_aReIndexList.getAndRemoveAllEntries (aWorkItem -> aWorkItem.isRetryPossible (aNow));
+    final List <ReIndexWorkItem> aReIndexNowItems = m_aReIndexList.getAndRemoveAllDueEntries (aNow);
 
     if (s_aLogger.isDebugEnabled ())
       s_aLogger.debug ("Re-indexing " + aReIndexNowItems.size () + " work items");
 
     for (final ReIndexWorkItem aReIndexItem : aReIndexNowItems)
     {
+      final IndexerWorkItem aWorkItem = aReIndexItem.getWorkItem ();
+      if (!_isMostRecentPending (aWorkItem))
+      {
+        // A newer item of the same participant is pending
+        if (s_aLogger.isDebugEnabled ())
+          s_aLogger.debug ("Skipping superseded re-index work item " + aReIndexItem.getLogText ());
+        continue;
+      }
+
       if (s_aLogger.isDebugEnabled ())
         s_aLogger.debug ("Try to re-index " + aReIndexItem.getLogText ());
 
-      if (_executeWorkItem (aReIndexItem.getWorkItem ()).isFailure ())
-      {
-        // Still no success. Add again to the retry list
-        m_aReIndexList.incRetryCountAndAddItem (aReIndexItem);
-      }
+      // The item is already pending - just queue it again
+      m_aRetriesInQueue.put (aWorkItem.getID (), aReIndexItem);
+      m_aJournal.onEnqueue (aWorkItem);
+      m_aIndexerWorkQueue.queueObject (aWorkItem);
     }
   }
 
@@ -439,11 +692,12 @@ public final class PDIndexerManager implements Closeable
   public String toString ()
   {
     return ToStringGenerator.getDerived (super.toString ())
-                            .append ("UniqueItems", m_aUniqueItems)
+                            .append ("PendingItems", m_aPendingItems)
                             .append ("ReIndexList", m_aReIndexList)
                             .append ("DeadList", m_aDeadList)
                             .append ("IndexerWorkQueue", m_aIndexerWorkQueue)
-                            .append ("TriggerKey", m_aTriggerKey)
+                            .append ("Journal", m_aJournal)
+                            .append ("ReIndexScheduler", m_aReIndexScheduler)
                             .append ("BIProvider", m_aBIProvider)
                             .toString ();
   }
@@ -59,6 +59,7 @@ public final class PDMetaManager extends AbstractGlobalSingleton
     {
       m_aLucene = new PDLucene ();
       m_aStorageMgr = new PDStorageManager (m_aLucene);
+      m_aStorageMgr.upgradeIndexIfNecessary ();
       m_aIndexerMgr = s_aFactoryIndexerMgr.call (m_aStorageMgr);
       if (m_aIndexerMgr == null)
         throw new IllegalStateException ("Failed to create IndexerManager");
@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.mgr;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.ExtendedDefaultThreadFactory;
+import com.helger.commons.concurrent.ManagedExecutorService;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.datetime.PDTFactory;
+
+/**
+ * The scheduler for the {@link ReIndexWorkItemList}. Instead of polling the
+ * list periodically, it sleeps until the earliest next retry or expiry date
+ * time of all items and invokes the due action exactly then. Adding an item
+ * to the list wakes it up, so that it can sleep for a shorter time if
+ * necessary.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+final class ReIndexScheduler
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (ReIndexScheduler.class);
+  /**
+   * The maximum time to sleep at once, so that changes of the system clock are
+   * considered.
+   */
+  private static final long MAX_SLEEP_MILLIS = 10 * CGlobal.MILLISECONDS_PER_MINUTE;
+  /** The time to sleep after the due action failed */
+  private static final long ERROR_SLEEP_MILLIS = CGlobal.MILLISECONDS_PER_SECOND;
+
+  private final ReIndexWorkItemList m_aReIndexList;
+  private final Runnable m_aDueAction;
+  private final Lock m_aLock = new ReentrantLock ();
+  private final Condition m_aWakeUpCondition = m_aLock.newCondition ();
+  @GuardedBy ("m_aLock")
+  private boolean m_bWakeUp = false;
+  private final ThreadPoolExecutor m_aSchedulerThreadPool = new ThreadPoolExecutor (1,
+                                                                                    1,
+                                                                                    60L,
+                                                                                    TimeUnit.SECONDS,
+                                                                                    new LinkedBlockingQueue <Runnable> (),
+                                                                                    new ExtendedDefaultThreadFactory ("ReIndexScheduler"));
+  private volatile boolean m_bStarted = false;
+  private volatile boolean m_bStopped = false;
+
+  /**
+   * Constructor. The scheduler does nothing until {@link #start()} is called.
+   *
+   * @param aReIndexList
+   *        The re-index list to schedule. May not be <code>null</code>.
+   * @param aDueAction
+   *        The action to be invoked when at least one item is due or expired.
+   *        It must remove all due and expired items from the list. May not be
+   *        <code>null</code>.
+   */
+  public ReIndexScheduler (@Nonnull final ReIndexWorkItemList aReIndexList, @Nonnull final Runnable aDueAction)
+  {
+    m_aReIndexList = ValueEnforcer.notNull (aReIndexList, "ReIndexList");
+    m_aDueAction = ValueEnforcer.notNull (aDueAction, "DueAction");
+  }
+
+  /**
+   * Start the scheduler thread. Calling this method more than once has no
+   * effect.
+   */
+  public synchronized void start ()
+  {
+    if (!m_bStarted && !m_bStopped)
+    {
+      m_bStarted = true;
+      m_aReIndexList.setAddCallback (this::wakeUp);
+      m_aSchedulerThreadPool.submit (this::_run);
+    }
+  }
+
+  /**
+   * Wake up the scheduler, so that it re-determines the time of the next due
+   * item.
+   */
+  public void wakeUp ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      m_bWakeUp = true;
+      m_aWakeUpCondition.signalAll ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  private long _getSleepMillis ()
+  {
+    final LocalDateTime aEarliestDT = m_aReIndexList.getEarliestScheduledDT ();
+    if (aEarliestDT == null)
+      return MAX_SLEEP_MILLIS;
+
+    // An item is due if its date time is before now, hence the additional
+    // millisecond
+    final LocalDateTime aNow = PDTFactory.getCurrentLocalDateTime ();
+    final long nMillis = aEarliestDT.toDateTime (DateTimeZone.UTC).getMillis () -
+                         aNow.toDateTime (DateTimeZone.UTC).getMillis () +
+                         1;
+    return Math.min (nMillis, MAX_SLEEP_MILLIS);
+  }
+
+  /**
+   * Sleep until the provided time elapsed, the scheduler was woken up or
+   * stopped.
+   *
+   * @return <code>false</code> if the thread was interrupted.
+   */
+  private boolean _sleep (final long nMillis)
+  {
+    m_aLock.lock ();
+    try
+    {
+      if (!m_bWakeUp && !m_bStopped)
+        m_aWakeUpCondition.await (nMillis, TimeUnit.MILLISECONDS);
+      m_bWakeUp = false;
+      return true;
+    }
+    catch (final InterruptedException ex)
+    {
+      s_aLogger.warn ("Re-index scheduler was interrupted");
+      Thread.currentThread ().interrupt ();
+      return false;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  private void _run ()
+  {
+    while (!m_bStopped)
+    {
+      long nSleepMillis = _getSleepMillis ();
+      if (nSleepMillis <= 0)
+      {
+        try
+        {
+          m_aDueAction.run ();
+          continue;
+        }
+        catch (final Throwable t)
+        {
+          s_aLogger.error ("Error processing due re-index work items", t);
+          nSleepMillis = ERROR_SLEEP_MILLIS;
+        }
+      }
+
+      if (!_sleep (nSleepMillis))
+        break;
+    }
+  }
+
+  /**
+   * Stop the scheduler thread. A due action currently running is finished
+   * before this method returns.
+   */
+  public synchronized void stop ()
+  {
+    m_bStopped = true;
+    m_aReIndexList.setAddCallback (null);
+    wakeUp ();
+    ManagedExecutorService.shutdownAndWaitUntilAllTasksAreFinished (m_aSchedulerThreadPool);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Started", m_bStarted).append ("Stopped", m_bStopped).toString ();
+  }
+}
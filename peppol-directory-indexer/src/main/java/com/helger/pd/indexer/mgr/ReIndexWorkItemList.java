@@ -17,15 +17,22 @@
 package com.helger.pd.indexer.mgr;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
+import org.joda.time.LocalDateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +41,7 @@ import com.helger.commons.annotation.ELockType;
 import com.helger.commons.annotation.MustBeLocked;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.collection.CollectionHelper;
+import com.helger.commons.lang.TimeValue;
 import com.helger.commons.microdom.IMicroDocument;
 import com.helger.commons.microdom.IMicroElement;
 import com.helger.commons.microdom.MicroDocument;
@@ -46,41 +54,85 @@ import com.helger.photon.basic.app.dao.impl.DAOException;
 import com.helger.photon.basic.app.dao.impl.EDAOActionType;
 
 /**
- * This is the global re-index work queue.
+ * This is the global re-index work queue.<br>
+ * Besides the index by ID, the items are kept ordered by their next retry date
+ * time and by their maximum retry date time, so that due and expired items can
+ * be retrieved without looking at all items. Each change is appended to the
+ * write ahead log, and the complete file is only rewritten after
+ * {@link #WAL_WAITING_TIME}.
  *
  * @author Philip Helger
  */
 @ThreadSafe
 final class ReIndexWorkItemList extends AbstractWALDAO <ReIndexWorkItem>
 {
+  /**
+   * The time after the first pending change, after which the complete file is
+   * rewritten. Until then the changes are only contained in the write ahead
+   * log.
+   */
+  public static final TimeValue WAL_WAITING_TIME = new TimeValue (TimeUnit.MINUTES, 5);
+
   private static final Logger s_aLogger = LoggerFactory.getLogger (ReIndexWorkItemList.class);
   private static final String ELEMENT_ROOT = "root";
   private static final String ELEMENT_ITEM = "item";
 
   private final Map <String, ReIndexWorkItem> m_aMap = new HashMap <> ();
+  private final NavigableSet <ReIndexWorkItem> m_aByNextRetryDT = new TreeSet <> (_createComparator (ReIndexWorkItem::getNextRetryDT));
+  private final NavigableSet <ReIndexWorkItem> m_aByMaxRetryDT = new TreeSet <> (_createComparator (ReIndexWorkItem::getMaxRetryDT));
+  private volatile Runnable m_aAddCallback;
 
   public ReIndexWorkItemList (@Nullable final String sFilename) throws DAOException
   {
     super (ReIndexWorkItem.class, sFilename);
+    setWaitingTime (WAL_WAITING_TIME);
     initialRead ();
   }
 
+  @Nonnull
+  private static Comparator <ReIndexWorkItem> _createComparator (@Nonnull final Function <ReIndexWorkItem, LocalDateTime> aDTGetter)
+  {
+    // Use the ID as tie breaker to keep items with the same date time
+    final Comparator <ReIndexWorkItem> aComp = Comparator.comparing (aDTGetter);
+    return aComp.thenComparing (ReIndexWorkItem::getID);
+  }
+
+  @MustBeLocked (ELockType.WRITE)
+  private void _put (@Nonnull final ReIndexWorkItem aItem)
+  {
+    _remove (aItem.getID ());
+    m_aMap.put (aItem.getID (), aItem);
+    m_aByNextRetryDT.add (aItem);
+    m_aByMaxRetryDT.add (aItem);
+  }
+
+  @MustBeLocked (ELockType.WRITE)
+  private void _remove (@Nonnull final String sID)
+  {
+    final ReIndexWorkItem aOld = m_aMap.remove (sID);
+    if (aOld != null)
+    {
+      m_aByNextRetryDT.remove (aOld);
+      m_aByMaxRetryDT.remove (aOld);
+    }
+  }
+
   @Override
   protected void onRecoveryCreate (@Nonnull final ReIndexWorkItem aElement)
   {
-    m_aMap.put (aElement.getID (), aElement);
+    _put (aElement);
   }
 
   @Override
   protected void onRecoveryUpdate (@Nonnull final ReIndexWorkItem aElement)
   {
-    m_aMap.put (aElement.getID (), aElement);
+    _put (aElement);
   }
 
   @Override
   protected void onRecoveryDelete (@Nonnull final ReIndexWorkItem aElement)
   {
-    m_aMap.remove (aElement.getID ());
+    _remove (aElement.getID ());
   }
 
   @Override
@@ -99,7 +151,8 @@ final class ReIndexWorkItemList extends AbstractWALDAO <ReIndexWorkItem>
   {
     final IMicroDocument aDoc = new MicroDocument ();
     final IMicroElement aRoot = aDoc.appendElement (ELEMENT_ROOT);
-    for (final ReIndexWorkItem aWorkItem : CollectionHelper.getSortedByKey (m_aMap).values ())
+    // Already sorted - no need to sort again
+    for (final ReIndexWorkItem aWorkItem : m_aByNextRetryDT)
       aRoot.appendChild (MicroTypeConverter.convertToMicroElement (aWorkItem, ELEMENT_ITEM));
     return aDoc;
   }
@@ -112,7 +165,7 @@ final class ReIndexWorkItemList extends AbstractWALDAO <ReIndexWorkItem>
     final String sID = aItem.getID ();
     if (m_aMap.containsKey (sID))
       throw new IllegalStateException ("Work item with ID '" + sID + "' is already contained!");
-    m_aMap.put (sID, aItem);
+    _put (aItem);
   }
 
   /**
@@ -135,7 +188,48 @@ final class ReIndexWorkItemList extends AbstractWALDAO <ReIndexWorkItem>
     {
       m_aRWLock.writeLock ().unlock ();
     }
-    s_aLogger.info ("Added " + aItem.getLogText () + " to re-try list for retry #" + (aItem.getRetryCount () + 1));
+    s_aLogger.info ("Added " + aItem.getLogText () +
+                    " to re-try list for retry #" +
+                    (aItem.getRetryCount () + 1) +
+                    " at " +
+                    aItem.getNextRetryDT ());
+
+    final Runnable aAddCallback = m_aAddCallback;
+    if (aAddCallback != null)
+      aAddCallback.run ();
+  }
+
+  /**
+   * Set a callback that is invoked after an item was added.
+   *
+   * @param aAddCallback
+   *        The callback to use. May be <code>null</code>.
+   */
+  void setAddCallback (@Nullable final Runnable aAddCallback)
+  {
+    m_aAddCallback = aAddCallback;
+  }
+
+  /**
+   * @return The earliest date time at which an item is either due for retry
+   *         or expires. <code>null</code> if the list is empty.
+   */
+  @Nullable
+  public LocalDateTime getEarliestScheduledDT ()
+  {
+    m_aRWLock.readLock ().lock ();
+    try
+    {
+      if (m_aMap.isEmpty ())
+        return null;
+      final LocalDateTime aNextRetryDT = m_aByNextRetryDT.first ().getNextRetryDT ();
+      final LocalDateTime aMaxRetryDT = m_aByMaxRetryDT.first ().getMaxRetryDT ();
+      return aNextRetryDT.isBefore (aMaxRetryDT) ? aNextRetryDT : aMaxRetryDT;
+    }
+    finally
+    {
+      m_aRWLock.readLock ().unlock ();
+    }
   }
 
   public void incRetryCountAndAddItem (@Nonnull final ReIndexWorkItem aItem)
@@ -143,6 +237,9 @@ final class ReIndexWorkItemList extends AbstractWALDAO <ReIndexWorkItem>
     m_aRWLock.writeLock ().lock ();
     try
     {
+      // The retry date time is part of the ordering - remove before changing
+      // it
+      _remove (aItem.getID ());
       aItem.incRetryCount ();
     }
     finally
@@ -152,17 +249,112 @@ final class ReIndexWorkItemList extends AbstractWALDAO <ReIndexWorkItem>
     addItem (aItem);
   }
 
+  /**
+   * Defer the next retry of the provided item and add it to the list.
+   *
+   * @param aItem
+   *        The item to defer. May not be <code>null</code>.
+   * @param aEarliestDT
+   *        The earliest date time for the next retry. May not be
+   *        <code>null</code>.
+   * @see ReIndexWorkItem#deferRetry(LocalDateTime)
+   */
+  public void deferRetryAndAddItem (@Nonnull final ReIndexWorkItem aItem, @Nonnull final LocalDateTime aEarliestDT)
+  {
+    m_aRWLock.writeLock ().lock ();
+    try
+    {
+      // The retry date time is part of the ordering - remove before changing
+      // it
+      _remove (aItem.getID ());
+      aItem.deferRetry (aEarliestDT);
+    }
+    finally
+    {
+      m_aRWLock.writeLock ().unlock ();
+    }
+    addItem (aItem);
+  }
+
+  @MustBeLocked (ELockType.WRITE)
+  private void _markAllAsDeleted (@Nonnull final List <ReIndexWorkItem> aItems)
+  {
+    // A single WAL entry for all items
+    if (!aItems.isEmpty ())
+      markAsChanged (aItems, EDAOActionType.DELETE);
+  }
+
+  /**
+   * Remove all items from the head of the provided index, as long as the
+   * provided predicate matches.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  private List <ReIndexWorkItem> _getAndRemoveHead (@Nonnull final NavigableSet <ReIndexWorkItem> aIndex,
+                                                    @Nonnull final Predicate <ReIndexWorkItem> aPred)
+  {
+    m_aRWLock.writeLock ().lock ();
+    try
+    {
+      final List <ReIndexWorkItem> ret = new ArrayList <> ();
+      while (!aIndex.isEmpty () && aPred.test (aIndex.first ()))
+      {
+        final ReIndexWorkItem aWorkItem = aIndex.first ();
+        _remove (aWorkItem.getID ());
+        ret.add (aWorkItem);
+      }
+      _markAllAsDeleted (ret);
+      return ret;
+    }
+    finally
+    {
+      m_aRWLock.writeLock ().unlock ();
+    }
+  }
+
+  /**
+   * Get and remove all items that can be retried at the provided date time,
+   * ordered by their next retry date time.
+   *
+   * @param aDT
+   *        The date time to check. May not be <code>null</code>.
+   * @return All items for which {@link ReIndexWorkItem#isRetryPossible(LocalDateTime)}
+   *         is <code>true</code>. Never <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <ReIndexWorkItem> getAndRemoveAllDueEntries (@Nonnull final LocalDateTime aDT)
+  {
+    ValueEnforcer.notNull (aDT, "DT");
+    return _getAndRemoveHead (m_aByNextRetryDT, aWorkItem -> aWorkItem.isRetryPossible (aDT));
+  }
+
+  /**
+   * Get and remove all items whose maximum retry date time is before the
+   * provided date time.
+   *
+   * @param aDT
+   *        The date time to check. May not be <code>null</code>.
+   * @return All expired items. Never <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <ReIndexWorkItem> getAndRemoveAllExpiredEntries (@Nonnull final LocalDateTime aDT)
+  {
+    ValueEnforcer.notNull (aDT, "DT");
+    return _getAndRemoveHead (m_aByMaxRetryDT, aWorkItem -> aWorkItem.getMaxRetryDT ().isBefore (aDT));
+  }
+
   @Nullable
   public ReIndexWorkItem getAndRemoveEntry (@Nonnull final Predicate <ReIndexWorkItem> aPred)
   {
     m_aRWLock.writeLock ().lock ();
     try
     {
-      // Operate on a copy for removal!
-      for (final ReIndexWorkItem aWorkItem : CollectionHelper.newList (m_aMap.values ()))
+      for (final ReIndexWorkItem aWorkItem : m_aMap.values ())
         if (aPred.test (aWorkItem))
         {
-          m_aMap.remove (aWorkItem.getID ());
+          _remove (aWorkItem.getID ());
           markAsChanged (aWorkItem, EDAOActionType.DELETE);
           return aWorkItem;
         }
@@ -182,14 +374,19 @@ final class ReIndexWorkItemList extends AbstractWALDAO <ReIndexWorkItem>
     try
     {
       final List <ReIndexWorkItem> ret = new ArrayList <> ();
-      // Operate on a copy for removal!
-      for (final ReIndexWorkItem aWorkItem : CollectionHelper.newList (m_aMap.values ()))
+      final Iterator <ReIndexWorkItem> it = m_aMap.values ().iterator ();
+      while (it.hasNext ())
+      {
+        final ReIndexWorkItem aWorkItem = it.next ();
         if (aPred.test (aWorkItem))
         {
           ret.add (aWorkItem);
-          m_aMap.remove (aWorkItem.getID ());
-          markAsChanged (aWorkItem, EDAOActionType.DELETE);
+          it.remove ();
+          m_aByNextRetryDT.remove (aWorkItem);
+          m_aByMaxRetryDT.remove (aWorkItem);
         }
+      }
+      _markAllAsDeleted (ret);
       return ret;
     }
     finally
@@ -16,6 +16,9 @@
  */
 package com.helger.pd.indexer.mgr;
 
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -45,14 +48,13 @@ import com.helger.commons.microdom.MicroElement;
 import com.helger.commons.microdom.MicroEntityReference;
 import com.helger.commons.microdom.MicroProcessingInstruction;
 import com.helger.commons.microdom.MicroText;
-import com.helger.commons.microdom.serialize.MicroWriter;
 import com.helger.commons.url.SimpleURL;
 import com.helger.commons.url.URLHelper;
-import com.helger.commons.xml.XMLDebug;
+import com.helger.commons.xml.serialize.write.XMLWriter;
 import com.helger.pd.businessinformation.IPDBusinessInformationProvider;
-import com.helger.pd.businessinformation.PDBusinessInformationMarshaller;
 import com.helger.pd.businessinformation.PDBusinessInformationType;
 import com.helger.pd.businessinformation.PDExtendedBusinessInformation;
+import com.helger.pd.businessinformation.PDSharedBusinessInformationMarshaller;
 import com.helger.pd.settings.PDSettings;
 import com.helger.peppol.identifier.IDocumentTypeIdentifier;
 import com.helger.peppol.identifier.IdentifierHelper;
@@ -63,19 +65,44 @@ import com.helger.peppol.smp.ServiceGroupType;
 import com.helger.peppol.smp.ServiceMetadataReferenceType;
 import com.helger.peppol.smpclient.SMPClientReadOnly;
 import com.helger.peppol.smpclient.exception.SMPClientException;
+import com.helger.peppol.utils.BusdoxURLHelper;
 
 /**
  * The SMP based {@link IPDBusinessInformationProvider} implementation. An SMP
  * lookup of the ServiceGroup is performed, and the <code>Extension</code>
  * element is parsed for the elements as specified in the PYP specification.
+ * All lookups share the connection pool of an {@link SMPHttpClientManager},
+ * which is closed when this provider is closed.
  *
  * @author Philip Helger
  */
-public final class SMPBusinessInformationProvider implements IPDBusinessInformationProvider
+public final class SMPBusinessInformationProvider implements IPDBusinessInformationProvider, Closeable
 {
   private static final String URL_PART_SERVICES = "/services/";
   private static final Logger s_aLogger = LoggerFactory.getLogger (SMPBusinessInformationProvider.class);
 
+  private final SMPHttpClientManager m_aHttpClientMgr;
+
+  public SMPBusinessInformationProvider ()
+  {
+    this (new SMPHttpClientManager ());
+  }
+
+  public SMPBusinessInformationProvider (@Nonnull final SMPHttpClientManager aHttpClientMgr)
+  {
+    m_aHttpClientMgr = ValueEnforcer.notNull (aHttpClientMgr, "HttpClientMgr");
+  }
+
+  /**
+   * @return The HTTP client manager used for the SMP lookups. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public SMPHttpClientManager getHttpClientManager ()
+  {
+    return m_aHttpClientMgr;
+  }
+
   // FIXME replace with MicroHelper version in ph-commons >= 6.2.1
   @Nonnull
   public static IMicroNode convertToMicroNode (@Nonnull final Node aNode)
@@ -169,57 +196,117 @@ public final class SMPBusinessInformationProvider implements IPDBusinessInformat
     return ret;
   }
 
+  @Nonnull
+  private static String _getLocalName (@Nonnull final Node aNode)
+  {
+    final String ret = aNode.getLocalName ();
+    return ret != null ? ret : aNode.getNodeName ();
+  }
+
+  /**
+   * Extract the business information from the provided SMP extension. The
+   * configured XML Schema validation is used.
+   *
+   * @param aExtension
+   *        The extension to use. May be <code>null</code>.
+   * @return <code>null</code> if the extension does not contain valid business
+   *         information.
+   * @see PDSettings#isIndexerBusinessInformationValidationEnabled()
+   */
   @Nullable
   public static PDBusinessInformationType extractBusinessInformation (@Nullable final ExtensionType aExtension)
+  {
+    return extractBusinessInformation (aExtension, PDSettings.isIndexerBusinessInformationValidationEnabled ());
+  }
+
+  /**
+   * Extract the business information from the provided SMP extension. The
+   * business information element is located in the original DOM and
+   * unmarshalled directly from it, so no copy of the tree is created.
+   *
+   * @param aExtension
+   *        The extension to use. May be <code>null</code>.
+   * @param bValidate
+   *        <code>true</code> to validate the business information against the
+   *        XML Schema.
+   * @return <code>null</code> if the extension does not contain valid business
+   *         information.
+   */
+  @Nullable
+  public static PDBusinessInformationType extractBusinessInformation (@Nullable final ExtensionType aExtension,
+                                                                      final boolean bValidate)
   {
     if (aExtension != null && aExtension.getAny () != null)
     {
-      final IMicroNode aExtensionContainer = convertToMicroNode (aExtension.getAny ());
-      if (aExtensionContainer instanceof IMicroElement)
+      final Element eExtensionContainer = aExtension.getAny ();
+      if ("ExtensionContainer".equals (_getLocalName (eExtensionContainer)))
       {
-        final IMicroElement eExtensionContainer = (IMicroElement) aExtensionContainer;
-        if ("ExtensionContainer".equals (eExtensionContainer.getTagName ()))
-        {
-          for (final IMicroElement eExtensionElement : eExtensionContainer.getAllChildElements ("ExtensionElement"))
-            if ("business information".equals (eExtensionElement.getAttributeValue ("type")))
+        for (Node aChild = eExtensionContainer.getFirstChild (); aChild != null; aChild = aChild.getNextSibling ())
+          if (aChild.getNodeType () == Node.ELEMENT_NODE &&
+              "ExtensionElement".equals (_getLocalName (aChild)) &&
+              "business information".equals (((Element) aChild).getAttribute ("type")))
+          {
+            Element eBusinessInfo = null;
+            for (Node aBIChild = aChild.getFirstChild (); aBIChild != null; aBIChild = aBIChild.getNextSibling ())
+              if (aBIChild.getNodeType () == Node.ELEMENT_NODE && "BusinessInformation".equals (_getLocalName (aBIChild)))
+              {
+                eBusinessInfo = (Element) aBIChild;
+                break;
+              }
+
+            if (eBusinessInfo != null)
             {
-              final IMicroElement eBussinessInfo = eExtensionElement.getFirstChildElement ("BusinessInformation");
-              if (eBussinessInfo != null)
+              final PDBusinessInformationType aBI = PDSharedBusinessInformationMarshaller.read (eBusinessInfo, bValidate);
+              if (aBI != null)
               {
-                final String sBusinessInfo = MicroWriter.getXMLString (eBussinessInfo);
-                final PDBusinessInformationType aBI = new PDBusinessInformationMarshaller ().read (sBusinessInfo);
-                if (aBI != null)
-                {
-                  // Finally we're done
-                  return aBI;
-                }
-                s_aLogger.warn ("Failed to parse business information data:\n" + sBusinessInfo);
+                // Finally we're done
+                return aBI;
               }
-              else
-                s_aLogger.warn ("The 'ExtensionElement' for business information does not contain a 'BusinessInformation' child element");
-              break;
+              s_aLogger.warn ("Failed to parse business information data:\n" + XMLWriter.getXMLString (eBusinessInfo));
             }
-          s_aLogger.warn ("'ExtensionContainer' does not contain an 'ExtensionElement' with @type 'business information'");
-        }
-        else
-        {
-          s_aLogger.warn ("Extension content is expected to be an 'ExtensionContainer' but it is a '" + eExtensionContainer.getTagName () + "'");
-        }
+            else
+              s_aLogger.warn ("The 'ExtensionElement' for business information does not contain a 'BusinessInformation' child element");
+            return null;
+          }
+        s_aLogger.warn ("'ExtensionContainer' does not contain an 'ExtensionElement' with @type 'business information'");
       }
       else
       {
-        s_aLogger.warn ("Extension content is not an element but a " + XMLDebug.getNodeTypeAsString (aExtension.getAny ().getNodeType ()));
+        s_aLogger.warn ("Extension content is expected to be an 'ExtensionContainer' but it is a '" +
+                        _getLocalName (eExtensionContainer) +
+                        "'");
       }
     }
 
     return null;
   }
 
+  /**
+   * {@inheritDoc}<br>
+   * The host key is the IP address the DNS name of the participant resolves
+   * to, so that all participants registered at the same SMP share the same
+   * key. If the DNS name cannot be resolved, the DNS name itself is used.
+   */
+  @Override
+  @Nullable
+  public String getHostKey (@Nonnull final IPeppolParticipantIdentifier aParticipantID)
+  {
+    final String sDNSName = BusdoxURLHelper.getDNSNameOfParticipant (aParticipantID, PDSettings.getSMLToUse ());
+    try
+    {
+      return InetAddress.getByName (sDNSName).getHostAddress ();
+    }
+    catch (final UnknownHostException ex)
+    {
+      return sDNSName;
+    }
+  }
+
   @Nullable
   public PDExtendedBusinessInformation getBusinessInformation (@Nonnull final IPeppolParticipantIdentifier aParticipantID)
   {
     // Fetch data
-    final SMPClientReadOnly aSMPClient = new SMPClientReadOnly (aParticipantID, PDSettings.getSMLToUse ());
+    final SMPClientReadOnly aSMPClient = m_aHttpClientMgr.createSMPClient (aParticipantID, PDSettings.getSMLToUse ());
     ServiceGroupType aServiceGroup;
     try
     {
@@ -268,4 +355,9 @@ public final class SMPBusinessInformationProvider implements IPDBusinessInformat
 
     return new PDExtendedBusinessInformation (aBI, aDocumentTypeIDs);
   }
+
+  public void close ()
+  {
+    m_aHttpClientMgr.close ();
+  }
 }
@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.mgr;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.joda.time.LocalDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.state.ESuccess;
+import com.helger.commons.statistics.IMutableStatisticsHandlerKeyedCounter;
+import com.helger.commons.statistics.StatisticsManager;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.datetime.PDTFactory;
+
+/**
+ * A circuit breaker per SMP host. The results of the most recent fetches of
+ * each host are tracked, and if the error rate exceeds the configured
+ * threshold, the breaker of that host opens. While it is open, no fetches
+ * should be performed against that host. After the open period a single trial
+ * fetch is allowed: if it succeeds the breaker closes again, otherwise it is
+ * re-opened.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+final class SMPHostCircuitBreaker
+{
+  /**
+   * The state of a single host.
+   */
+  @NotThreadSafe
+  private static final class HostState
+  {
+    // Ring buffer of the most recent results
+    private final boolean [] m_aFailures;
+    private int m_nResultCount = 0;
+    private int m_nNextIndex = 0;
+    private int m_nFailureCount = 0;
+    // Non-null while open
+    private LocalDateTime m_aOpenUntilDT;
+    // true while the trial fetch after the open period is running
+    private boolean m_bTrialRunning = false;
+
+    HostState (@Nonnegative final int nWindowSize)
+    {
+      m_aFailures = new boolean [nWindowSize];
+    }
+
+    void addResult (final boolean bFailure)
+    {
+      if (m_nResultCount == m_aFailures.length)
+      {
+        // Window is full - drop the oldest result
+        if (m_aFailures[m_nNextIndex])
+          m_nFailureCount--;
+      }
+      else
+        m_nResultCount++;
+      m_aFailures[m_nNextIndex] = bFailure;
+      if (bFailure)
+        m_nFailureCount++;
+      m_nNextIndex = (m_nNextIndex + 1) % m_aFailures.length;
+    }
+
+    void reset ()
+    {
+      m_nResultCount = 0;
+      m_nNextIndex = 0;
+      m_nFailureCount = 0;
+      m_aOpenUntilDT = null;
+      m_bTrialRunning = false;
+    }
+  }
+
+  private static final Logger s_aLogger = LoggerFactory.getLogger (SMPHostCircuitBreaker.class);
+  private static final IMutableStatisticsHandlerKeyedCounter s_aStatsOpened = StatisticsManager.getKeyedCounterHandler (SMPHostCircuitBreaker.class.getName () +
+                                                                                                                       "$opened");
+
+  private final int m_nWindowSize;
+  private final int m_nFailurePercentage;
+  private final int m_nOpenMinutes;
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  @GuardedBy ("m_aRWLock")
+  private final Map <String, HostState> m_aHosts = new HashMap <> ();
+
+  /**
+   * Constructor
+   *
+   * @param nWindowSize
+   *        The number of most recent results per host to consider. Must be
+   *        &gt; 0. The breaker opens at the earliest after half of the window
+   *        is filled.
+   * @param nFailurePercentage
+   *        The error rate in percent at which the breaker opens. Must be
+   *        between 1 and 100.
+   * @param nOpenMinutes
+   *        The number of minutes the breaker stays open. Must be &gt; 0.
+   */
+  public SMPHostCircuitBreaker (@Nonnegative final int nWindowSize,
+                                @Nonnegative final int nFailurePercentage,
+                                @Nonnegative final int nOpenMinutes)
+  {
+    m_nWindowSize = ValueEnforcer.isGT0 (nWindowSize, "WindowSize");
+    m_nFailurePercentage = ValueEnforcer.isBetweenInclusive (nFailurePercentage, "FailurePercentage", 1, 100);
+    m_nOpenMinutes = ValueEnforcer.isGT0 (nOpenMinutes, "OpenMinutes");
+  }
+
+  /**
+   * Check if a fetch against the provided host may be performed now. If the
+   * open period of the host's breaker has elapsed, the calling fetch is the
+   * trial fetch and all other fetches are rejected until it finished.
+   *
+   * @param sHostKey
+   *        The host key. May not be <code>null</code>.
+   * @return <code>null</code> if the fetch may be performed, or the date time
+   *         until which the host should not be contacted.
+   */
+  @Nullable
+  public LocalDateTime tryAcquire (@Nonnull final String sHostKey)
+  {
+    ValueEnforcer.notNull (sHostKey, "HostKey");
+
+    return m_aRWLock.writeLocked ( () -> {
+      final HostState aState = m_aHosts.get (sHostKey);
+      if (aState == null || aState.m_aOpenUntilDT == null)
+        return null;
+
+      final LocalDateTime aNow = PDTFactory.getCurrentLocalDateTime ();
+      if (aNow.isBefore (aState.m_aOpenUntilDT))
+      {
+        // Still open
+        return aState.m_aOpenUntilDT;
+      }
+      if (aState.m_bTrialRunning)
+      {
+        // Wait for the result of the trial
+        return aNow.plusMinutes (m_nOpenMinutes);
+      }
+
+      // Open period elapsed - let this one through as the trial
+      aState.m_bTrialRunning = true;
+      return null;
+    });
+  }
+
+  /**
+   * Remember the result of a fetch against the provided host. Must be called
+   * for each fetch for which {@link #tryAcquire(String)} returned
+   * <code>null</code>.
+   *
+   * @param sHostKey
+   *        The host key. May not be <code>null</code>.
+   * @param eSuccess
+   *        The result of the fetch. May not be <code>null</code>.
+   */
+  public void onResult (@Nonnull final String sHostKey, @Nonnull final ESuccess eSuccess)
+  {
+    ValueEnforcer.notNull (sHostKey, "HostKey");
+    ValueEnforcer.notNull (eSuccess, "Success");
+
+    m_aRWLock.writeLocked ( () -> {
+      final HostState aState = m_aHosts.computeIfAbsent (sHostKey, k -> new HostState (m_nWindowSize));
+      if (aState.m_bTrialRunning)
+      {
+        // Result of the trial decides
+        if (eSuccess.isSuccess ())
+        {
+          s_aLogger.info ("Closing circuit breaker of SMP host '" + sHostKey + "'");
+          aState.reset ();
+        }
+        else
+          _open (sHostKey, aState);
+        return;
+      }
+
+      if (aState.m_aOpenUntilDT != null)
+      {
+        // Result of a fetch that was started before the breaker opened
+        return;
+      }
+
+      aState.addResult (eSuccess.isFailure ());
+      if (eSuccess.isFailure () &&
+          aState.m_nResultCount * 2 >= m_nWindowSize &&
+          aState.m_nFailureCount * 100 >= aState.m_nResultCount * m_nFailurePercentage)
+        _open (sHostKey, aState);
+      else
+        if (aState.m_nFailureCount == 0)
+        {
+          // Keep only hosts with recent errors
+          m_aHosts.remove (sHostKey);
+        }
+    });
+  }
+
+  private void _open (@Nonnull final String sHostKey, @Nonnull final HostState aState)
+  {
+    final int nResultCount = aState.m_nResultCount;
+    final int nFailureCount = aState.m_nFailureCount;
+    aState.reset ();
+    aState.m_aOpenUntilDT = PDTFactory.getCurrentLocalDateTime ().plusMinutes (m_nOpenMinutes);
+    s_aStatsOpened.increment (sHostKey);
+    s_aLogger.warn ("Opening circuit breaker of SMP host '" +
+                    sHostKey +
+                    "' until " +
+                    aState.m_aOpenUntilDT +
+                    " after " +
+                    nFailureCount +
+                    " failures in " +
+                    nResultCount +
+                    " fetches");
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("WindowSize", m_nWindowSize)
+                                       .append ("FailurePercentage", m_nFailurePercentage)
+                                       .append ("OpenMinutes", m_nOpenMinutes)
+                                       .toString ();
+  }
+}
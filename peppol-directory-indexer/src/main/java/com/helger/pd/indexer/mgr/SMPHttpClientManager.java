@@ -0,0 +1,371 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.mgr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.fluent.Executor;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.client.fluent.Response;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.UnsupportedSchemeException;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.statistics.IMutableStatisticsHandlerCounter;
+import com.helger.commons.statistics.StatisticsManager;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.pd.settings.PDSettings;
+import com.helger.peppol.identifier.participant.IPeppolParticipantIdentifier;
+import com.helger.peppol.sml.ISMLInfo;
+import com.helger.peppol.smpclient.SMPClientReadOnly;
+
+/**
+ * A long-lived HTTP client for SMP lookups. All SMP clients created by this
+ * class share a single pool of keep-alive connections, so that subsequent
+ * lookups against the same SMP reuse an existing TCP (and TLS) connection
+ * instead of establishing a new one. The pool and the timeouts are configured
+ * in {@link PDSettings}. The HTTP client is created upon the first request.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class SMPHttpClientManager implements Closeable
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (SMPHttpClientManager.class);
+  private static final IMutableStatisticsHandlerCounter s_aStatsRequests = StatisticsManager.getCounterHandler (SMPHttpClientManager.class.getName () +
+                                                                                                              "$requests");
+  private static final IMutableStatisticsHandlerCounter s_aStatsConnections = StatisticsManager.getCounterHandler (SMPHttpClientManager.class.getName () +
+                                                                                                                 "$connections");
+
+  /**
+   * A socket factory that counts the newly established connections.
+   */
+  private static final class CountingConnectionSocketFactory implements LayeredConnectionSocketFactory
+  {
+    private final ConnectionSocketFactory m_aDelegate;
+
+    CountingConnectionSocketFactory (@Nonnull final ConnectionSocketFactory aDelegate)
+    {
+      m_aDelegate = aDelegate;
+    }
+
+    public Socket createSocket (final HttpContext aContext) throws IOException
+    {
+      return m_aDelegate.createSocket (aContext);
+    }
+
+    public Socket connectSocket (final int nConnectTimeout,
+                                 final Socket aSocket,
+                                 final HttpHost aHost,
+                                 final InetSocketAddress aRemoteAddress,
+                                 final InetSocketAddress aLocalAddress,
+                                 final HttpContext aContext) throws IOException
+    {
+      final Socket ret = m_aDelegate.connectSocket (nConnectTimeout,
+                                                    aSocket,
+                                                    aHost,
+                                                    aRemoteAddress,
+                                                    aLocalAddress,
+                                                    aContext);
+      s_aStatsConnections.increment ();
+      return ret;
+    }
+
+    public Socket createLayeredSocket (final Socket aSocket,
+                                       final String sTarget,
+                                       final int nPort,
+                                       final HttpContext aContext) throws IOException
+    {
+      if (!(m_aDelegate instanceof LayeredConnectionSocketFactory))
+        throw new UnsupportedSchemeException ("Connection upgrade is not supported");
+      return ((LayeredConnectionSocketFactory) m_aDelegate).createLayeredSocket (aSocket, sTarget, nPort, aContext);
+    }
+  }
+
+  /**
+   * An SMP client that executes all requests with the pooled HTTP client.
+   */
+  private final class PooledSMPClient extends SMPClientReadOnly
+  {
+    PooledSMPClient (@Nonnull final IPeppolParticipantIdentifier aParticipantID, @Nonnull final ISMLInfo aSMLInfo)
+    {
+      super (aParticipantID, aSMLInfo);
+    }
+
+    PooledSMPClient (@Nonnull final URI aSMPHost)
+    {
+      super (aSMPHost);
+    }
+
+    @Override
+    @Nonnull
+    protected Response executeRequest (@Nonnull final Request aRequest) throws IOException
+    {
+      if (getProxy () != null)
+        aRequest.viaProxy (getProxy ());
+      // The timeouts are taken from the default request config of the client
+      final Response ret = Executor.newInstance (_getHttpClient ()).execute (aRequest);
+      s_aStatsRequests.increment ();
+      return ret;
+    }
+  }
+
+  private final int m_nConnectTimeoutMS;
+  private final int m_nSocketTimeoutMS;
+  private final int m_nConnectionRequestTimeoutMS;
+  private final int m_nMaxConnectionsPerRoute;
+  private final int m_nMaxConnectionsTotal;
+  private final long m_nKeepAliveMS;
+  @GuardedBy ("this")
+  private PoolingHttpClientConnectionManager m_aConnectionMgr;
+  @GuardedBy ("this")
+  private CloseableHttpClient m_aHttpClient;
+  @GuardedBy ("this")
+  private boolean m_bClosed = false;
+
+  /**
+   * Constructor using the settings from {@link PDSettings}.
+   */
+  public SMPHttpClientManager ()
+  {
+    this (PDSettings.getSMPClientConnectTimeoutMS (),
+          PDSettings.getSMPClientSocketTimeoutMS (),
+          PDSettings.getSMPClientConnectionRequestTimeoutMS (),
+          PDSettings.getSMPClientMaxConnectionsPerRoute (),
+          PDSettings.getSMPClientMaxConnectionsTotal (),
+          PDSettings.getSMPClientKeepAliveMS ());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param nConnectTimeoutMS
+   *        Milliseconds to establish a connection. Must be &gt; 0.
+   * @param nSocketTimeoutMS
+   *        Milliseconds to wait for data. Must be &gt; 0.
+   * @param nConnectionRequestTimeoutMS
+   *        Milliseconds to wait for a free pooled connection. Must be &gt; 0.
+   * @param nMaxConnectionsPerRoute
+   *        Maximum pooled connections per SMP host. Must be &gt; 0.
+   * @param nMaxConnectionsTotal
+   *        Maximum pooled connections in total. Must be &ge;
+   *        nMaxConnectionsPerRoute.
+   * @param nKeepAliveMS
+   *        Maximum milliseconds an idle connection is kept for reuse. Must be
+   *        &gt; 0.
+   */
+  public SMPHttpClientManager (final int nConnectTimeoutMS,
+                               final int nSocketTimeoutMS,
+                               final int nConnectionRequestTimeoutMS,
+                               final int nMaxConnectionsPerRoute,
+                               final int nMaxConnectionsTotal,
+                               final long nKeepAliveMS)
+  {
+    m_nConnectTimeoutMS = ValueEnforcer.isGT0 (nConnectTimeoutMS, "ConnectTimeoutMS");
+    m_nSocketTimeoutMS = ValueEnforcer.isGT0 (nSocketTimeoutMS, "SocketTimeoutMS");
+    m_nConnectionRequestTimeoutMS = ValueEnforcer.isGT0 (nConnectionRequestTimeoutMS, "ConnectionRequestTimeoutMS");
+    m_nMaxConnectionsPerRoute = ValueEnforcer.isGT0 (nMaxConnectionsPerRoute, "MaxConnectionsPerRoute");
+    m_nMaxConnectionsTotal = ValueEnforcer.isBetweenInclusive (nMaxConnectionsTotal,
+                                                               "MaxConnectionsTotal",
+                                                               nMaxConnectionsPerRoute,
+                                                               Integer.MAX_VALUE);
+    m_nKeepAliveMS = ValueEnforcer.isGT0 (nKeepAliveMS, "KeepAliveMS");
+  }
+
+  @Nonnull
+  private synchronized CloseableHttpClient _getHttpClient () throws IOException
+  {
+    if (m_bClosed)
+      throw new IOException ("The SMP HTTP client is already closed");
+
+    if (m_aHttpClient == null)
+    {
+      final ConnectionSocketFactory aHttpSF = new CountingConnectionSocketFactory (PlainConnectionSocketFactory.getSocketFactory ());
+      final ConnectionSocketFactory aHttpsSF = new CountingConnectionSocketFactory (SSLConnectionSocketFactory.getSystemSocketFactory ());
+      final Registry <ConnectionSocketFactory> aSocketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory> create ()
+                                                                                       .register ("http", aHttpSF)
+                                                                                       .register ("https", aHttpsSF)
+                                                                                       .build ();
+      m_aConnectionMgr = new PoolingHttpClientConnectionManager (aSocketFactoryRegistry);
+      m_aConnectionMgr.setDefaultMaxPerRoute (m_nMaxConnectionsPerRoute);
+      m_aConnectionMgr.setMaxTotal (m_nMaxConnectionsTotal);
+
+      final RequestConfig aRequestConfig = RequestConfig.custom ()
+                                                        .setConnectTimeout (m_nConnectTimeoutMS)
+                                                        .setSocketTimeout (m_nSocketTimeoutMS)
+                                                        .setConnectionRequestTimeout (m_nConnectionRequestTimeoutMS)
+                                                        .build ();
+
+      // Use the keep-alive duration announced by the SMP, but at most the
+      // configured duration
+      final ConnectionKeepAliveStrategy aKeepAliveStrategy = (aResponse, aContext) -> {
+        final long nAnnounced = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration (aResponse, aContext);
+        return nAnnounced > 0 ? Math.min (nAnnounced, m_nKeepAliveMS) : m_nKeepAliveMS;
+      };
+
+      m_aHttpClient = HttpClients.custom ()
+                                 .setConnectionManager (m_aConnectionMgr)
+                                 .setDefaultRequestConfig (aRequestConfig)
+                                 .setKeepAliveStrategy (aKeepAliveStrategy)
+                                 .evictExpiredConnections ()
+                                 .evictIdleConnections (m_nKeepAliveMS, TimeUnit.MILLISECONDS)
+                                 .build ();
+      s_aLogger.info ("Created pooled SMP HTTP client with max. " +
+                      m_nMaxConnectionsPerRoute +
+                      " connections per host and " +
+                      m_nMaxConnectionsTotal +
+                      " in total");
+    }
+    return m_aHttpClient;
+  }
+
+  /**
+   * Create a new SMP client for the provided participant that uses the shared
+   * connection pool. Creating the client is cheap, as the connections are only
+   * established upon request.
+   *
+   * @param aParticipantID
+   *        The participant to query. May not be <code>null</code>.
+   * @param aSMLInfo
+   *        The SML to resolve the SMP host name. May not be <code>null</code>.
+   * @return The new SMP client. Never <code>null</code>.
+   */
+  @Nonnull
+  public SMPClientReadOnly createSMPClient (@Nonnull final IPeppolParticipantIdentifier aParticipantID,
+                                            @Nonnull final ISMLInfo aSMLInfo)
+  {
+    ValueEnforcer.notNull (aParticipantID, "ParticipantID");
+    ValueEnforcer.notNull (aSMLInfo, "SMLInfo");
+
+    return new PooledSMPClient (aParticipantID, aSMLInfo);
+  }
+
+  /**
+   * Create a new SMP client for the provided SMP host that uses the shared
+   * connection pool.
+   *
+   * @param aSMPHost
+   *        The URI of the SMP host. May not be <code>null</code>.
+   * @return The new SMP client. Never <code>null</code>.
+   */
+  @Nonnull
+  public SMPClientReadOnly createSMPClient (@Nonnull final URI aSMPHost)
+  {
+    ValueEnforcer.notNull (aSMPHost, "SMPHost");
+
+    return new PooledSMPClient (aSMPHost);
+  }
+
+  /**
+   * @return The current statistics of the connection pool or <code>null</code>
+   *         if no request was performed so far.
+   */
+  @Nullable
+  public synchronized PoolStats getPoolStats ()
+  {
+    return m_aConnectionMgr == null || m_bClosed ? null : m_aConnectionMgr.getTotalStats ();
+  }
+
+  /**
+   * @return The total number of HTTP requests sent to SMPs by all instances.
+   */
+  public static long getRequestCount ()
+  {
+    return s_aStatsRequests.getCount ();
+  }
+
+  /**
+   * @return The total number of connections established to SMPs by all
+   *         instances.
+   */
+  public static long getConnectionCount ()
+  {
+    return s_aStatsConnections.getCount ();
+  }
+
+  /**
+   * @return The ratio of HTTP requests to SMPs that reused an existing
+   *         connection, compared to all requests. Between 0 and 1. 0 if no
+   *         request was sent so far.
+   */
+  public static double getConnectionReuseRatio ()
+  {
+    final long nRequests = s_aStatsRequests.getCount ();
+    final long nConnections = s_aStatsConnections.getCount ();
+    return nRequests == 0 ? 0 : Math.max (0, (double) (nRequests - nConnections) / nRequests);
+  }
+
+  /**
+   * Close all pooled connections. Afterwards no more requests can be sent.
+   */
+  public synchronized void close ()
+  {
+    if (!m_bClosed)
+    {
+      m_bClosed = true;
+      if (m_aHttpClient != null)
+      {
+        // Closes the connection manager as well
+        StreamHelper.close (m_aHttpClient);
+        s_aLogger.info ("Closed pooled SMP HTTP client after " +
+                        getRequestCount () +
+                        " requests with " +
+                        getConnectionCount () +
+                        " connections");
+      }
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("ConnectTimeoutMS", m_nConnectTimeoutMS)
+                                       .append ("SocketTimeoutMS", m_nSocketTimeoutMS)
+                                       .append ("ConnectionRequestTimeoutMS", m_nConnectionRequestTimeoutMS)
+                                       .append ("MaxConnectionsPerRoute", m_nMaxConnectionsPerRoute)
+                                       .append ("MaxConnectionsTotal", m_nMaxConnectionsTotal)
+                                       .append ("KeepAliveMS", m_nKeepAliveMS)
+                                       .toString ();
+  }
+}
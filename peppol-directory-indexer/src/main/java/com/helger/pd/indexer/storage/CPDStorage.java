@@ -43,8 +43,29 @@ public final class CPDStorage
   public static final String FIELD_METADATA_OWNERID = "md-ownerid";
   public static final String FIELD_METADATA_REQUESTING_HOST = "md-requestinghost";
   public static final String FIELD_ALL_FIELDS = "allfields";
+  public static final String FIELD_ALL_FIELDS_NGRAM = "allfields-ngram";
+  /**
+   * Numeric doc values field with the deletion date time in milliseconds or 0
+   * if the document is not deleted. It is updated in place.
+   */
   public static final String FIELD_DELETED = "deleted";
   public static final String FIELD_GROUP_END = "groupend";
+  /**
+   * Stored field with the content hash of the business information the
+   * documents of a participant were created from.
+   */
+  public static final String FIELD_CONTENT_HASH = "contenthash";
+
+  /** The commit user data key containing the index format version */
+  public static final String COMMIT_DATA_INDEX_VERSION = "pd-index-version";
+  /**
+   * The current index format version. Version 2 added
+   * {@link #FIELD_ALL_FIELDS_NGRAM}. Version 3 added the doc values of
+   * {@link #FIELD_COUNTRY_CODE} and {@link #FIELD_DOCUMENT_TYPE_ID}. Version 4
+   * changed {@link #FIELD_DELETED} to a numeric doc values field. Version 5
+   * added {@link #FIELD_CONTENT_HASH}.
+   */
+  public static final String INDEX_VERSION = "5";
 
   private CPDStorage ()
   {}
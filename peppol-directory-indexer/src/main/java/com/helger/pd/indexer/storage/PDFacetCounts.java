@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.storage;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The number of documents per country code and per document type of all
+ * documents matching a query as returned by
+ * {@link PDStorageManager#getFacetCounts(org.apache.lucene.search.Query)}.
+ * Each document represents a single business entity.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class PDFacetCounts
+{
+  private final int m_nTotalHits;
+  private final Map <String, Integer> m_aCountryCodeCounts;
+  private final Map <String, Integer> m_aDocumentTypeIDCounts;
+
+  public PDFacetCounts (@Nonnegative final int nTotalHits,
+                        @Nonnull final Map <String, Integer> aCountryCodeCounts,
+                        @Nonnull final Map <String, Integer> aDocumentTypeIDCounts)
+  {
+    ValueEnforcer.isGE0 (nTotalHits, "TotalHits");
+    ValueEnforcer.notNull (aCountryCodeCounts, "CountryCodeCounts");
+    ValueEnforcer.notNull (aDocumentTypeIDCounts, "DocumentTypeIDCounts");
+    m_nTotalHits = nTotalHits;
+    m_aCountryCodeCounts = new TreeMap <> (aCountryCodeCounts);
+    m_aDocumentTypeIDCounts = new TreeMap <> (aDocumentTypeIDCounts);
+  }
+
+  /**
+   * @return The total number of documents matching the query. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getTotalHits ()
+  {
+    return m_nTotalHits;
+  }
+
+  /**
+   * @return A copy of the number of matching documents per country code,
+   *         sorted by country code. Documents without a country code are not
+   *         counted. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public Map <String, Integer> getAllCountryCodeCounts ()
+  {
+    return new TreeMap <> (m_aCountryCodeCounts);
+  }
+
+  /**
+   * @return A copy of the number of matching documents per URI encoded
+   *         document type ID, sorted by document type ID. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public Map <String, Integer> getAllDocumentTypeIDCounts ()
+  {
+    return new TreeMap <> (m_aDocumentTypeIDCounts);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("TotalHits", m_nTotalHits)
+                                       .append ("CountryCodeCounts", m_aCountryCodeCounts)
+                                       .append ("DocumentTypeIDCounts", m_aDocumentTypeIDCounts)
+                                       .toString ();
+  }
+}
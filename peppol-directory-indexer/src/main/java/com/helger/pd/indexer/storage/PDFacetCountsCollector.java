@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.storage;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.SimpleCollector;
+
+/**
+ * A Lucene collector that counts the matching documents per country code and
+ * per document type ID based on the doc values of
+ * {@link CPDStorage#FIELD_COUNTRY_CODE} and
+ * {@link CPDStorage#FIELD_DOCUMENT_TYPE_ID}. No stored fields are loaded. The
+ * counts are gathered per segment ordinal and resolved to values once per
+ * segment.
+ *
+ * @author Philip Helger
+ */
+@NotThreadSafe
+final class PDFacetCountsCollector extends SimpleCollector
+{
+  private final Map <String, Integer> m_aCountryCodeCounts = new HashMap <> ();
+  private final Map <String, Integer> m_aDocumentTypeIDCounts = new HashMap <> ();
+  private int m_nTotalHits = 0;
+
+  // Per segment state
+  private SortedDocValues m_aCountryCodes;
+  private SortedSetDocValues m_aDocumentTypeIDs;
+  private int [] m_aCountryCodeOrdCounts;
+  private int [] m_aDocumentTypeIDOrdCounts;
+
+  PDFacetCountsCollector ()
+  {}
+
+  @Override
+  public boolean needsScores ()
+  {
+    return false;
+  }
+
+  private void _resolveSegmentCounts ()
+  {
+    if (m_aCountryCodes != null)
+      for (int nOrd = 0; nOrd < m_aCountryCodeOrdCounts.length; ++nOrd)
+        if (m_aCountryCodeOrdCounts[nOrd] > 0)
+          m_aCountryCodeCounts.merge (m_aCountryCodes.lookupOrd (nOrd).utf8ToString (),
+                                      Integer.valueOf (m_aCountryCodeOrdCounts[nOrd]),
+                                      (a, b) -> Integer.valueOf (a.intValue () + b.intValue ()));
+    if (m_aDocumentTypeIDs != null)
+      for (int nOrd = 0; nOrd < m_aDocumentTypeIDOrdCounts.length; ++nOrd)
+        if (m_aDocumentTypeIDOrdCounts[nOrd] > 0)
+          m_aDocumentTypeIDCounts.merge (m_aDocumentTypeIDs.lookupOrd (nOrd).utf8ToString (),
+                                         Integer.valueOf (m_aDocumentTypeIDOrdCounts[nOrd]),
+                                         (a, b) -> Integer.valueOf (a.intValue () + b.intValue ()));
+  }
+
+  @Override
+  protected void doSetNextReader (@Nonnull final LeafReaderContext aContext) throws IOException
+  {
+    _resolveSegmentCounts ();
+
+    // Segments written without doc values simply have no values
+    final LeafReader aReader = aContext.reader ();
+    m_aCountryCodes = aReader.getSortedDocValues (CPDStorage.FIELD_COUNTRY_CODE);
+    m_aCountryCodeOrdCounts = m_aCountryCodes == null ? null : new int [m_aCountryCodes.getValueCount ()];
+    m_aDocumentTypeIDs = aReader.getSortedSetDocValues (CPDStorage.FIELD_DOCUMENT_TYPE_ID);
+    m_aDocumentTypeIDOrdCounts = m_aDocumentTypeIDs == null ? null
+                                                            : new int [(int) m_aDocumentTypeIDs.getValueCount ()];
+  }
+
+  @Override
+  public void collect (final int nDocID)
+  {
+    m_nTotalHits++;
+    if (m_aCountryCodes != null)
+    {
+      final int nOrd = m_aCountryCodes.getOrd (nDocID);
+      if (nOrd >= 0)
+        m_aCountryCodeOrdCounts[nOrd]++;
+    }
+    if (m_aDocumentTypeIDs != null)
+    {
+      m_aDocumentTypeIDs.setDocument (nDocID);
+      long nOrd;
+      while ((nOrd = m_aDocumentTypeIDs.nextOrd ()) != SortedSetDocValues.NO_MORE_ORDS)
+        m_aDocumentTypeIDOrdCounts[(int) nOrd]++;
+    }
+  }
+
+  /**
+   * @return The facet counts of all collected documents. Should only be called
+   *         once after the search finished.
+   */
+  @Nonnull
+  public PDFacetCounts getFacetCounts ()
+  {
+    _resolveSegmentCounts ();
+    m_aCountryCodes = null;
+    m_aDocumentTypeIDs = null;
+    return new PDFacetCounts (m_nTotalHits, m_aCountryCodeCounts, m_aDocumentTypeIDCounts);
+  }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.storage;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.pd.businessinformation.PDExtendedBusinessInformation;
+import com.helger.peppol.identifier.participant.IPeppolParticipantIdentifier;
+
+/**
+ * A single participant to be created or updated in the index via
+ * {@link PDStorageManager#createOrUpdateEntries(Iterable)}.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class PDIndexEntry
+{
+  private final IPeppolParticipantIdentifier m_aParticipantID;
+  private final PDExtendedBusinessInformation m_aExtBI;
+  private final PDDocumentMetaData m_aMetaData;
+
+  public PDIndexEntry (@Nonnull final IPeppolParticipantIdentifier aParticipantID,
+                       @Nonnull final PDExtendedBusinessInformation aExtBI,
+                       @Nonnull final PDDocumentMetaData aMetaData)
+  {
+    m_aParticipantID = ValueEnforcer.notNull (aParticipantID, "ParticipantID");
+    m_aExtBI = ValueEnforcer.notNull (aExtBI, "ExtBI");
+    m_aMetaData = ValueEnforcer.notNull (aMetaData, "MetaData");
+  }
+
+  @Nonnull
+  public IPeppolParticipantIdentifier getParticipantID ()
+  {
+    return m_aParticipantID;
+  }
+
+  @Nonnull
+  public PDExtendedBusinessInformation getExtendedBusinessInformation ()
+  {
+    return m_aExtBI;
+  }
+
+  @Nonnull
+  public PDDocumentMetaData getMetaData ()
+  {
+    return m_aMetaData;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("ParticipantID", m_aParticipantID)
+                                       .append ("ExtBI", m_aExtBI)
+                                       .append ("MetaData", m_aMetaData)
+                                       .toString ();
+  }
+}
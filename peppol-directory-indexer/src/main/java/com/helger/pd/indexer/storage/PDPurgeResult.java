@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.storage;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The result of purging deleted participants from the index as returned by
+ * {@link PDStorageManager#purgeDeletedEntries(org.joda.time.LocalDateTime)}.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class PDPurgeResult
+{
+  private final int m_nPurgedDocumentCount;
+  private final long m_nIndexSizeBeforeBytes;
+  private final long m_nIndexSizeAfterBytes;
+  private final long m_nDurationMillis;
+
+  public PDPurgeResult (@Nonnegative final int nPurgedDocumentCount,
+                        @Nonnegative final long nIndexSizeBeforeBytes,
+                        @Nonnegative final long nIndexSizeAfterBytes,
+                        @Nonnegative final long nDurationMillis)
+  {
+    ValueEnforcer.isGE0 (nPurgedDocumentCount, "PurgedDocumentCount");
+    ValueEnforcer.isGE0 (nIndexSizeBeforeBytes, "IndexSizeBeforeBytes");
+    ValueEnforcer.isGE0 (nIndexSizeAfterBytes, "IndexSizeAfterBytes");
+    ValueEnforcer.isGE0 (nDurationMillis, "DurationMillis");
+    m_nPurgedDocumentCount = nPurgedDocumentCount;
+    m_nIndexSizeBeforeBytes = nIndexSizeBeforeBytes;
+    m_nIndexSizeAfterBytes = nIndexSizeAfterBytes;
+    m_nDurationMillis = nDurationMillis;
+  }
+
+  /**
+   * @return The number of Lucene documents that were removed from the index.
+   */
+  @Nonnegative
+  public int getPurgedDocumentCount ()
+  {
+    return m_nPurgedDocumentCount;
+  }
+
+  /**
+   * @return The size of the index directory before purging in bytes.
+   */
+  @Nonnegative
+  public long getIndexSizeBeforeBytes ()
+  {
+    return m_nIndexSizeBeforeBytes;
+  }
+
+  /**
+   * @return The size of the index directory after purging and merging in
+   *         bytes.
+   */
+  @Nonnegative
+  public long getIndexSizeAfterBytes ()
+  {
+    return m_nIndexSizeAfterBytes;
+  }
+
+  /**
+   * @return The number of bytes reclaimed on disk. Concurrent index changes
+   *         are included, so this is an approximation. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getReclaimedBytes ()
+  {
+    return Math.max (m_nIndexSizeBeforeBytes - m_nIndexSizeAfterBytes, 0);
+  }
+
+  /**
+   * @return The duration of the purge in milliseconds.
+   */
+  @Nonnegative
+  public long getDurationMillis ()
+  {
+    return m_nDurationMillis;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("PurgedDocumentCount", m_nPurgedDocumentCount)
+                                       .append ("IndexSizeBeforeBytes", m_nIndexSizeBeforeBytes)
+                                       .append ("IndexSizeAfterBytes", m_nIndexSizeAfterBytes)
+                                       .append ("DurationMillis", m_nDurationMillis)
+                                       .toString ();
+  }
+}
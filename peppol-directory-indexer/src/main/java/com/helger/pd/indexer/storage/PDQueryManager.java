@@ -12,9 +12,10 @@ import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.WildcardQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,6 +23,8 @@ import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.regex.RegExHelper;
 import com.helger.pd.indexer.lucene.ILuceneAnalyzerProvider;
+import com.helger.pd.indexer.lucene.NumericDocValuesRangeQuery;
+import com.helger.pd.indexer.lucene.PDNGramAnalyzer;
 
 /**
  * PYP Lucene Query manager
@@ -38,18 +41,20 @@ public final class PDQueryManager
 
   /**
    * Surround the provided {@link Query} with a clause that forbids deleted
-   * documents to be returned
+   * documents to be returned. The deleted marker is checked on the doc values
+   * of the documents matching the source query only and does not influence
+   * the score.
    *
    * @param aQuery
    *        Source Query
-   * @return {@link BooleanQuery} contained the "MUST_NOT" on the "deleted"
-   *         field.
+   * @return {@link BooleanQuery} containing the "FILTER" on the "deleted"
+   *         doc values field.
    */
   @Nonnull
   public static BooleanQuery andNotDeleted (@Nonnull final Query aQuery)
   {
     return new BooleanQuery.Builder ().add (aQuery, Occur.MUST)
-                                      .add (new TermQuery (new Term (CPDStorage.FIELD_DELETED)), Occur.MUST_NOT)
+                                      .add (new NumericDocValuesRangeQuery (CPDStorage.FIELD_DELETED, 0, 0), Occur.FILTER)
                                       .build ();
   }
 
@@ -96,9 +101,38 @@ public final class PDQueryManager
     }
   }
 
+  /**
+   * Create a query that finds all documents containing the passed text as a
+   * substring of any token. This uses the n-grams indexed in
+   * {@link CPDStorage#FIELD_ALL_FIELDS_NGRAM} instead of a leading wildcard
+   * query, so the term dictionary is not enumerated.
+   *
+   * @param sText
+   *        The lower case query term. May not be <code>null</code>.
+   * @return The created query. Never <code>null</code>.
+   */
+  @Nonnull
   private static Query _createSimpleAllFieldsQuery (@Nonnull final String sText)
   {
-    return new WildcardQuery (new Term (CPDStorage.FIELD_ALL_FIELDS, "*" + sText + "*"));
+    final int nLength = sText.length ();
+    if (nLength < PDNGramAnalyzer.MIN_GRAM)
+    {
+      // Too short for an n-gram - find all n-grams starting with it
+      return new PrefixQuery (new Term (CPDStorage.FIELD_ALL_FIELDS_NGRAM, sText));
+    }
+
+    if (nLength <= PDNGramAnalyzer.MAX_GRAM)
+    {
+      // The text itself is an n-gram
+      return new TermQuery (new Term (CPDStorage.FIELD_ALL_FIELDS_NGRAM, sText));
+    }
+
+    // All n-grams of the maximum length must occur in the same token. All
+    // n-grams of a token share the same position.
+    final PhraseQuery.Builder aBuilder = new PhraseQuery.Builder ();
+    for (int i = 0; i + PDNGramAnalyzer.MAX_GRAM <= nLength; ++i)
+      aBuilder.add (new Term (CPDStorage.FIELD_ALL_FIELDS_NGRAM, sText.substring (i, i + PDNGramAnalyzer.MAX_GRAM)), 0);
+    return aBuilder.build ();
   }
 
   /**
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.storage;
+
+import java.util.List;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.CollectionHelper;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * A single page of search results as returned by
+ * {@link PDStorageManager#searchPage(org.apache.lucene.search.Query, String, int)}
+ * or
+ * {@link PDStorageManager#searchParticipantPage(org.apache.lucene.search.Query, String, int)}
+ * . It contains only the documents of the requested page, the number of
+ * documents (or participants) on the previous pages, the total number of
+ * matching documents (or participants) and an opaque cursor that can be used to
+ * retrieve the next page.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class PDSearchResultPage
+{
+  private final List <PDStoredDocument> m_aDocs;
+  private final int m_nStartOffset;
+  private final int m_nTotalHits;
+  private final String m_sNextCursor;
+
+  public PDSearchResultPage (@Nonnull final List <PDStoredDocument> aDocs,
+                             @Nonnegative final int nStartOffset,
+                             @Nonnegative final int nTotalHits,
+                             @Nullable final String sNextCursor)
+  {
+    ValueEnforcer.notNull (aDocs, "Docs");
+    ValueEnforcer.isGE0 (nStartOffset, "StartOffset");
+    ValueEnforcer.isGE0 (nTotalHits, "TotalHits");
+    m_aDocs = CollectionHelper.newList (aDocs);
+    m_nStartOffset = nStartOffset;
+    m_nTotalHits = nTotalHits;
+    m_sNextCursor = sNextCursor;
+  }
+
+  /**
+   * @return A copy of all documents contained in this page in the order of
+   *         relevance. Never <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <PDStoredDocument> getAllDocuments ()
+  {
+    return CollectionHelper.newList (m_aDocs);
+  }
+
+  /**
+   * @return The number of documents contained in this page. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getDocumentCount ()
+  {
+    return m_aDocs.size ();
+  }
+
+  /**
+   * @return The number of documents (or participants for participant
+   *         searches) on all previous pages. This is 0 for the first page and
+   *         can be used to number the results continuously across pages.
+   *         Always &ge; 0.
+   */
+  @Nonnegative
+  public int getStartOffset ()
+  {
+    return m_nStartOffset;
+  }
+
+  /**
+   * @return The total number of documents (or participants for participant
+   *         searches) matching the query, independent of the page size. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public int getTotalHits ()
+  {
+    return m_nTotalHits;
+  }
+
+  /**
+   * @return The opaque cursor to be passed to the search method that created
+   *         this page to retrieve the next page. May be <code>null</code> if
+   *         this is the last page.
+   */
+  @Nullable
+  public String getNextCursor ()
+  {
+    return m_sNextCursor;
+  }
+
+  /**
+   * @return <code>true</code> if there is a next page, <code>false</code> if
+   *         this is the last page.
+   */
+  public boolean hasNextPage ()
+  {
+    return StringHelper.hasText (m_sNextCursor);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Docs", m_aDocs)
+                                       .append ("StartOffset", m_nStartOffset)
+                                       .append ("TotalHits", m_nTotalHits)
+                                       .appendIfNotNull ("NextCursor", m_sNextCursor)
+                                       .toString ();
+  }
+}
@@ -18,12 +18,21 @@ package com.helger.pd.indexer.storage;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.function.Consumer;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
@@ -32,39 +41,67 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.FieldType;
-import org.apache.lucene.document.IntField;
 import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.grouping.BlockGroupingCollector;
+import org.apache.lucene.search.grouping.GroupDocs;
+import org.apache.lucene.search.grouping.TopGroups;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.joda.time.LocalDateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.ReturnsMutableCopy;
-import com.helger.commons.callback.IThrowingCallable;
+import com.helger.commons.callback.IThrowingRunnable;
 import com.helger.commons.collection.CollectionHelper;
+import com.helger.commons.collection.impl.MapEntry;
 import com.helger.commons.collection.multimap.IMultiMapListBased;
 import com.helger.commons.collection.multimap.MultiLinkedHashMapArrayListBased;
+import com.helger.commons.mutable.MutableInt;
 import com.helger.commons.state.ESuccess;
+import com.helger.commons.statistics.IMutableStatisticsHandlerCounter;
+import com.helger.commons.statistics.StatisticsManager;
 import com.helger.commons.string.StringHelper;
+import com.helger.commons.timing.StopWatch;
+import com.helger.datetime.PDTFactory;
 import com.helger.pd.businessinformation.PDBusinessContactType;
 import com.helger.pd.businessinformation.PDBusinessInformationType;
 import com.helger.pd.businessinformation.PDEntityType;
 import com.helger.pd.businessinformation.PDExtendedBusinessInformation;
 import com.helger.pd.businessinformation.PDIdentifierType;
 import com.helger.pd.indexer.lucene.AllDocumentsCollector;
+import com.helger.pd.indexer.lucene.NumericDocValuesRangeQuery;
 import com.helger.pd.indexer.lucene.PDLucene;
 import com.helger.peppol.identifier.IDocumentTypeIdentifier;
 import com.helger.peppol.identifier.IdentifierHelper;
 import com.helger.peppol.identifier.participant.IPeppolParticipantIdentifier;
+import com.helger.peppol.identifier.participant.SimpleParticipantIdentifier;
 import com.helger.photon.basic.security.audit.AuditHelper;
 
 /**
@@ -76,9 +113,15 @@ import com.helger.photon.basic.security.audit.AuditHelper;
 public final class PDStorageManager implements Closeable
 {
   private static final Logger s_aLogger = LoggerFactory.getLogger (PDStorageManager.class);
-  private static final IntField FIELD_VALUE_DELETED = new IntField (CPDStorage.FIELD_DELETED, 1, Store.NO);
   private static final FieldType TYPE_GROUP_END = new FieldType ();
   private static final String VALUE_GROUP_END = "x";
+  /** The maximum number of entities returned per participant */
+  public static final int MAX_ENTITIES_PER_PARTICIPANT = 100;
+  private static final char CURSOR_SEPARATOR = ':';
+  private static final IMutableStatisticsHandlerCounter s_aStatsWritten = StatisticsManager.getCounterHandler (PDStorageManager.class.getName () +
+                                                                                                              "$written");
+  private static final IMutableStatisticsHandlerCounter s_aStatsUnchanged = StatisticsManager.getCounterHandler (PDStorageManager.class.getName () +
+                                                                                                                "$unchanged");
 
   static
   {
@@ -106,25 +149,32 @@ public final class PDStorageManager implements Closeable
     return new Term (CPDStorage.FIELD_PARTICIPANTID, aParticipantID.getURIEncoded ());
   }
 
+  /**
+   * Mark the last document of the passed list as the end of the block of all
+   * documents of a single participant.
+   *
+   * @param aDocs
+   *        The documents of a single participant. May not be
+   *        <code>null</code>.
+   */
+  private static void _addGroupEndMarker (@Nonnull final List <Document> aDocs)
+  {
+    if (!aDocs.isEmpty ())
+      CollectionHelper.getLastElement (aDocs).add (new Field (CPDStorage.FIELD_GROUP_END, VALUE_GROUP_END, TYPE_GROUP_END));
+  }
+
   public boolean containsEntry (@Nullable final IPeppolParticipantIdentifier aParticipantID) throws IOException
   {
     if (aParticipantID == null)
       return false;
 
-    // Must be "Exception" because of JDK commandline compiler issue
-    final IThrowingCallable <Boolean, Exception> cb = () -> {
-      final IndexSearcher aSearcher = m_aLucene.getSearcher ();
-      if (aSearcher != null)
-      {
-        // Search only documents that do not have the deleted field
-        final Query aQuery = new TermQuery (_createParticipantTerm (aParticipantID));
-        final TopDocs aTopDocs = aSearcher.search (PDQueryManager.andNotDeleted (aQuery), 1);
-        if (aTopDocs.totalHits > 0)
-          return Boolean.TRUE;
-      }
-      return Boolean.FALSE;
-    };
-    return m_aLucene.callAtomic (cb).booleanValue ();
+    final Boolean aContained = m_aLucene.callWithSearcher (aSearcher -> {
+      // Search only documents that do not have the deleted field
+      final Query aQuery = new TermQuery (_createParticipantTerm (aParticipantID));
+      final TopDocs aTopDocs = aSearcher.search (PDQueryManager.andNotDeleted (aQuery), 1);
+      return Boolean.valueOf (aTopDocs.totalHits > 0);
+    });
+    return Boolean.TRUE.equals (aContained);
   }
 
   @Nonnull
@@ -135,27 +185,190 @@ public final class PDStorageManager implements Closeable
     ValueEnforcer.notNull (aMetaData, "MetaData");
 
     return m_aLucene.runAtomic ( () -> {
-      final List <Document> aDocuments = new ArrayList <> ();
+      // Flip the deleted marker of all documents of the participant in place.
+      // The deletion date is the date of the delete request.
+      m_aLucene.updateNumericDocValue (_createParticipantTerm (aParticipantID),
+                                       CPDStorage.FIELD_DELETED,
+                                       aMetaData.getCreationDTMillis ());
 
-      // Get all documents to be marked as deleted
-      final IndexSearcher aSearcher = m_aLucene.getSearcher ();
-      if (aSearcher != null)
-        aSearcher.search (new TermQuery (_createParticipantTerm (aParticipantID)),
-                          new AllDocumentsCollector (m_aLucene, aDoc -> aDocuments.add (aDoc)));
+      s_aLogger.info ("Marked Lucene documents of " + aParticipantID.getURIEncoded () + " as deleted");
+      AuditHelper.onAuditExecuteSuccess ("pyp-indexer-delete", aParticipantID.getURIEncoded (), aMetaData);
+    });
+  }
 
-      if (!aDocuments.isEmpty ())
-      {
-        // Mark document as deleted
-        for (final Document aDocument : aDocuments)
-          aDocument.add (FIELD_VALUE_DELETED);
+  /**
+   * Get the URI encoded document type IDs to be added to every document of a
+   * participant.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  private static List <String> _getDocumentTypeIDs (@Nonnull final Iterable <? extends IDocumentTypeIdentifier> aDocTypeIDs)
+  {
+    final List <String> ret = new ArrayList <> ();
+    for (final IDocumentTypeIdentifier aDocTypeID : aDocTypeIDs)
+      ret.add (IdentifierHelper.getIdentifierURIEncoded (aDocTypeID));
+    return ret;
+  }
 
-        // Update the documents
-        m_aLucene.updateDocuments (_createParticipantTerm (aParticipantID), aDocuments);
-      }
+  /**
+   * Convert a single entity to a Lucene document. The content hash is not
+   * added, because it is only known after all entities of the participant were
+   * converted.
+   *
+   * @param aParticipantID
+   *        Participant ID. May not be <code>null</code>.
+   * @param aDocTypeIDs
+   *        The URI encoded document type IDs of the participant. May not be
+   *        <code>null</code>.
+   * @param aEntity
+   *        The entity to convert. May not be <code>null</code>.
+   * @param aMetaData
+   *        Document meta data. May not be <code>null</code>.
+   * @param nDeletionMillis
+   *        The deletion date time in milliseconds or 0 if the participant is
+   *        not deleted.
+   * @return The Lucene document. Never <code>null</code>.
+   */
+  @Nonnull
+  private static Document _createDocument (@Nonnull final IPeppolParticipantIdentifier aParticipantID,
+                                           @Nonnull final List <String> aDocTypeIDs,
+                                           @Nonnull final PDEntityType aEntity,
+                                           @Nonnull final PDDocumentMetaData aMetaData,
+                                           final long nDeletionMillis)
+  {
+    // Convert entity to Lucene document
+    final Document aDoc = new Document ();
+    final StringBuilder aSBAllFields = new StringBuilder ();
 
-      s_aLogger.info ("Marked " + aDocuments.size () + " Lucene documents as deleted");
-      AuditHelper.onAuditExecuteSuccess ("pyp-indexer-delete", aParticipantID.getURIEncoded (), Integer.valueOf (aDocuments.size ()), aMetaData);
-    });
+    aDoc.add (new StringField (CPDStorage.FIELD_PARTICIPANTID, aParticipantID.getURIEncoded (), Store.YES));
+    aSBAllFields.append (aParticipantID.getURIEncoded ()).append (' ');
+
+    // Add all document types to all documents
+    for (final String sDocTypeID : aDocTypeIDs)
+    {
+      aDoc.add (new StringField (CPDStorage.FIELD_DOCUMENT_TYPE_ID, sDocTypeID, Store.YES));
+      aDoc.add (new SortedSetDocValuesField (CPDStorage.FIELD_DOCUMENT_TYPE_ID, new BytesRef (sDocTypeID)));
+      aSBAllFields.append (sDocTypeID).append (' ');
+    }
+
+    if (aEntity.getCountryCode () != null)
+    {
+      aDoc.add (new StringField (CPDStorage.FIELD_COUNTRY_CODE, aEntity.getCountryCode (), Store.YES));
+      aDoc.add (new SortedDocValuesField (CPDStorage.FIELD_COUNTRY_CODE, new BytesRef (aEntity.getCountryCode ())));
+      aSBAllFields.append (aEntity.getCountryCode ()).append (' ');
+    }
+
+    if (aEntity.getName () != null)
+    {
+      aDoc.add (new TextField (CPDStorage.FIELD_NAME, aEntity.getName (), Store.YES));
+      aSBAllFields.append (aEntity.getName ()).append (' ');
+    }
+
+    if (aEntity.getGeoInfo () != null)
+    {
+      aDoc.add (new TextField (CPDStorage.FIELD_GEOINFO, aEntity.getGeoInfo (), Store.YES));
+      aSBAllFields.append (aEntity.getGeoInfo ()).append (' ');
+    }
+
+    for (final PDIdentifierType aIdentifier : aEntity.getIdentifier ())
+    {
+      aDoc.add (new TextField (CPDStorage.FIELD_IDENTIFIER_TYPE, aIdentifier.getType (), Store.YES));
+      aSBAllFields.append (aIdentifier.getType ()).append (' ');
+
+      aDoc.add (new TextField (CPDStorage.FIELD_IDENTIFIER, aIdentifier.getValue (), Store.YES));
+      aSBAllFields.append (aIdentifier.getValue ()).append (' ');
+    }
+
+    for (final String sWebSite : aEntity.getWebSite ())
+    {
+      aDoc.add (new TextField (CPDStorage.FIELD_WEBSITE, sWebSite, Store.YES));
+      aSBAllFields.append (sWebSite).append (' ');
+    }
+
+    for (final PDBusinessContactType aBusinessContact : aEntity.getBusinessContact ())
+    {
+      final String sDescription = StringHelper.getNotNull (aBusinessContact.getDescription ());
+      aDoc.add (new TextField (CPDStorage.FIELD_BUSINESS_CONTACT_DESCRIPTION, sDescription, Store.YES));
+      aSBAllFields.append (sDescription).append (' ');
+
+      final String sName = StringHelper.getNotNull (aBusinessContact.getName ());
+      aDoc.add (new TextField (CPDStorage.FIELD_BUSINESS_CONTACT_NAME, sName, Store.YES));
+      aSBAllFields.append (sName).append (' ');
+
+      final String sPhone = StringHelper.getNotNull (aBusinessContact.getPhoneNumber ());
+      aDoc.add (new TextField (CPDStorage.FIELD_BUSINESS_CONTACT_PHONE, sPhone, Store.YES));
+      aSBAllFields.append (sPhone).append (' ');
+
+      final String sEmail = StringHelper.getNotNull (aBusinessContact.getEmail ());
+      aDoc.add (new TextField (CPDStorage.FIELD_BUSINESS_CONTACT_EMAIL, sEmail, Store.YES));
+      aSBAllFields.append (sEmail).append (' ');
+    }
+
+    if (aEntity.getFreeText () != null)
+    {
+      aDoc.add (new TextField (CPDStorage.FIELD_FREETEXT, aEntity.getFreeText (), Store.YES));
+      aSBAllFields.append (aEntity.getFreeText ()).append (' ');
+    }
+
+    // Add the "all" field and its n-grams for substring search - no need to
+    // store
+    final String sAllFields = aSBAllFields.toString ();
+    aDoc.add (new TextField (CPDStorage.FIELD_ALL_FIELDS, sAllFields, Store.NO));
+    aDoc.add (new TextField (CPDStorage.FIELD_ALL_FIELDS_NGRAM, sAllFields, Store.NO));
+
+    // Add meta data (not part of the "all field" field!)
+    aDoc.add (new LongField (CPDStorage.FIELD_METADATA_CREATIONDT, aMetaData.getCreationDTMillis (), Store.YES));
+    aDoc.add (new StringField (CPDStorage.FIELD_METADATA_OWNERID, aMetaData.getOwnerID (), Store.YES));
+    aDoc.add (new StringField (CPDStorage.FIELD_METADATA_REQUESTING_HOST, aMetaData.getRequestingHost (), Store.YES));
+
+    // Deleted marker that can be updated in place
+    aDoc.add (new NumericDocValuesField (CPDStorage.FIELD_DELETED, nDeletionMillis));
+
+    return aDoc;
+  }
+
+  /**
+   * Add the content hash to all documents of a participant.
+   */
+  private static void _addContentHash (@Nonnull final List <Document> aDocs, @Nonnull final String sContentHash)
+  {
+    for (final Document aDoc : aDocs)
+      aDoc.add (new StringField (CPDStorage.FIELD_CONTENT_HASH, sContentHash, Store.YES));
+  }
+
+  /**
+   * Convert the passed business information to Lucene documents - one per
+   * entity.
+   *
+   * @param aParticipantID
+   *        Participant ID. May not be <code>null</code>.
+   * @param aExtBI
+   *        Business information. May not be <code>null</code>.
+   * @param sContentHash
+   *        The content hash of the business information. May not be
+   *        <code>null</code>.
+   * @param aMetaData
+   *        Document meta data. May not be <code>null</code>.
+   * @param nDeletionMillis
+   *        The deletion date time in milliseconds or 0 if the participant is
+   *        not deleted.
+   * @return The list of Lucene documents without the group end marker. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  private static List <Document> _createDocuments (@Nonnull final IPeppolParticipantIdentifier aParticipantID,
+                                                   @Nonnull final PDExtendedBusinessInformation aExtBI,
+                                                   @Nonnull final String sContentHash,
+                                                   @Nonnull final PDDocumentMetaData aMetaData,
+                                                   final long nDeletionMillis)
+  {
+    final List <String> aDocTypeIDs = _getDocumentTypeIDs (aExtBI.getAllDocumentTypeIDs ());
+    final List <Document> aDocs = new ArrayList <> ();
+    for (final PDEntityType aEntity : aExtBI.getBusinessInformation ().getEntity ())
+      aDocs.add (_createDocument (aParticipantID, aDocTypeIDs, aEntity, aMetaData, nDeletionMillis));
+    _addContentHash (aDocs, sContentHash);
+    return aDocs;
   }
 
   @Nonnull
@@ -167,114 +380,415 @@ public final class PDStorageManager implements Closeable
     ValueEnforcer.notNull (aExtBI, "ExtBI");
     ValueEnforcer.notNull (aMetaData, "MetaData");
 
+    // Build the documents outside of the lock
+    final List <Document> aDocs = _createDocuments (aParticipantID, aExtBI, aExtBI.getContentHash (), aMetaData, 0);
+    _addGroupEndMarker (aDocs);
+
     return m_aLucene.runAtomic ( () -> {
-      final List <Document> aDocs = new ArrayList <> ();
+      // Delete all existing documents of the participant ID
+      // and add the new ones to the index
+      m_aLucene.updateDocuments (_createParticipantTerm (aParticipantID), aDocs);
+
+      s_aLogger.info ("Added " + aDocs.size () + " Lucene documents");
+      AuditHelper.onAuditExecuteSuccess ("pyp-indexer-create", aParticipantID.getURIEncoded (), Integer.valueOf (aDocs.size ()), aMetaData);
+    });
+  }
 
-      final PDBusinessInformationType aBI = aExtBI.getBusinessInformation ();
-      for (final PDEntityType aEntity : aBI.getEntity ())
+  /**
+   * Get the content hashes of the provided participants that are currently
+   * contained and not deleted.
+   *
+   * @param aSearcher
+   *        The searcher to use. May not be <code>null</code>.
+   * @param aParticipantIDs
+   *        The URI encoded participant IDs to check. May not be
+   *        <code>null</code>.
+   * @return A map from the URI encoded participant ID to the stored content
+   *         hash. Participants without a stored content hash are not
+   *         contained. Never <code>null</code>.
+   * @throws IOException
+   *         On Lucene error
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  private static Map <String, String> _getStoredContentHashes (@Nonnull final IndexSearcher aSearcher,
+                                                               @Nonnull final Iterable <String> aParticipantIDs) throws IOException
+  {
+    final Set <String> aFieldsToLoad = CollectionHelper.newSet (CPDStorage.FIELD_CONTENT_HASH);
+    final Map <String, String> ret = new HashMap <> ();
+    for (final String sParticipantID : aParticipantIDs)
+    {
+      // All documents of a participant have the same content hash
+      final Query aQuery = new TermQuery (new Term (CPDStorage.FIELD_PARTICIPANTID, sParticipantID));
+      final TopDocs aTopDocs = aSearcher.search (PDQueryManager.andNotDeleted (aQuery), 1);
+      if (aTopDocs.scoreDocs.length > 0)
       {
-        // Convert entity to Lucene document
-        final Document aDoc = new Document ();
-        final StringBuilder aSBAllFields = new StringBuilder ();
+        final String sContentHash = aSearcher.doc (aTopDocs.scoreDocs[0].doc, aFieldsToLoad)
+                                             .get (CPDStorage.FIELD_CONTENT_HASH);
+        if (sContentHash != null)
+          ret.put (sParticipantID, sContentHash);
+      }
+    }
+    return ret;
+  }
 
-        aDoc.add (new StringField (CPDStorage.FIELD_PARTICIPANTID, aParticipantID.getURIEncoded (), Store.YES));
-        aSBAllFields.append (aParticipantID.getURIEncoded ()).append (' ');
+  /**
+   * Create or update multiple participants at once. Participants whose
+   * business information did not change since they were last written are
+   * skipped, based on the content hash stored with the documents. All other
+   * documents are built before the index lock is acquired, and then all
+   * participants are written in a single locked section. Only a single log
+   * message and a single audit record are created for all participants. If the
+   * same participant is contained more than once, the last entry wins.
+   *
+   * @param aEntries
+   *        The participants to create or update. May not be <code>null</code>.
+   * @return {@link ESuccess#FAILURE} if the index is closing.
+   * @throws IOException
+   *         On Lucene error
+   * @see #getUnchangedRatio()
+   */
+  @Nonnull
+  public ESuccess createOrUpdateEntries (@Nonnull final Iterable <PDIndexEntry> aEntries) throws IOException
+  {
+    ValueEnforcer.notNull (aEntries, "Entries");
 
-        // Add all document types to all documents
-        for (final IDocumentTypeIdentifier aDocTypeID : aExtBI.getAllDocumentTypeIDs ())
-        {
-          final String sDocTypeID = IdentifierHelper.getIdentifierURIEncoded (aDocTypeID);
-          aDoc.add (new StringField (CPDStorage.FIELD_DOCUMENT_TYPE_ID, sDocTypeID, Store.YES));
-          aSBAllFields.append (sDocTypeID).append (' ');
-        }
+    // Last entry of a participant wins
+    final Map <String, PDIndexEntry> aUniqueEntries = new LinkedHashMap <> ();
+    for (final PDIndexEntry aEntry : aEntries)
+    {
+      final String sParticipantID = aEntry.getParticipantID ().getURIEncoded ();
+      aUniqueEntries.remove (sParticipantID);
+      aUniqueEntries.put (sParticipantID, aEntry);
+    }
+    if (aUniqueEntries.isEmpty ())
+      return ESuccess.SUCCESS;
 
-        if (aEntity.getCountryCode () != null)
-        {
-          aDoc.add (new StringField (CPDStorage.FIELD_COUNTRY_CODE, aEntity.getCountryCode (), Store.YES));
-          aSBAllFields.append (aEntity.getCountryCode ()).append (' ');
-        }
+    final Map <String, String> aContentHashes = new HashMap <> ();
+    for (final Map.Entry <String, PDIndexEntry> aEntry : aUniqueEntries.entrySet ())
+      aContentHashes.put (aEntry.getKey (), aEntry.getValue ().getExtendedBusinessInformation ().getContentHash ());
 
-        if (aEntity.getName () != null)
-        {
-          aDoc.add (new TextField (CPDStorage.FIELD_NAME, aEntity.getName (), Store.YES));
-          aSBAllFields.append (aEntity.getName ()).append (' ');
-        }
+    // Build the documents of all participants that changed according to the
+    // current searcher outside of the lock
+    final Map <String, String> aPreStoredHashes = m_aLucene.callWithSearcher (aSearcher -> _getStoredContentHashes (aSearcher,
+                                                                                                                   aUniqueEntries.keySet ()));
+    final Map <String, List <Document>> aBlocks = new HashMap <> ();
+    for (final Map.Entry <String, PDIndexEntry> aEntry : aUniqueEntries.entrySet ())
+    {
+      final String sParticipantID = aEntry.getKey ();
+      if (aPreStoredHashes == null || !aContentHashes.get (sParticipantID).equals (aPreStoredHashes.get (sParticipantID)))
+        aBlocks.put (sParticipantID, _createDocuments (aEntry.getValue (), aContentHashes.get (sParticipantID)));
+    }
 
-        if (aEntity.getGeoInfo () != null)
-        {
-          aDoc.add (new TextField (CPDStorage.FIELD_GEOINFO, aEntity.getGeoInfo (), Store.YES));
-          aSBAllFields.append (aEntity.getGeoInfo ()).append (' ');
-        }
+    final MutableInt aWritten = new MutableInt (0);
+    final MutableInt aUnchanged = new MutableInt (0);
+    final MutableInt aDocCount = new MutableInt (0);
+    return m_aLucene.runAtomic ( () -> {
+      final StopWatch aSW = StopWatch.createdStarted ();
 
-        for (final PDIdentifierType aIdentifier : aEntity.getIdentifier ())
-        {
-          aDoc.add (new TextField (CPDStorage.FIELD_IDENTIFIER_TYPE, aIdentifier.getType (), Store.YES));
-          aSBAllFields.append (aIdentifier.getType ()).append (' ');
+      // Check again with all previous writes being visible, because a
+      // participant may have been deleted or changed in the meantime
+      m_aLucene.waitForPendingChanges ();
+      final Map <String, String> aStoredHashes = m_aLucene.callWithSearcher (aSearcher -> _getStoredContentHashes (aSearcher,
+                                                                                                                  aUniqueEntries.keySet ()));
+      if (aStoredHashes == null)
+        throw new IOException ("Failed to determine the stored content hashes");
 
-          aDoc.add (new TextField (CPDStorage.FIELD_IDENTIFIER, aIdentifier.getValue (), Store.YES));
-          aSBAllFields.append (aIdentifier.getValue ()).append (' ');
+      for (final Map.Entry <String, PDIndexEntry> aEntry : aUniqueEntries.entrySet ())
+      {
+        final String sParticipantID = aEntry.getKey ();
+        final String sContentHash = aContentHashes.get (sParticipantID);
+        if (sContentHash.equals (aStoredHashes.get (sParticipantID)))
+        {
+          // Nothing to write
+          aUnchanged.inc ();
+          continue;
         }
 
-        for (final String sWebSite : aEntity.getWebSite ())
+        List <Document> aDocs = aBlocks.get (sParticipantID);
+        if (aDocs == null)
         {
-          aDoc.add (new TextField (CPDStorage.FIELD_WEBSITE, sWebSite, Store.YES));
-          aSBAllFields.append (sWebSite).append (' ');
+          // Changed since the documents were built
+          aDocs = _createDocuments (aEntry.getValue (), sContentHash);
         }
+        m_aLucene.updateDocuments (new Term (CPDStorage.FIELD_PARTICIPANTID, sParticipantID), aDocs);
+        aWritten.inc ();
+        aDocCount.inc (aDocs.size ());
+      }
 
-        for (final PDBusinessContactType aBusinessContact : aEntity.getBusinessContact ())
-        {
-          final String sDescription = StringHelper.getNotNull (aBusinessContact.getDescription ());
-          aDoc.add (new TextField (CPDStorage.FIELD_BUSINESS_CONTACT_DESCRIPTION, sDescription, Store.YES));
-          aSBAllFields.append (sDescription).append (' ');
+      s_aStatsWritten.increment (aWritten.intValue ());
+      s_aStatsUnchanged.increment (aUnchanged.intValue ());
+      s_aLogger.info ("Added " +
+                      aDocCount.intValue () +
+                      " Lucene documents of " +
+                      aWritten.intValue () +
+                      " participants and skipped " +
+                      aUnchanged.intValue () +
+                      " unchanged participants in " +
+                      aSW.stopAndGetMillis () +
+                      " ms");
+      AuditHelper.onAuditExecuteSuccess ("pyp-indexer-create-bulk",
+                                         Integer.valueOf (aWritten.intValue ()),
+                                         Integer.valueOf (aDocCount.intValue ()),
+                                         Integer.valueOf (aUnchanged.intValue ()));
+    });
+  }
 
-          final String sName = StringHelper.getNotNull (aBusinessContact.getName ());
-          aDoc.add (new TextField (CPDStorage.FIELD_BUSINESS_CONTACT_NAME, sName, Store.YES));
-          aSBAllFields.append (sName).append (' ');
+  @Nonnull
+  private static List <Document> _createDocuments (@Nonnull final PDIndexEntry aEntry, @Nonnull final String sContentHash)
+  {
+    final List <Document> aDocs = _createDocuments (aEntry.getParticipantID (),
+                                                    aEntry.getExtendedBusinessInformation (),
+                                                    sContentHash,
+                                                    aEntry.getMetaData (),
+                                                    0);
+    _addGroupEndMarker (aDocs);
+    return aDocs;
+  }
+
+  /**
+   * @return The ratio of participants that were skipped by
+   *         {@link #createOrUpdateEntries(Iterable)} because their business
+   *         information did not change, compared to all participants passed
+   *         in. Between 0 and 1. 0 if nothing was passed in so far.
+   */
+  public static double getUnchangedRatio ()
+  {
+    final long nUnchanged = s_aStatsUnchanged.getCount ();
+    final long nTotal = nUnchanged + s_aStatsWritten.getCount ();
+    return nTotal == 0 ? 0 : (double) nUnchanged / nTotal;
+  }
 
-          final String sPhone = StringHelper.getNotNull (aBusinessContact.getPhoneNumber ());
-          aDoc.add (new TextField (CPDStorage.FIELD_BUSINESS_CONTACT_PHONE, sPhone, Store.YES));
-          aSBAllFields.append (sPhone).append (' ');
+  /**
+   * Remove all documents of participants that were marked as deleted before
+   * the provided date time from the index. Afterwards the segments containing
+   * deleted documents are merged, so that the disk space is reclaimed. This is
+   * an expensive operation and should only be run at off-peak times.<br>
+   * Concurrent writes are only blocked while the documents are deleted. The
+   * merge and the subsequent commit run outside of the lock, so writes that
+   * happen in the meantime are committed as well and the reclaimed size of the
+   * result may be affected by them.
+   *
+   * @param aDeletedBefore
+   *        Only participants deleted before this date time are purged. May not
+   *        be <code>null</code>.
+   * @return The purge result. Never <code>null</code>.
+   * @throws IOException
+   *         On Lucene error
+   */
+  @Nonnull
+  public PDPurgeResult purgeDeletedEntries (@Nonnull final LocalDateTime aDeletedBefore) throws IOException
+  {
+    ValueEnforcer.notNull (aDeletedBefore, "DeletedBefore");
 
-          final String sEmail = StringHelper.getNotNull (aBusinessContact.getEmail ());
-          aDoc.add (new TextField (CPDStorage.FIELD_BUSINESS_CONTACT_EMAIL, sEmail, Store.YES));
-          aSBAllFields.append (sEmail).append (' ');
-        }
+    final long nDeletedBeforeMillis = PDTFactory.createDateTime (aDeletedBefore).getMillis ();
+    final Query aQuery = new NumericDocValuesRangeQuery (CPDStorage.FIELD_DELETED, 1, nDeletedBeforeMillis - 1);
+    final StopWatch aSW = StopWatch.createdStarted ();
+    final MutableInt aPurged = new MutableInt (0);
+    final long nSizeBefore = m_aLucene.getDirectorySizeBytes ();
+    m_aLucene.runAtomic ( () -> {
+      // All deletion marks must be visible for counting
+      m_aLucene.waitForPendingChanges ();
+      final Integer aCount = m_aLucene.callWithSearcher (aSearcher -> Integer.valueOf (aSearcher.count (aQuery)));
+      if (aCount != null && aCount.intValue () > 0)
+      {
+        // All documents of a participant have the same deletion date, so
+        // complete blocks are removed
+        m_aLucene.deleteDocuments (aQuery);
+        aPurged.set (aCount.intValue ());
+      }
+    });
 
-        if (aEntity.getFreeText () != null)
-        {
-          aDoc.add (new TextField (CPDStorage.FIELD_FREETEXT, aEntity.getFreeText (), Store.YES));
-          aSBAllFields.append (aEntity.getFreeText ()).append (' ');
-        }
+    if (aPurged.intValue () == 0)
+    {
+      // Nothing matched - no need to merge and commit
+      s_aLogger.info ("No Lucene documents deleted before " + aDeletedBefore + " to purge");
+      return new PDPurgeResult (0, nSizeBefore, nSizeBefore, aSW.stopAndGetMillis ());
+    }
 
-        // Add the "all" field - no need to store
-        aDoc.add (new TextField (CPDStorage.FIELD_ALL_FIELDS, aSBAllFields.toString (), Store.NO));
+    // Outside of the lock because this may take a while
+    m_aLucene.forceMergeDeletes ();
+    final long nSizeAfter = m_aLucene.getDirectorySizeBytes ();
 
-        // Add meta data (not part of the "all field" field!)
-        aDoc.add (new LongField (CPDStorage.FIELD_METADATA_CREATIONDT, aMetaData.getCreationDTMillis (), Store.YES));
-        aDoc.add (new StringField (CPDStorage.FIELD_METADATA_OWNERID, aMetaData.getOwnerID (), Store.YES));
-        aDoc.add (new StringField (CPDStorage.FIELD_METADATA_REQUESTING_HOST, aMetaData.getRequestingHost (), Store.YES));
+    final PDPurgeResult ret = new PDPurgeResult (aPurged.intValue (),
+                                                 nSizeBefore,
+                                                 nSizeAfter,
+                                                 aSW.stopAndGetMillis ());
+    s_aLogger.info ("Purged " +
+                    ret.getPurgedDocumentCount () +
+                    " Lucene documents deleted before " +
+                    aDeletedBefore +
+                    " and reclaimed " +
+                    ret.getReclaimedBytes () +
+                    " bytes in " +
+                    ret.getDurationMillis () +
+                    " ms");
+    AuditHelper.onAuditExecuteSuccess ("pyp-indexer-purge",
+                                       aDeletedBefore,
+                                       Integer.valueOf (ret.getPurgedDocumentCount ()),
+                                       Long.valueOf (ret.getReclaimedBytes ()));
+    return ret;
+  }
 
-        aDocs.add (aDoc);
+  /**
+   * Convert the stored documents of a single participant back to the business
+   * information they were created from.
+   *
+   * @param aStoredDocs
+   *        The stored documents of a single participant. May neither be
+   *        <code>null</code> nor empty.
+   * @return The business information. Never <code>null</code>.
+   */
+  @Nonnull
+  private static PDExtendedBusinessInformation _getAsBusinessInformation (@Nonnull @Nonempty final List <PDStoredDocument> aStoredDocs)
+  {
+    final PDBusinessInformationType aBI = new PDBusinessInformationType ();
+    for (final PDStoredDocument aStoredDoc : aStoredDocs)
+    {
+      final PDEntityType aEntity = new PDEntityType ();
+      aEntity.setCountryCode (aStoredDoc.getCountryCode ());
+      aEntity.setName (aStoredDoc.getName ());
+      aEntity.setGeoInfo (aStoredDoc.getGeoInfo ());
+      for (final PDStoredIdentifier aStoredID : aStoredDoc.getAllIdentifiers ())
+      {
+        final PDIdentifierType aID = new PDIdentifierType ();
+        aID.setType (aStoredID.getType ());
+        aID.setValue (aStoredID.getValue ());
+        aEntity.addIdentifier (aID);
       }
-
-      if (!aDocs.isEmpty ())
+      for (final String sWebSite : aStoredDoc.getAllWebSites ())
+        aEntity.addWebSite (sWebSite);
+      for (final PDStoredBusinessContact aStoredBC : aStoredDoc.getAllBusinessContacts ())
       {
-        // Add "group end" marker
-        CollectionHelper.getLastElement (aDocs).add (new Field (CPDStorage.FIELD_GROUP_END, VALUE_GROUP_END, TYPE_GROUP_END));
+        final PDBusinessContactType aBC = new PDBusinessContactType ();
+        aBC.setDescription (aStoredBC.getDescription ());
+        aBC.setName (aStoredBC.getName ());
+        aBC.setPhoneNumber (aStoredBC.getPhone ());
+        aBC.setEmail (aStoredBC.getEmail ());
+        aEntity.addBusinessContact (aBC);
       }
+      aEntity.setFreeText (aStoredDoc.getFreeText ());
+      aBI.addEntity (aEntity);
+    }
+    return new PDExtendedBusinessInformation (aBI, new ArrayList <IDocumentTypeIdentifier> (aStoredDocs.get (0).getAllDocumentTypeIDs ()));
+  }
 
-      // Delete all existing documents of the participant ID
-      // and add the new ones to the index
-      m_aLucene.updateDocuments (_createParticipantTerm (aParticipantID), aDocs);
+  /**
+   * Rewrite all documents of a single participant in the current index
+   * format.
+   *
+   * @param aStoredDocs
+   *        The stored documents of a single participant. May neither be
+   *        <code>null</code> nor empty.
+   * @param nDeletionMillis
+   *        The deletion date time in milliseconds or 0 if the participant is
+   *        not deleted.
+   * @throws IOException
+   *         On Lucene error
+   */
+  private void _rewriteDocuments (@Nonnull @Nonempty final List <PDStoredDocument> aStoredDocs,
+                                  final long nDeletionMillis) throws IOException
+  {
+    final PDStoredDocument aFirst = aStoredDocs.get (0);
+    final SimpleParticipantIdentifier aParticipantID = SimpleParticipantIdentifier.createFromURIPartOrNull (aFirst.getParticipantID ());
+    if (aParticipantID == null)
+    {
+      s_aLogger.warn ("Failed to parse stored participant identifier '" + aFirst.getParticipantID () + "' - skipping");
+      return;
+    }
 
-      s_aLogger.info ("Added " + aDocs.size () + " Lucene documents");
-      AuditHelper.onAuditExecuteSuccess ("pyp-indexer-create", aParticipantID.getURIEncoded (), Integer.valueOf (aDocs.size ()), aMetaData);
+    final PDExtendedBusinessInformation aExtBI = _getAsBusinessInformation (aStoredDocs);
+    final List <Document> aDocs = _createDocuments (aParticipantID,
+                                                    aExtBI,
+                                                    aExtBI.getContentHash (),
+                                                    aFirst.getMetaData (),
+                                                    nDeletionMillis);
+    _addGroupEndMarker (aDocs);
+    m_aLucene.updateDocuments (_createParticipantTerm (aParticipantID), aDocs);
+  }
+
+  /**
+   * Upgrade an index created with a previous index format version to
+   * {@link CPDStorage#INDEX_VERSION}. All documents are rebuilt from their
+   * stored fields, so the content of the index does not change. This should be
+   * called once on startup before the index is used. Concurrent writes are
+   * blocked while the upgrade is running.
+   *
+   * @return The number of participants that were rewritten. Always &ge; 0.
+   * @throws IOException
+   *         On Lucene error
+   */
+  @Nonnegative
+  public int upgradeIndexIfNecessary () throws IOException
+  {
+    final String sIndexVersion = m_aLucene.getCommitUserData (CPDStorage.COMMIT_DATA_INDEX_VERSION);
+    if (CPDStorage.INDEX_VERSION.equals (sIndexVersion))
+      return 0;
+
+    final MutableInt aParticipants = new MutableInt (0);
+    m_aLucene.runAtomic ( () -> {
+      s_aLogger.info ("Upgrading Lucene index from version " + sIndexVersion + " to " + CPDStorage.INDEX_VERSION);
+      final StopWatch aSW = StopWatch.createdStarted ();
+      m_aLucene.waitForPendingChanges ();
+
+      // Indices before version 4 used an indexed int field as the deleted
+      // marker that is not stored, so remember these deleted participants. The
+      // deletion date is unknown for them.
+      final Set <String> aLegacyDeletedParticipantIDs = new HashSet <> ();
+      searchAtomic (NumericRangeQuery.newIntRange (CPDStorage.FIELD_DELETED, 1, 1, true, true),
+                    new AllDocumentsCollector (aDoc -> aLegacyDeletedParticipantIDs.add (aDoc.get (CPDStorage.FIELD_PARTICIPANTID))));
+      final long nLegacyDeletionMillis = PDTFactory.getCurrentMillis ();
+
+      // All documents of a participant are stored as a contiguous block, so
+      // documents are collected until the participant changes. The searcher
+      // does not see the rewritten documents.
+      final List <PDStoredDocument> aBlock = new ArrayList <> ();
+      final IThrowingRunnable <IOException> aFlushBlock = () -> {
+        if (!aBlock.isEmpty ())
+        {
+          final PDStoredDocument aFirst = aBlock.get (0);
+          long nDeletionMillis = 0;
+          if (aFirst.isDeleted ())
+            nDeletionMillis = PDTFactory.createDateTime (aFirst.getDeletionDT ()).getMillis ();
+          else
+            if (aLegacyDeletedParticipantIDs.contains (aFirst.getParticipantID ()))
+              nDeletionMillis = nLegacyDeletionMillis;
+          _rewriteDocuments (aBlock, nDeletionMillis);
+          aParticipants.inc ();
+          aBlock.clear ();
+        }
+      };
+      try
+      {
+        searchAllDocuments (new MatchAllDocsQuery (), aStoredDoc -> {
+          try
+          {
+            if (!aBlock.isEmpty () && !aBlock.get (0).getParticipantID ().equals (aStoredDoc.getParticipantID ()))
+              aFlushBlock.run ();
+            aBlock.add (aStoredDoc);
+          }
+          catch (final IOException ex)
+          {
+            throw new UncheckedIOException (ex);
+          }
+        });
+      }
+      catch (final UncheckedIOException ex)
+      {
+        throw ex.getCause ();
+      }
+      aFlushBlock.run ();
+
+      m_aLucene.setCommitUserData (CPDStorage.COMMIT_DATA_INDEX_VERSION, CPDStorage.INDEX_VERSION);
+      s_aLogger.info ("Finished upgrading " + aParticipants.intValue () + " participants of the Lucene index in " + aSW.stopAndGetMillis () + " ms");
     });
+    return aParticipants.intValue ();
   }
 
   /**
    * Search all documents matching the passed query and pass the result on to
-   * the provided {@link Consumer}.
+   * the provided {@link Consumer}. Searches run concurrently to each other and
+   * to index modifications.
    *
    * @param aQuery
    *        Query to execute. May not be <code>null</code>-
@@ -289,19 +803,14 @@ public final class PDStorageManager implements Closeable
     ValueEnforcer.notNull (aQuery, "Query");
     ValueEnforcer.notNull (aCollector, "Collector");
 
-    m_aLucene.runAtomic ( () -> {
-      final IndexSearcher aSearcher = m_aLucene.getSearcher ();
-      if (aSearcher != null)
-      {
-        if (s_aLogger.isDebugEnabled ())
-          s_aLogger.debug ("Searching Lucene: " + aQuery);
+    m_aLucene.callWithSearcher (aSearcher -> {
+      if (s_aLogger.isDebugEnabled ())
+        s_aLogger.debug ("Searching Lucene: " + aQuery);
 
-        // Search all documents, convert them to StoredDocument and pass them to
-        // the provided consumer
-        aSearcher.search (aQuery, aCollector);
-      }
-      else
-        s_aLogger.warn ("Failed to obtain IndexSearcher");
+      // Search all documents, convert them to StoredDocument and pass them to
+      // the provided consumer
+      aSearcher.search (aQuery, aCollector);
+      return null;
     });
   }
 
@@ -323,7 +832,7 @@ public final class PDStorageManager implements Closeable
     ValueEnforcer.notNull (aQuery, "Query");
     ValueEnforcer.notNull (aConsumer, "Consumer");
 
-    searchAtomic (aQuery, new AllDocumentsCollector (m_aLucene, aDoc -> aConsumer.accept (PDStoredDocument.create (aDoc))));
+    searchAtomic (aQuery, new PDStoredDocumentCollector (aConsumer));
   }
 
   /**
@@ -351,6 +860,220 @@ public final class PDStorageManager implements Closeable
     return aTargetList;
   }
 
+  @Nonnull
+  private static String _createCursor (@Nonnegative final int nOffset, @Nullable final ScoreDoc aScoreDoc)
+  {
+    String sPlain = Integer.toString (nOffset);
+    if (aScoreDoc != null)
+      sPlain += CURSOR_SEPARATOR +
+                Integer.toString (aScoreDoc.doc) +
+                CURSOR_SEPARATOR +
+                Integer.toHexString (Float.floatToIntBits (aScoreDoc.score));
+    return Base64.getUrlEncoder ().withoutPadding ().encodeToString (sPlain.getBytes (StandardCharsets.ISO_8859_1));
+  }
+
+  /**
+   * Parse the passed cursor.
+   *
+   * @param sCursor
+   *        The cursor to parse. May be <code>null</code>.
+   * @param bWithScoreDoc
+   *        <code>true</code> if the cursor must contain the last
+   *        {@link ScoreDoc} of the previous page, <code>false</code> if it
+   *        must only contain the offset.
+   * @return <code>null</code> if no cursor is present or if it is invalid.
+   *         Otherwise the offset and the last {@link ScoreDoc} of the previous
+   *         page (if requested).
+   */
+  @Nullable
+  private static Map.Entry <Integer, ScoreDoc> _parseCursor (@Nullable final String sCursor, final boolean bWithScoreDoc)
+  {
+    if (StringHelper.hasNoText (sCursor))
+      return null;
+
+    try
+    {
+      final String sPlain = new String (Base64.getUrlDecoder ().decode (sCursor), StandardCharsets.ISO_8859_1);
+      final String [] aParts = StringHelper.getExplodedArray (CURSOR_SEPARATOR, sPlain);
+      final int nOffset = Integer.parseInt (aParts[0]);
+      if (nOffset > 0)
+      {
+        if (!bWithScoreDoc && aParts.length == 1)
+          return new MapEntry <> (Integer.valueOf (nOffset), null);
+        if (bWithScoreDoc && aParts.length == 3)
+        {
+          final int nDocID = Integer.parseInt (aParts[1]);
+          final float fScore = Float.intBitsToFloat (Integer.parseUnsignedInt (aParts[2], 16));
+          if (nDocID >= 0)
+            return new MapEntry <> (Integer.valueOf (nOffset), new ScoreDoc (nDocID, fScore));
+        }
+      }
+    }
+    catch (final IllegalArgumentException ex)
+    {
+      // Fall through
+    }
+    s_aLogger.warn ("Ignoring invalid search cursor '" + sCursor + "'");
+    return null;
+  }
+
+  /**
+   * Search a single page of the top scoring documents matching the passed
+   * query. Only the stored fields of the documents of the requested page are
+   * loaded, so the required memory is bounded by the page size and not by the
+   * number of matching documents.<br>
+   * Note: the cursor refers to the last document of the previous page. If the
+   * index is modified between two page requests, documents may be skipped or
+   * returned twice.
+   *
+   * @param aQuery
+   *        Query to execute. May not be <code>null</code>.
+   * @param sCursor
+   *        The cursor as returned by {@link PDSearchResultPage#getNextCursor()}
+   *        of the previous page. May be <code>null</code> to retrieve the
+   *        first page.
+   * @param nPageSize
+   *        The maximum number of documents to return. Must be &gt; 0.
+   * @return The page with the results. Never <code>null</code>.
+   * @throws IOException
+   *         On Lucene error
+   */
+  @Nonnull
+  public PDSearchResultPage searchPage (@Nonnull final Query aQuery,
+                                        @Nullable final String sCursor,
+                                        @Nonnegative final int nPageSize) throws IOException
+  {
+    ValueEnforcer.notNull (aQuery, "Query");
+    ValueEnforcer.isGT0 (nPageSize, "PageSize");
+
+    final Map.Entry <Integer, ScoreDoc> aAfter = _parseCursor (sCursor, true);
+    final int nOffset = aAfter == null ? 0 : aAfter.getKey ().intValue ();
+
+    final PDSearchResultPage ret = m_aLucene.callWithSearcher (aSearcher -> {
+      if (s_aLogger.isDebugEnabled ())
+        s_aLogger.debug ("Searching Lucene page of " + nPageSize + " after offset " + nOffset + ": " + aQuery);
+
+      final TopDocs aTopDocs = aSearcher.searchAfter (aAfter == null ? null : aAfter.getValue (), aQuery, nPageSize);
+      final List <PDStoredDocument> aDocs = new ArrayList <> (aTopDocs.scoreDocs.length);
+      for (final ScoreDoc aScoreDoc : aTopDocs.scoreDocs)
+        aDocs.add (PDStoredDocument.create (aSearcher.getIndexReader (), aScoreDoc.doc));
+
+      final int nNextOffset = nOffset + aTopDocs.scoreDocs.length;
+      String sNextCursor = null;
+      if (aTopDocs.scoreDocs.length > 0 && nNextOffset < aTopDocs.totalHits)
+        sNextCursor = _createCursor (nNextOffset, aTopDocs.scoreDocs[aTopDocs.scoreDocs.length - 1]);
+      return new PDSearchResultPage (aDocs, nOffset, aTopDocs.totalHits, sNextCursor);
+    });
+    // Index is closing
+    return ret != null ? ret : new PDSearchResultPage (new ArrayList <> (), nOffset, 0, null);
+  }
+
+  /**
+   * Search a single page of the top scoring participants matching the passed
+   * query. This relies on all documents of a participant being indexed as a
+   * single block terminated by the {@link CPDStorage#FIELD_GROUP_END} marker,
+   * so the grouping happens inside Lucene and only the stored fields of the
+   * returned participants are loaded.
+   *
+   * @param aQuery
+   *        Query to execute. May not be <code>null</code>.
+   * @param sCursor
+   *        The cursor as returned by {@link PDSearchResultPage#getNextCursor()}
+   *        of the previous page of this method. May be <code>null</code> to
+   *        retrieve the first page.
+   * @param nMaxParticipants
+   *        The maximum number of participants to return. Must be &gt; 0.
+   * @return The page with the matching entities of the participants, ordered
+   *         by participant relevance and entity index order. The total hit
+   *         count is the number of matching participants. Never
+   *         <code>null</code>.
+   * @throws IOException
+   *         On Lucene error
+   * @see #getGroupedByParticipantID(List)
+   */
+  @Nonnull
+  public PDSearchResultPage searchParticipantPage (@Nonnull final Query aQuery,
+                                                   @Nullable final String sCursor,
+                                                   @Nonnegative final int nMaxParticipants) throws IOException
+  {
+    ValueEnforcer.notNull (aQuery, "Query");
+    ValueEnforcer.isGT0 (nMaxParticipants, "MaxParticipants");
+
+    final Map.Entry <Integer, ScoreDoc> aAfter = _parseCursor (sCursor, false);
+    final int nOffset = aAfter == null ? 0 : aAfter.getKey ().intValue ();
+
+    final PDSearchResultPage ret = m_aLucene.callWithSearcher (aSearcher -> {
+      if (s_aLogger.isDebugEnabled ())
+        s_aLogger.debug ("Searching Lucene " + nMaxParticipants + " participants after offset " + nOffset + ": " + aQuery);
+
+      final Weight aGroupEnd = aSearcher.createNormalizedWeight (new TermQuery (new Term (CPDStorage.FIELD_GROUP_END,
+                                                                                          VALUE_GROUP_END)),
+                                                                 false);
+      final BlockGroupingCollector aCollector = new BlockGroupingCollector (Sort.RELEVANCE,
+                                                                            nOffset + nMaxParticipants,
+                                                                            true,
+                                                                            aGroupEnd);
+      aSearcher.search (aQuery, aCollector);
+
+      final TopGroups <?> aTopGroups = aCollector.getTopGroups (Sort.INDEXORDER,
+                                                                nOffset,
+                                                                0,
+                                                                MAX_ENTITIES_PER_PARTICIPANT,
+                                                                false);
+      final List <PDStoredDocument> aDocs = new ArrayList <> ();
+      int nTotalParticipants = 0;
+      String sNextCursor = null;
+      if (aTopGroups != null)
+      {
+        for (final GroupDocs <?> aGroupDocs : aTopGroups.groups)
+          for (final ScoreDoc aScoreDoc : aGroupDocs.scoreDocs)
+            aDocs.add (PDStoredDocument.create (aSearcher.getIndexReader (), aScoreDoc.doc));
+
+        nTotalParticipants = aTopGroups.totalGroupCount != null ? aTopGroups.totalGroupCount.intValue () : 0;
+        final int nNextOffset = nOffset + aTopGroups.groups.length;
+        if (aTopGroups.groups.length > 0 && nNextOffset < nTotalParticipants)
+          sNextCursor = _createCursor (nNextOffset, null);
+      }
+      return new PDSearchResultPage (aDocs, nOffset, nTotalParticipants, sNextCursor);
+    });
+    // Index is closing
+    return ret != null ? ret : new PDSearchResultPage (new ArrayList <> (), nOffset, 0, null);
+  }
+
+  /**
+   * Count all documents matching the passed query per country code and per
+   * document type ID in a single pass. Only the doc values of the respective
+   * fields are read, no stored fields are loaded.
+   *
+   * @param aQuery
+   *        Query to execute. May not be <code>null</code>.
+   * @return The facet counts. Never <code>null</code>.
+   * @throws IOException
+   *         On Lucene error
+   */
+  @Nonnull
+  public PDFacetCounts getFacetCounts (@Nonnull final Query aQuery) throws IOException
+  {
+    ValueEnforcer.notNull (aQuery, "Query");
+
+    final PDFacetCounts ret = m_aLucene.callWithSearcher (aSearcher -> {
+      final StopWatch aSW = StopWatch.createdStarted ();
+      final PDFacetCountsCollector aCollector = new PDFacetCountsCollector ();
+      aSearcher.search (aQuery, aCollector);
+      final PDFacetCounts aCounts = aCollector.getFacetCounts ();
+      if (s_aLogger.isDebugEnabled ())
+        s_aLogger.debug ("Counted facets of " +
+                         aCounts.getTotalHits () +
+                         " documents in " +
+                         aSW.stopAndGetMillis () +
+                         "ms: " +
+                         aQuery);
+      return aCounts;
+    });
+    // Index is closing
+    return ret != null ? ret : new PDFacetCounts (0, new HashMap <> (), new HashMap <> ());
+  }
+
   @Nonnull
   public List <PDStoredDocument> getAllDocumentsOfParticipant (@Nonnull final IPeppolParticipantIdentifier aParticipantID)
   {
@@ -372,19 +1095,221 @@ public final class PDStorageManager implements Closeable
     return getAllDocuments (new TermQuery (new Term (CPDStorage.FIELD_COUNTRY_CODE, sCountryCode)));
   }
 
+  /**
+   * The participant ID terms of a single segment, positioned on the current
+   * term. Used to merge the sorted terms of all segments.
+   */
+  private static final class LeafParticipantIDs
+  {
+    private final TermsEnum m_aTermsEnum;
+    private final Bits m_aLiveDocs;
+    private final NumericDocValues m_aDeleted;
+    private PostingsEnum m_aPostings;
+    private BytesRef m_aTerm;
+
+    LeafParticipantIDs (@Nonnull final TermsEnum aTermsEnum,
+                        @Nullable final Bits aLiveDocs,
+                        @Nullable final NumericDocValues aDeleted)
+    {
+      m_aTermsEnum = aTermsEnum;
+      m_aLiveDocs = aLiveDocs;
+      m_aDeleted = aDeleted;
+    }
+
+    /**
+     * Position on the first term after the passed one.
+     *
+     * @return <code>false</code> if there is no such term.
+     */
+    boolean seekAfter (@Nullable final String sStartAfter) throws IOException
+    {
+      if (sStartAfter == null)
+        m_aTerm = m_aTermsEnum.next ();
+      else
+      {
+        final TermsEnum.SeekStatus eStatus = m_aTermsEnum.seekCeil (new BytesRef (sStartAfter));
+        if (eStatus == TermsEnum.SeekStatus.END)
+          m_aTerm = null;
+        else
+          if (eStatus == TermsEnum.SeekStatus.FOUND)
+            m_aTerm = m_aTermsEnum.next ();
+          else
+            m_aTerm = m_aTermsEnum.term ();
+      }
+      return m_aTerm != null;
+    }
+
+    /**
+     * @return <code>false</code> if there is no next term.
+     */
+    boolean next () throws IOException
+    {
+      m_aTerm = m_aTermsEnum.next ();
+      return m_aTerm != null;
+    }
+
+    /**
+     * @return <code>true</code> if the current term has at least one live and
+     *         not deleted document in this segment.
+     */
+    boolean hasContainedDocument () throws IOException
+    {
+      // The doc IDs are relative to the segment
+      m_aPostings = m_aTermsEnum.postings (m_aPostings, PostingsEnum.NONE);
+      int nDocID;
+      while ((nDocID = m_aPostings.nextDoc ()) != DocIdSetIterator.NO_MORE_DOCS)
+        if ((m_aLiveDocs == null || m_aLiveDocs.get (nDocID)) && (m_aDeleted == null || m_aDeleted.get (nDocID) == 0))
+          return true;
+      return false;
+    }
+  }
+
+  /**
+   * Walk the participant ID terms dictionaries of all segments and pass each
+   * participant ID that has at least one live and not deleted document to the
+   * consumer. The sorted terms of the segments are merged with a priority
+   * queue, so no merged view of the index is built. This neither executes a
+   * query nor loads any stored field.
+   *
+   * @param aSearcher
+   *        The searcher to use. May not be <code>null</code>.
+   * @param sStartAfter
+   *        The participant ID after which to start (exclusive). May be
+   *        <code>null</code> to start with the first participant ID.
+   * @param nMaxCount
+   *        The maximum number of participant IDs to pass to the consumer.
+   * @param aConsumer
+   *        The consumer to invoke for each participant ID in ascending order.
+   *        May not be <code>null</code>.
+   * @throws IOException
+   *         On Lucene error
+   */
+  private static void _walkParticipantIDs (@Nonnull final IndexSearcher aSearcher,
+                                           @Nullable final String sStartAfter,
+                                           @Nonnegative final int nMaxCount,
+                                           @Nonnull final Consumer <String> aConsumer) throws IOException
+  {
+    final PriorityQueue <LeafParticipantIDs> aQueue = new PriorityQueue <> ( (a, b) -> a.m_aTerm.compareTo (b.m_aTerm));
+    for (final LeafReaderContext aLeaf : aSearcher.getIndexReader ().leaves ())
+    {
+      final LeafReader aLeafReader = aLeaf.reader ();
+      final Terms aTerms = aLeafReader.terms (CPDStorage.FIELD_PARTICIPANTID);
+      if (aTerms != null)
+      {
+        // Deleted marker of the segment; null if no document has one
+        final LeafParticipantIDs aLeafIDs = new LeafParticipantIDs (aTerms.iterator (),
+                                                                    aLeafReader.getLiveDocs (),
+                                                                    aLeafReader.getNumericDocValues (CPDStorage.FIELD_DELETED));
+        if (aLeafIDs.seekAfter (sStartAfter))
+          aQueue.add (aLeafIDs);
+      }
+    }
+
+    int nCount = 0;
+    final List <LeafParticipantIDs> aSameTerm = new ArrayList <> ();
+    while (!aQueue.isEmpty () && nCount < nMaxCount)
+    {
+      // All segments positioned on the smallest term
+      aSameTerm.add (aQueue.poll ());
+      final BytesRef aTerm = aSameTerm.get (0).m_aTerm;
+      while (!aQueue.isEmpty () && aQueue.peek ().m_aTerm.equals (aTerm))
+        aSameTerm.add (aQueue.poll ());
+
+      for (final LeafParticipantIDs aLeafIDs : aSameTerm)
+        if (aLeafIDs.hasContainedDocument ())
+        {
+          aConsumer.accept (aTerm.utf8ToString ());
+          ++nCount;
+          break;
+        }
+
+      // Advance only after the term was consumed, because the term may be
+      // reused by the enumeration
+      for (final LeafParticipantIDs aLeafIDs : aSameTerm)
+        if (aLeafIDs.next ())
+          aQueue.add (aLeafIDs);
+      aSameTerm.clear ();
+    }
+  }
+
+  /**
+   * Stream all participant IDs contained in the index and not marked as
+   * deleted in ascending order. Only the terms dictionary is read, so this
+   * scales to a large number of participants.
+   *
+   * @param sStartAfter
+   *        The participant ID after which to start (exclusive). May be
+   *        <code>null</code> to start with the first participant ID.
+   * @param aConsumer
+   *        The consumer to invoke for each participant ID. May not be
+   *        <code>null</code>.
+   * @throws IOException
+   *         On Lucene error
+   */
+  public void forEachContainedParticipantID (@Nullable final String sStartAfter,
+                                             @Nonnull final Consumer <String> aConsumer) throws IOException
+  {
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+
+    m_aLucene.callWithSearcher (aSearcher -> {
+      _walkParticipantIDs (aSearcher, sStartAfter, Integer.MAX_VALUE, aConsumer);
+      return null;
+    });
+  }
+
+  /**
+   * Get a single page of the participant IDs contained in the index and not
+   * marked as deleted in ascending order.
+   *
+   * @param sStartAfter
+   *        The participant ID after which to start (exclusive). Usually the
+   *        last participant ID of the previous page. May be <code>null</code>
+   *        to start with the first participant ID.
+   * @param nMaxCount
+   *        The maximum number of participant IDs to return. Must be &gt; 0.
+   * @return A list with at most nMaxCount participant IDs. Never
+   *         <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <String> getContainedParticipantIDs (@Nullable final String sStartAfter,
+                                                   @Nonnegative final int nMaxCount)
+  {
+    ValueEnforcer.isGT0 (nMaxCount, "MaxCount");
+
+    final List <String> ret = new ArrayList <> ();
+    try
+    {
+      m_aLucene.callWithSearcher (aSearcher -> {
+        _walkParticipantIDs (aSearcher, sStartAfter, nMaxCount, ret::add);
+        return null;
+      });
+    }
+    catch (final IOException ex)
+    {
+      s_aLogger.error ("Error reading participant IDs after '" + sStartAfter + "'", ex);
+    }
+    return ret;
+  }
+
+  /**
+   * @return A sorted set with all participant IDs contained in the index and
+   *         not marked as deleted. Never <code>null</code> but maybe empty.
+   * @see #forEachContainedParticipantID(String, Consumer)
+   * @see #getContainedParticipantIDs(String, int)
+   */
   @Nonnull
   @ReturnsMutableCopy
   public Set <String> getAllContainedParticipantIDs ()
   {
     final Set <String> aTargetList = new TreeSet <> ();
-    final Query aQuery = PDQueryManager.andNotDeleted (new WildcardQuery (new Term (CPDStorage.FIELD_ALL_FIELDS, "*")));
     try
     {
-      searchAtomic (aQuery, new AllDocumentsCollector (m_aLucene, aDoc -> aTargetList.add (aDoc.get (CPDStorage.FIELD_PARTICIPANTID))));
+      forEachContainedParticipantID (null, aTargetList::add);
     }
     catch (final IOException ex)
     {
-      s_aLogger.error ("Error searching for documents with query " + aQuery, ex);
+      s_aLogger.error ("Error reading all participant IDs", ex);
     }
     return aTargetList;
   }
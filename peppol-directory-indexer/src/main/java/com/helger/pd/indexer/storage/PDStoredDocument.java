@@ -16,6 +16,7 @@
  */
 package com.helger.pd.indexer.storage;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -25,7 +26,13 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.joda.time.LocalDateTime;
 
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
@@ -58,7 +65,7 @@ public class PDStoredDocument
   private final List <PDStoredBusinessContact> m_aBusinessContacts = new ArrayList <> ();
   private String m_sFreeText;
   private PDDocumentMetaData m_aMetaData;
-  private boolean m_bDeleted;
+  private LocalDateTime m_aDeletionDT;
 
   protected PDStoredDocument ()
   {}
@@ -267,14 +274,24 @@ public class PDStoredDocument
     m_aMetaData = aMetaData;
   }
 
-  public void setDeleted (final boolean bDeleted)
+  public void setDeletionDT (@Nullable final LocalDateTime aDeletionDT)
   {
-    m_bDeleted = bDeleted;
+    m_aDeletionDT = aDeletionDT;
+  }
+
+  /**
+   * @return The date time when the participant was marked as deleted or
+   *         <code>null</code> if it is not deleted.
+   */
+  @Nullable
+  public LocalDateTime getDeletionDT ()
+  {
+    return m_aDeletionDT;
   }
 
   public boolean isDeleted ()
   {
-    return m_bDeleted;
+    return m_aDeletionDT != null;
   }
 
   @Override
@@ -290,13 +307,15 @@ public class PDStoredDocument
                                        .append ("BusinessContacts", m_aBusinessContacts)
                                        .append ("FreeText", m_sFreeText)
                                        .append ("MetaData", m_aMetaData)
-                                       .append ("Deleted", m_bDeleted)
+                                       .appendIfNotNull ("DeletionDT", m_aDeletionDT)
                                        .toString ();
   }
 
   /**
    * Convert a stored Lucene {@link Document} to a {@link PDStoredDocument}.
-   * This method resolves all Lucene fields to Java fields.
+   * This method resolves all Lucene fields to Java fields. The deletion state
+   * is not part of the stored fields, so the returned document is never marked
+   * as deleted.
    *
    * @param aDoc
    *        Source Lucene document. May not be <code>null</code>.
@@ -352,7 +371,68 @@ public class PDStoredDocument
       ret.setMetaData (aMetaData);
     }
     ret.setFreeText (aDoc.get (CPDStorage.FIELD_FREETEXT));
-    ret.setDeleted (aDoc.getField (CPDStorage.FIELD_DELETED) != null);
     return ret;
   }
+
+  /**
+   * Load the stored Lucene {@link Document} with the provided ID from a single
+   * segment and convert it to a {@link PDStoredDocument}, including the
+   * deletion state. This is the variant to be used by collectors that iterate
+   * the segments, because the doc values only need to be retrieved once per
+   * segment.
+   *
+   * @param aLeafReader
+   *        The segment reader to load the document from. May not be
+   *        <code>null</code>.
+   * @param aDeleted
+   *        The {@link CPDStorage#FIELD_DELETED} doc values of the passed
+   *        segment reader. May be <code>null</code> if the segment has none.
+   * @param nDocID
+   *        The document ID relative to the passed segment reader.
+   * @return The new {@link PDStoredDocument}.
+   * @throws IOException
+   *         On Lucene error
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static PDStoredDocument create (@Nonnull final LeafReader aLeafReader,
+                                         @Nullable final NumericDocValues aDeleted,
+                                         final int nDocID) throws IOException
+  {
+    final PDStoredDocument ret = create (aLeafReader.document (nDocID));
+    if (aDeleted != null)
+    {
+      final long nDeletionMillis = aDeleted.get (nDocID);
+      if (nDeletionMillis != 0)
+        ret.setDeletionDT (PDTFactory.createDateTimeFromMillis (nDeletionMillis).toLocalDateTime ());
+    }
+    return ret;
+  }
+
+  /**
+   * Load the stored Lucene {@link Document} with the provided ID and convert
+   * it to a {@link PDStoredDocument}, including the deletion state from the
+   * {@link CPDStorage#FIELD_DELETED} doc values. This looks up the segment of
+   * the document first, so it should only be used if the segment is not known
+   * to the caller.
+   *
+   * @param aReader
+   *        The reader to load the document from. May be a top-level or a
+   *        segment reader. May not be <code>null</code>.
+   * @param nDocID
+   *        The document ID relative to the passed reader.
+   * @return The new {@link PDStoredDocument}.
+   * @throws IOException
+   *         On Lucene error
+   * @see #create(LeafReader, NumericDocValues, int)
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static PDStoredDocument create (@Nonnull final IndexReader aReader, final int nDocID) throws IOException
+  {
+    final List <LeafReaderContext> aLeaves = aReader.leaves ();
+    final LeafReaderContext aLeaf = aLeaves.get (ReaderUtil.subIndex (nDocID, aLeaves));
+    final LeafReader aLeafReader = aLeaf.reader ();
+    return create (aLeafReader, aLeafReader.getNumericDocValues (CPDStorage.FIELD_DELETED), nDocID - aLeaf.docBase);
+  }
 }
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.storage;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.SimpleCollector;
+
+import com.helger.commons.ValueEnforcer;
+
+/**
+ * A Lucene collector that converts all collected documents to
+ * {@link PDStoredDocument} objects, including their deletion state.
+ *
+ * @author Philip Helger
+ * @see com.helger.pd.indexer.lucene.AllDocumentsCollector
+ */
+final class PDStoredDocumentCollector extends SimpleCollector
+{
+  private final Consumer <PDStoredDocument> m_aConsumer;
+  private LeafReader m_aLeafReader;
+  private NumericDocValues m_aDeleted;
+
+  PDStoredDocumentCollector (@Nonnull final Consumer <PDStoredDocument> aConsumer)
+  {
+    m_aConsumer = ValueEnforcer.notNull (aConsumer, "Consumer");
+  }
+
+  @Override
+  public boolean needsScores ()
+  {
+    return false;
+  }
+
+  @Override
+  protected void doSetNextReader (@Nonnull final LeafReaderContext aContext) throws IOException
+  {
+    m_aLeafReader = aContext.reader ();
+    // Once per segment and not once per document
+    m_aDeleted = m_aLeafReader.getNumericDocValues (CPDStorage.FIELD_DELETED);
+  }
+
+  @Override
+  public void collect (final int nDocID) throws IOException
+  {
+    // The document ID is relative to the current segment
+    m_aConsumer.accept (PDStoredDocument.create (m_aLeafReader, m_aDeleted, nDocID));
+  }
+}
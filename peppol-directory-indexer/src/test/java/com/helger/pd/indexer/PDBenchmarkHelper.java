@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.helger.commons.collection.CollectionHelper;
+import com.helger.datetime.PDTFactory;
+import com.helger.pd.businessinformation.PDBusinessInformationType;
+import com.helger.pd.businessinformation.PDEntityType;
+import com.helger.pd.businessinformation.PDExtendedBusinessInformation;
+import com.helger.pd.businessinformation.PDIdentifierType;
+import com.helger.pd.indexer.storage.PDDocumentMetaData;
+import com.helger.pd.indexer.storage.PDIndexEntry;
+import com.helger.pd.indexer.storage.PDStorageManager;
+import com.helger.peppol.identifier.doctype.EPredefinedDocumentTypeIdentifier;
+import com.helger.peppol.identifier.participant.SimpleParticipantIdentifier;
+
+/**
+ * Helper methods for the manually run benchmarks.
+ *
+ * @author Philip Helger
+ */
+public final class PDBenchmarkHelper
+{
+  /** The number of entities created per synthetic participant */
+  public static final int ENTITIES_PER_PARTICIPANT = 2;
+  /** The number of participants indexed at once */
+  private static final int BATCH_SIZE = 1000;
+
+  private static final String [] COUNTRY_CODES = { "AT", "BE", "DE", "DK", "FR", "IT", "NL", "NO", "SE", "UK" };
+  private static final String [] WORDS = { "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel" };
+
+  private PDBenchmarkHelper ()
+  {}
+
+  /**
+   * Create deterministic synthetic business information.
+   *
+   * @param nIndex
+   *        The index of the participant.
+   * @return The business information with {@link #ENTITIES_PER_PARTICIPANT}
+   *         entities. Never <code>null</code>.
+   */
+  @Nonnull
+  public static PDExtendedBusinessInformation createSyntheticBI (@Nonnegative final int nIndex)
+  {
+    final PDBusinessInformationType aBI = new PDBusinessInformationType ();
+    for (int i = 0; i < ENTITIES_PER_PARTICIPANT; ++i)
+    {
+      final PDEntityType aEntity = new PDEntityType ();
+      aEntity.setCountryCode (COUNTRY_CODES[(nIndex + i) % COUNTRY_CODES.length]);
+      aEntity.setName (WORDS[nIndex % WORDS.length] + " " + WORDS[(nIndex / WORDS.length) % WORDS.length] + " company " + nIndex);
+      aEntity.setGeoInfo ("Street " + i + ", City " + (nIndex % 100));
+      final PDIdentifierType aID = new PDIdentifierType ();
+      aID.setType ("vat");
+      aID.setValue ("VAT" + nIndex);
+      aEntity.addIdentifier (aID);
+      aEntity.setFreeText ("Synthetic entity " + i + " of participant " + nIndex);
+      aBI.addEntity (aEntity);
+    }
+    return new PDExtendedBusinessInformation (aBI, CollectionHelper.newList (EPredefinedDocumentTypeIdentifier.INVOICE_T010_BIS5A_V20));
+  }
+
+  /**
+   * Index the provided number of synthetic participants.
+   *
+   * @param aMgr
+   *        The storage manager to use. May not be <code>null</code>.
+   * @param nParticipants
+   *        The number of participants to index.
+   * @throws IOException
+   *         On Lucene error
+   */
+  public static void indexSyntheticParticipants (@Nonnull final PDStorageManager aMgr,
+                                                 @Nonnegative final int nParticipants) throws IOException
+  {
+    final PDDocumentMetaData aMetaData = new PDDocumentMetaData (PDTFactory.getCurrentLocalDateTime (), "benchmark", "localhost");
+    final List <PDIndexEntry> aBatch = new ArrayList <> (BATCH_SIZE);
+    for (int i = 0; i < nParticipants; ++i)
+    {
+      final SimpleParticipantIdentifier aParticipantID = SimpleParticipantIdentifier.createWithDefaultScheme ("9915:bench" + i);
+      aBatch.add (new PDIndexEntry (aParticipantID, createSyntheticBI (i), aMetaData));
+      if (aBatch.size () == BATCH_SIZE)
+      {
+        aMgr.createOrUpdateEntries (aBatch);
+        aBatch.clear ();
+      }
+    }
+    aMgr.createOrUpdateEntries (aBatch);
+  }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.joda.time.LocalDateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.microdom.IMicroElement;
+import com.helger.commons.microdom.convert.MicroTypeConverter;
+import com.helger.datetime.PDTFactory;
+import com.helger.pd.indexer.PYPIndexerTestRule;
+import com.helger.pd.settings.PDSettings;
+import com.helger.peppol.identifier.participant.SimpleParticipantIdentifier;
+
+/**
+ * Test class for class {@link ReIndexWorkItem}.
+ *
+ * @author Philip Helger
+ */
+public final class ReIndexWorkItemTest
+{
+  @Rule
+  public final TestRule m_aRule = new PYPIndexerTestRule ();
+
+  @Test
+  public void testBackoff ()
+  {
+    final long nInitial = PDSettings.getReIndexRetryMinutes () * CGlobal.MILLISECONDS_PER_MINUTE;
+    final long nMax = PDSettings.getReIndexRetryMaxMinutes () * CGlobal.MILLISECONDS_PER_MINUTE;
+    final int nFactor = PDSettings.getReIndexRetryBackoffFactor ();
+
+    assertEquals (nInitial, ReIndexWorkItem.getRetryDelayMillis (0));
+    assertEquals (Math.min (nInitial * nFactor, nMax), ReIndexWorkItem.getRetryDelayMillis (1));
+    assertEquals (nMax, ReIndexWorkItem.getRetryDelayMillis (100));
+
+    final long nMaxJitter = nInitial * PDSettings.getReIndexRetryJitterPercentage () / 100;
+    for (int i = 0; i < 1000; ++i)
+    {
+      final long nJittered = ReIndexWorkItem.getJitteredDelayMillis (nInitial);
+      assertTrue (nJittered >= nInitial - nMaxJitter);
+      assertTrue (nJittered <= nInitial + nMaxJitter);
+    }
+
+    final ReIndexWorkItem aItem = new ReIndexWorkItem (new IndexerWorkItem (SimpleParticipantIdentifier.createWithDefaultScheme ("9915:test"),
+                                                                            EIndexerWorkItemType.CREATE_UPDATE,
+                                                                            "junit",
+                                                                            "localhost"));
+    assertEquals (nInitial, aItem.getRetryDelayMillis ());
+    for (int i = 1; i <= 10; ++i)
+    {
+      final LocalDateTime aBefore = PDTFactory.getCurrentLocalDateTime ();
+      aItem.incRetryCount ();
+      assertEquals (i, aItem.getRetryCount ());
+      assertEquals (ReIndexWorkItem.getRetryDelayMillis (i), aItem.getRetryDelayMillis ());
+      assertTrue (aItem.getNextRetryDT ().isAfter (aBefore));
+    }
+
+    // The retry delay is persisted
+    final IMicroElement aElement = MicroTypeConverter.convertToMicroElement (aItem, "item");
+    final ReIndexWorkItem aRead = MicroTypeConverter.convertToNative (aElement, ReIndexWorkItem.class);
+    assertEquals (aItem.getRetryDelayMillis (), aRead.getRetryDelayMillis ());
+    assertEquals (aItem.getNextRetryDT (), aRead.getNextRetryDT ());
+
+    // Files of previous versions derive it from the retry count
+    aElement.removeAttribute ("retrydelay");
+    assertEquals (aItem.getRetryDelayMillis (),
+                  MicroTypeConverter.convertToNative (aElement, ReIndexWorkItem.class).getRetryDelayMillis ());
+  }
+
+  @Test
+  public void testDeferRetry ()
+  {
+    final LocalDateTime aEarliestDT = PDTFactory.getCurrentLocalDateTime ().plusMinutes (10);
+    final long nMaxJitter = 10 * CGlobal.MILLISECONDS_PER_MINUTE * PDSettings.getReIndexRetryJitterPercentage () / 100;
+    final Set <LocalDateTime> aDeferralDTs = new HashSet <> ();
+    for (int i = 0; i < 100; ++i)
+    {
+      final LocalDateTime aDeferralDT = ReIndexWorkItem.getJitteredDeferralDT (aEarliestDT);
+      assertFalse (aDeferralDT.isBefore (aEarliestDT));
+      assertFalse (aDeferralDT.isAfter (aEarliestDT.plusMillis ((int) nMaxJitter)));
+      aDeferralDTs.add (aDeferralDT);
+    }
+    // Deferred items are spread
+    assertTrue (aDeferralDTs.size () > 1);
+
+    // The retry count and delay are kept
+    final ReIndexWorkItem aItem = new ReIndexWorkItem (new IndexerWorkItem (SimpleParticipantIdentifier.createWithDefaultScheme ("9915:test"),
+                                                                            EIndexerWorkItemType.CREATE_UPDATE,
+                                                                            "junit",
+                                                                            "localhost"));
+    aItem.incRetryCount ();
+    aItem.incRetryCount ();
+    aItem.deferRetry (aEarliestDT);
+    assertEquals (2, aItem.getRetryCount ());
+    assertEquals (ReIndexWorkItem.getRetryDelayMillis (2), aItem.getRetryDelayMillis ());
+    assertFalse (aItem.getNextRetryDT ().isBefore (aEarliestDT));
+  }
+}
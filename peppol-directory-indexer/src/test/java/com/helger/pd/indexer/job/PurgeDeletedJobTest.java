@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.job;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test class for class {@link PurgeDeletedJob}.
+ *
+ * @author Philip Helger
+ */
+public final class PurgeDeletedJobTest
+{
+  @Test
+  public void testIsInOffPeakWindow ()
+  {
+    // Regular window
+    assertFalse (PurgeDeletedJob.isInOffPeakWindow (1, 2, 5));
+    assertTrue (PurgeDeletedJob.isInOffPeakWindow (2, 2, 5));
+    assertTrue (PurgeDeletedJob.isInOffPeakWindow (4, 2, 5));
+    assertFalse (PurgeDeletedJob.isInOffPeakWindow (5, 2, 5));
+
+    // Window spanning midnight
+    assertTrue (PurgeDeletedJob.isInOffPeakWindow (23, 22, 3));
+    assertTrue (PurgeDeletedJob.isInOffPeakWindow (0, 22, 3));
+    assertFalse (PurgeDeletedJob.isInOffPeakWindow (3, 22, 3));
+    assertFalse (PurgeDeletedJob.isInOffPeakWindow (12, 22, 3));
+
+    // Always
+    for (int i = 0; i < 24; ++i)
+      assertTrue (PurgeDeletedJob.isInOffPeakWindow (i, 4, 4));
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.lucene;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import javax.annotation.Nonnull;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.timing.StopWatch;
+import com.helger.pd.indexer.PDBenchmarkHelper;
+import com.helger.pd.indexer.PYPIndexerTestRule;
+import com.helger.pd.indexer.storage.CPDStorage;
+import com.helger.pd.indexer.storage.PDQueryManager;
+import com.helger.pd.indexer.storage.PDStorageManager;
+import com.helger.photon.basic.app.io.WebFileIO;
+
+/**
+ * Benchmark comparing the search latency of the different Lucene directory
+ * implementations on a synthetic index. Run it manually via the main method.
+ *
+ * @author Philip Helger
+ */
+public final class PDLuceneDirectoryBenchmark
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (PDLuceneDirectoryBenchmark.class);
+  private static final int PARTICIPANTS = 5000;
+  private static final int WARMUP_RUNS = 50;
+  private static final int RUNS = 500;
+
+  private PDLuceneDirectoryBenchmark ()
+  {}
+
+  private static double _benchmarkMicros (@Nonnull final PDStorageManager aMgr, @Nonnull final Query aQuery) throws IOException
+  {
+    for (int i = 0; i < WARMUP_RUNS; ++i)
+      aMgr.searchPage (aQuery, null, 20);
+
+    final StopWatch aSW = StopWatch.createdStarted ();
+    for (int i = 0; i < RUNS; ++i)
+      aMgr.searchPage (aQuery, null, 20);
+    return aSW.stopAndGetNanos () / 1000d / RUNS;
+  }
+
+  private static void _benchmark (@Nonnull final ELuceneDirectoryType eDirType,
+                                  final boolean bNRTCaching) throws IOException
+  {
+    WebFileIO.getFileOpMgr ().deleteDirRecursiveIfExisting (PDLucene.getLuceneIndexDir ());
+    try (final PDLucene aLucene = new PDLucene (eDirType, bNRTCaching);
+         final PDStorageManager aMgr = new PDStorageManager (aLucene))
+    {
+      final StopWatch aIndexSW = StopWatch.createdStarted ();
+      PDBenchmarkHelper.indexSyntheticParticipants (aMgr, PARTICIPANTS);
+      aLucene.waitForPendingChanges ();
+      final long nIndexMillis = aIndexSW.stopAndGetMillis ();
+
+      final double dTerm = _benchmarkMicros (aMgr, new TermQuery (new Term (CPDStorage.FIELD_COUNTRY_CODE, "AT")));
+      final double dText = _benchmarkMicros (aMgr, new TermQuery (new Term (CPDStorage.FIELD_NAME, "charlie")));
+      final double dFree = _benchmarkMicros (aMgr, PDQueryManager.convertQueryStringToLuceneQuery (aLucene, "company 12"));
+
+      s_aLogger.info (String.format (Locale.US,
+                                     "%-7s nrt=%-5s index=%6d ms; term=%8.1f us; text=%8.1f us; free=%8.1f us",
+                                     eDirType.getID (),
+                                     Boolean.toString (bNRTCaching),
+                                     Long.valueOf (nIndexMillis),
+                                     Double.valueOf (dTerm),
+                                     Double.valueOf (dText),
+                                     Double.valueOf (dFree)));
+    }
+  }
+
+  public static void main (final String [] args) throws IOException
+  {
+    final PYPIndexerTestRule aRule = new PYPIndexerTestRule ();
+    aRule.before ();
+    try
+    {
+      for (final ELuceneDirectoryType eDirType : ELuceneDirectoryType.values ())
+      {
+        _benchmark (eDirType, false);
+        if (eDirType.isPersistent ())
+          _benchmark (eDirType, true);
+      }
+    }
+    finally
+    {
+      aRule.after ();
+    }
+  }
+}
@@ -18,6 +18,7 @@ package com.helger.pd.indexer.lucene;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
@@ -93,25 +94,27 @@ public final class PYPLuceneTest
   {
     try (final PDLucene aLucene = new PDLucene ())
     {
-      // Find top 5 hits
-      final TopDocs results = aLucene.getSearcher ().search (aQuery, 5);
-
-      // Get results
-      final ScoreDoc [] aHits = results.scoreDocs;
-      if (aHits.length == 0)
-        return null;
-
-      final int numTotalHits = results.totalHits;
-      assertEquals (1, numTotalHits);
-
-      /*
-       * Matching score for the first document
-       */
-      assertTrue (aHits[0].score > 0);
-
-      final Document doc = aLucene.getDocument (aHits[0].doc);
-      assertEquals ("Apache Lucene 5.0.0", doc.get ("id"));
-      return doc;
+      return aLucene.callWithSearcher (aSearcher -> {
+        // Find top 5 hits
+        final TopDocs results = aSearcher.search (aQuery, 5);
+
+        // Get results
+        final ScoreDoc [] aHits = results.scoreDocs;
+        if (aHits.length == 0)
+          return null;
+
+        final int numTotalHits = results.totalHits;
+        assertEquals (1, numTotalHits);
+
+        /*
+         * Matching score for the first document
+         */
+        assertTrue (aHits[0].score > 0);
+
+        final Document doc = aSearcher.doc (aHits[0].doc);
+        assertEquals ("Apache Lucene 5.0.0", doc.get ("id"));
+        return doc;
+      });
     }
   }
 
@@ -122,4 +125,23 @@ public final class PYPLuceneTest
     final Document aDoc = _searchBest (new TermQuery (new Term ("id", "Apache Lucene 5.0.0")));
     assertNotNull (aDoc);
   }
+
+  @Test
+  public void testAllDirectoryTypes () throws IOException
+  {
+    for (final ELuceneDirectoryType eDirType : ELuceneDirectoryType.values ())
+      for (final boolean bNRTCaching : new boolean [] { false, true })
+        try (final PDLucene aLucene = new PDLucene (eDirType, bNRTCaching))
+        {
+          assertSame (eDirType, aLucene.getDirectoryType ());
+          final Document aDoc = new Document ();
+          aDoc.add (new StringField ("id", eDirType.getID (), Field.Store.YES));
+          aLucene.updateDocument (new Term ("id", eDirType.getID ()), aDoc);
+          aLucene.waitForPendingChanges ();
+
+          final Integer aHits = aLucene.callWithSearcher (aSearcher -> Integer.valueOf (aSearcher.count (new TermQuery (new Term ("id",
+                                                                                                                                  eDirType.getID ())))));
+          assertEquals (1, aHits.intValue ());
+        }
+  }
 }
@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.mgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.io.file.FileOperations;
+import com.helger.pd.indexer.PYPIndexerTestRule;
+import com.helger.pd.indexer.domain.EIndexerWorkItemType;
+import com.helger.pd.indexer.domain.IndexerWorkItem;
+import com.helger.peppol.identifier.participant.SimpleParticipantIdentifier;
+
+/**
+ * Test class for class {@link IndexerWorkItemJournal}.
+ *
+ * @author Philip Helger
+ */
+public final class IndexerWorkItemJournalTest
+{
+  private static final File JOURNAL_DIR = new File ("target/junit-journal");
+
+  @Rule
+  public final TestRule m_aRule = new PYPIndexerTestRule ();
+
+  @Nonnull
+  private static File _getCleanJournalDir ()
+  {
+    FileOperations.deleteDirRecursiveIfExisting (JOURNAL_DIR);
+    return JOURNAL_DIR;
+  }
+
+  @Nonnull
+  private static List <IndexerWorkItem> _createItems (final int nCount)
+  {
+    final List <IndexerWorkItem> ret = new ArrayList <> ();
+    for (int i = 0; i < nCount; ++i)
+      ret.add (new IndexerWorkItem (SimpleParticipantIdentifier.createWithDefaultScheme ("9915:test" + i),
+                                    i % 2 == 0 ? EIndexerWorkItemType.CREATE_UPDATE : EIndexerWorkItemType.DELETE,
+                                    "junit",
+                                    "localhost"));
+    return ret;
+  }
+
+  @Test
+  public void testReplay () throws IOException
+  {
+    final File aDir = _getCleanJournalDir ();
+    final List <IndexerWorkItem> aItems = _createItems (3);
+
+    IndexerWorkItemJournal aJournal = new IndexerWorkItemJournal (aDir, IndexerWorkItemJournal.DEFAULT_SEGMENT_SIZE);
+    try
+    {
+      assertTrue (aJournal.getAllReplayedItems ().isEmpty ());
+      for (final IndexerWorkItem aItem : aItems)
+        aJournal.onEnqueue (aItem);
+      aJournal.onComplete (aItems.get (1));
+      assertEquals (2, aJournal.getOpenItemCount ());
+    }
+    finally
+    {
+      // No compaction, no flush - simulate a crash
+      aJournal.close ();
+    }
+
+    aJournal = new IndexerWorkItemJournal (aDir, IndexerWorkItemJournal.DEFAULT_SEGMENT_SIZE);
+    try
+    {
+      final List <IndexerWorkItem> aReplayed = aJournal.getAllReplayedItems ();
+      assertEquals (2, aReplayed.size ());
+      assertEquals (aItems.get (0), aReplayed.get (0));
+      assertEquals (aItems.get (0).getID (), aReplayed.get (0).getID ());
+      assertEquals (aItems.get (0).getCreationDT (), aReplayed.get (0).getCreationDT ());
+      assertEquals (aItems.get (2).getID (), aReplayed.get (1).getID ());
+      assertEquals (EIndexerWorkItemType.CREATE_UPDATE, aReplayed.get (1).getType ());
+
+      // Replayed items are queued again
+      for (final IndexerWorkItem aItem : aReplayed)
+        aJournal.onEnqueue (aItem);
+      aJournal.deleteReplayedSegments ();
+      // The current and the prepared next segment
+      assertEquals (2, aDir.listFiles ().length);
+    }
+    finally
+    {
+      aJournal.close ();
+    }
+  }
+
+  @Test
+  public void testCompaction () throws IOException
+  {
+    final File aDir = _getCleanJournalDir ();
+    final List <IndexerWorkItem> aItems = _createItems (50);
+
+    // Small segments to force a roll over
+    IndexerWorkItemJournal aJournal = new IndexerWorkItemJournal (aDir, 1024);
+    try
+    {
+      for (final IndexerWorkItem aItem : aItems)
+        aJournal.onEnqueue (aItem);
+      for (int i = 1; i < aItems.size (); ++i)
+        aJournal.onComplete (aItems.get (i));
+      assertTrue (aDir.listFiles ().length > 1);
+
+      aJournal.compact ();
+      // The current and the prepared next segment
+      assertEquals (2, aDir.listFiles ().length);
+    }
+    finally
+    {
+      aJournal.close ();
+    }
+    // The unused prepared segment is deleted upon close
+    assertEquals (1, aDir.listFiles ().length);
+
+    aJournal = new IndexerWorkItemJournal (aDir, 1024);
+    try
+    {
+      final List <IndexerWorkItem> aReplayed = aJournal.getAllReplayedItems ();
+      assertEquals (1, aReplayed.size ());
+      assertEquals (aItems.get (0).getID (), aReplayed.get (0).getID ());
+    }
+    finally
+    {
+      aJournal.close ();
+    }
+  }
+
+  @Test
+  public void testRollOverWithoutCompaction () throws IOException
+  {
+    final File aDir = _getCleanJournalDir ();
+    final List <IndexerWorkItem> aItems = _createItems (200);
+
+    // Roll over more often than the next segment can be prepared in the
+    // background
+    IndexerWorkItemJournal aJournal = new IndexerWorkItemJournal (aDir, 512);
+    try
+    {
+      for (final IndexerWorkItem aItem : aItems)
+        aJournal.onEnqueue (aItem);
+      for (int i = 0; i < aItems.size (); i += 2)
+        aJournal.onComplete (aItems.get (i));
+      assertEquals (100, aJournal.getOpenItemCount ());
+    }
+    finally
+    {
+      aJournal.close ();
+    }
+
+    aJournal = new IndexerWorkItemJournal (aDir, 512);
+    try
+    {
+      final List <IndexerWorkItem> aReplayed = aJournal.getAllReplayedItems ();
+      assertEquals (100, aReplayed.size ());
+      for (int i = 0; i < aReplayed.size (); ++i)
+        assertEquals (aItems.get (i * 2 + 1).getID (), aReplayed.get (i).getID ());
+    }
+    finally
+    {
+      aJournal.close ();
+    }
+  }
+
+  @Test
+  public void testCorruptedRecord () throws IOException
+  {
+    final File aDir = _getCleanJournalDir ();
+    final List <IndexerWorkItem> aItems = _createItems (2);
+
+    IndexerWorkItemJournal aJournal = new IndexerWorkItemJournal (aDir, 4096);
+    try
+    {
+      for (final IndexerWorkItem aItem : aItems)
+        aJournal.onEnqueue (aItem);
+    }
+    finally
+    {
+      aJournal.close ();
+    }
+
+    // Corrupt the last byte of the second record
+    final File aSegment = aDir.listFiles ()[0];
+    try (final RandomAccessFile aRAF = new RandomAccessFile (aSegment, "rw"))
+    {
+      int nPos = 0;
+      int nLastEnd = 0;
+      while (true)
+      {
+        aRAF.seek (nPos);
+        final int nLength = aRAF.readInt ();
+        if (nLength == 0)
+          break;
+        nLastEnd = nPos + 8 + nLength;
+        nPos = nLastEnd;
+      }
+      aRAF.seek (nLastEnd - 1);
+      final int nByte = aRAF.read ();
+      aRAF.seek (nLastEnd - 1);
+      aRAF.write (nByte ^ 0xff);
+    }
+
+    aJournal = new IndexerWorkItemJournal (aDir, 4096);
+    try
+    {
+      final List <IndexerWorkItem> aReplayed = aJournal.getAllReplayedItems ();
+      assertEquals (1, aReplayed.size ());
+      assertEquals (aItems.get (0).getID (), aReplayed.get (0).getID ());
+    }
+    finally
+    {
+      aJournal.close ();
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.mgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.joda.time.LocalDateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.state.ESuccess;
+import com.helger.commons.thread.ThreadHelper;
+import com.helger.pd.indexer.PYPIndexerTestRule;
+import com.helger.pd.indexer.domain.EIndexerWorkItemType;
+import com.helger.pd.indexer.domain.IndexerWorkItem;
+import com.helger.peppol.identifier.participant.SimpleParticipantIdentifier;
+
+/**
+ * Test class for class {@link IndexerWorkItemQueue}.
+ *
+ * @author Philip Helger
+ */
+public final class IndexerWorkItemQueueTest
+{
+  @Rule
+  public final TestRule m_aRule = new PYPIndexerTestRule ();
+
+  @Nonnull
+  private static IIndexerWorkItemHandler _createHandler (@Nonnull final Function <IndexerWorkItem, String> aHostKeyResolver,
+                                                         @Nonnull final Function <IndexerWorkItem, ESuccess> aExecutor,
+                                                         @Nonnull final Consumer <IndexerWorkItem> aUnavailableHandler)
+  {
+    return new IIndexerWorkItemHandler ()
+    {
+      @Nullable
+      public String getHostKey (@Nonnull final IndexerWorkItem aItem)
+      {
+        return aHostKeyResolver.apply (aItem);
+      }
+
+      @Nonnull
+      public ESuccess execute (@Nonnull final IndexerWorkItem aItem)
+      {
+        return aExecutor.apply (aItem);
+      }
+
+      public void onHostUnavailable (@Nonnull final IndexerWorkItem aItem, @Nonnull final LocalDateTime aRetryDT)
+      {
+        aUnavailableHandler.accept (aItem);
+      }
+    };
+  }
+
+  @Nonnull
+  private static IndexerWorkItem _createItem (@Nonnull final String sParticipantID)
+  {
+    return new IndexerWorkItem (SimpleParticipantIdentifier.createWithDefaultScheme (sParticipantID),
+                                EIndexerWorkItemType.CREATE_UPDATE,
+                                "junit",
+                                "localhost");
+  }
+
+  private static void _waitUntil (@Nonnull final AtomicInteger aCounter, final int nExpected)
+  {
+    int nWait = 0;
+    while (aCounter.get () < nExpected && nWait++ < 1000)
+      ThreadHelper.sleep (10);
+  }
+
+  @Test
+  public void testPerParticipantOrder ()
+  {
+    final int nParticipants = 5;
+    final int nItemsPerParticipant = 20;
+
+    final Map <String, List <String>> aExecuted = new ConcurrentHashMap <> ();
+    final Map <String, AtomicBoolean> aRunning = new ConcurrentHashMap <> ();
+    final AtomicBoolean aOverlap = new AtomicBoolean (false);
+    final AtomicInteger aExecutedCount = new AtomicInteger (0);
+    final IndexerWorkItemQueue aQueue = new IndexerWorkItemQueue (4,
+                                                                  4,
+                                                                  new SMPHostCircuitBreaker (10, 50, 5),
+                                                                  _createHandler (aItem -> null, aItem -> {
+                                                                    final String sKey = aItem.getParticipantID ()
+                                                                                             .getURIEncoded ();
+                                                                    // Items of the same participant may never run
+                                                                    // in parallel
+                                                                    if (!aRunning.computeIfAbsent (sKey,
+                                                                                                   k -> new AtomicBoolean ())
+                                                                                 .compareAndSet (false, true))
+                                                                      aOverlap.set (true);
+                                                                    ThreadHelper.sleep (1);
+                                                                    aExecuted.computeIfAbsent (sKey,
+                                                                                               k -> new ArrayList <> ())
+                                                                             .add (aItem.getID ());
+                                                                    aRunning.get (sKey).set (false);
+                                                                    aExecutedCount.incrementAndGet ();
+                                                                    return ESuccess.SUCCESS;
+                                                                  } , aItem -> {}));
+
+    final Map <String, List <String>> aExpected = new ConcurrentHashMap <> ();
+    for (int i = 0; i < nItemsPerParticipant; ++i)
+      for (int j = 0; j < nParticipants; ++j)
+      {
+        final IndexerWorkItem aItem = _createItem ("9915:test" + j);
+        aExpected.computeIfAbsent (aItem.getParticipantID ().getURIEncoded (), k -> new ArrayList <> ())
+                 .add (aItem.getID ());
+        aQueue.queueObject (aItem);
+      }
+
+    // Wait until everything was executed
+    _waitUntil (aExecutedCount, nParticipants * nItemsPerParticipant);
+
+    final List <IndexerWorkItem> aRemaining = aQueue.stop ();
+    assertTrue (aRemaining.isEmpty ());
+    assertFalse (aOverlap.get ());
+    assertEquals (aExpected, aExecuted);
+  }
+
+  @Test
+  public void testMaxPerHost ()
+  {
+    final int nItems = 40;
+    final AtomicInteger aRunning = new AtomicInteger (0);
+    final AtomicInteger aMaxRunning = new AtomicInteger (0);
+    final AtomicInteger aExecutedCount = new AtomicInteger (0);
+    final IndexerWorkItemQueue aQueue = new IndexerWorkItemQueue (8,
+                                                                  2,
+                                                                  new SMPHostCircuitBreaker (10, 50, 5),
+                                                                  _createHandler (aItem -> "smp", aItem -> {
+                                                                    aMaxRunning.accumulateAndGet (aRunning.incrementAndGet (),
+                                                                                                  Math::max);
+                                                                    ThreadHelper.sleep (2);
+                                                                    aRunning.decrementAndGet ();
+                                                                    aExecutedCount.incrementAndGet ();
+                                                                    return ESuccess.SUCCESS;
+                                                                  } , aItem -> {}));
+    for (int i = 0; i < nItems; ++i)
+      aQueue.queueObject (_createItem ("9915:test" + i));
+
+    _waitUntil (aExecutedCount, nItems);
+    assertTrue (aQueue.stop ().isEmpty ());
+    assertEquals (nItems, aExecutedCount.get ());
+    assertTrue (aMaxRunning.get () <= 2);
+  }
+
+  @Test
+  public void testCircuitBreaker ()
+  {
+    final int nItems = 30;
+    final AtomicInteger aExecutedCount = new AtomicInteger (0);
+    final AtomicInteger aUnavailableCount = new AtomicInteger (0);
+    final IndexerWorkItemQueue aQueue = new IndexerWorkItemQueue (1,
+                                                                  1,
+                                                                  new SMPHostCircuitBreaker (10, 50, 5),
+                                                                  _createHandler (aItem -> "smp", aItem -> {
+                                                                    aExecutedCount.incrementAndGet ();
+                                                                    return ESuccess.FAILURE;
+                                                                  } , aItem -> aUnavailableCount.incrementAndGet ()));
+    for (int i = 0; i < nItems; ++i)
+      aQueue.queueObject (_createItem ("9915:test" + i));
+
+    int nWait = 0;
+    while (aExecutedCount.get () + aUnavailableCount.get () < nItems && nWait++ < 1000)
+      ThreadHelper.sleep (10);
+    assertTrue (aQueue.stop ().isEmpty ());
+    assertEquals (nItems, aExecutedCount.get () + aUnavailableCount.get ());
+
+    // The breaker opens after half the window is filled with failures
+    assertEquals (5, aExecutedCount.get ());
+    assertEquals (nItems - 5, aUnavailableCount.get ());
+  }
+
+  @Test (expected = IllegalStateException.class)
+  public void testQueueAfterStop ()
+  {
+    final IndexerWorkItemQueue aQueue = new IndexerWorkItemQueue (1,
+                                                                  1,
+                                                                  new SMPHostCircuitBreaker (10, 50, 5),
+                                                                  _createHandler (aItem -> null,
+                                                                                  aItem -> ESuccess.SUCCESS,
+                                                                                  aItem -> {}));
+    assertTrue (aQueue.stop ().isEmpty ());
+    aQueue.queueObject (_createItem ("9915:test"));
+  }
+}
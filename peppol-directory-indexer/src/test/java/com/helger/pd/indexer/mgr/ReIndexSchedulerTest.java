@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.mgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Vector;
+
+import org.joda.time.LocalDateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.thread.ThreadHelper;
+import com.helger.datetime.PDTFactory;
+import com.helger.pd.indexer.PYPIndexerTestRule;
+import com.helger.pd.indexer.domain.EIndexerWorkItemType;
+import com.helger.pd.indexer.domain.IndexerWorkItem;
+import com.helger.pd.indexer.domain.ReIndexWorkItem;
+import com.helger.peppol.identifier.participant.SimpleParticipantIdentifier;
+import com.helger.photon.basic.app.dao.impl.DAOException;
+
+/**
+ * Test class for class {@link ReIndexScheduler}.
+ *
+ * @author Philip Helger
+ */
+public final class ReIndexSchedulerTest
+{
+  @Rule
+  public final TestRule m_aRule = new PYPIndexerTestRule ();
+
+  @Test
+  public void testWakeUpWhenDue () throws DAOException
+  {
+    final ReIndexWorkItemList aList = ReIndexWorkItemListTest.createEmptyList ("junit-reindex-scheduler.xml");
+    final List <ReIndexWorkItem> aDueItems = new Vector <> ();
+    final ReIndexScheduler aScheduler = new ReIndexScheduler (aList,
+                                                              () -> aDueItems.addAll (aList.getAndRemoveAllDueEntries (PDTFactory.getCurrentLocalDateTime ())));
+    aScheduler.start ();
+    try
+    {
+      // Sleeping without items - adding items wakes up the scheduler
+      final LocalDateTime aNow = PDTFactory.getCurrentLocalDateTime ();
+      for (int i = 0; i < 5; ++i)
+        aList.addItem (new ReIndexWorkItem (new IndexerWorkItem (SimpleParticipantIdentifier.createWithDefaultScheme ("9915:test" +
+                                                                                                                       i),
+                                                                 EIndexerWorkItemType.CREATE_UPDATE,
+                                                                 "junit",
+                                                                 "localhost"),
+                                            aNow.plusMillis (200 * (i + 1))));
+      assertTrue (aDueItems.isEmpty ());
+
+      // Wait until all are due
+      for (int i = 0; i < 100 && aDueItems.size () < 5; ++i)
+        ThreadHelper.sleep (50);
+      assertEquals (5, aDueItems.size ());
+      assertTrue (aList.getAllItems ().isEmpty ());
+
+      // Items were released in order and not before their time
+      for (int i = 0; i < 5; ++i)
+        assertEquals (aNow.plusMillis (200 * (i + 1)), aDueItems.get (i).getNextRetryDT ());
+    }
+    finally
+    {
+      aScheduler.stop ();
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.mgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.joda.time.LocalDateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.datetime.PDTFactory;
+import com.helger.pd.indexer.PYPIndexerTestRule;
+import com.helger.pd.indexer.domain.EIndexerWorkItemType;
+import com.helger.pd.indexer.domain.IndexerWorkItem;
+import com.helger.pd.indexer.domain.ReIndexWorkItem;
+import com.helger.peppol.identifier.participant.SimpleParticipantIdentifier;
+import com.helger.photon.basic.app.dao.impl.DAOException;
+import com.helger.photon.basic.app.io.WebFileIO;
+
+/**
+ * Test class for class {@link ReIndexWorkItemList}.
+ *
+ * @author Philip Helger
+ */
+public final class ReIndexWorkItemListTest
+{
+  @Rule
+  public final TestRule m_aRule = new PYPIndexerTestRule ();
+
+  /**
+   * Create a list backed by an empty file in the data directory, so that all
+   * changes are written like in production.
+   *
+   * @param sFilename
+   *        The file name relative to the data directory.
+   * @return The new empty list. Never <code>null</code>.
+   * @throws DAOException
+   *         On error
+   */
+  @Nonnull
+  static ReIndexWorkItemList createEmptyList (@Nonnull final String sFilename) throws DAOException
+  {
+    // Remove the data and the WAL file of previous runs
+    WebFileIO.getFileOpMgr ().deleteFileIfExisting (WebFileIO.getDataIO ().getFile (sFilename));
+    WebFileIO.getFileOpMgr ().deleteFileIfExisting (WebFileIO.getDataIO ().getFile (sFilename + ".wal"));
+    final ReIndexWorkItemList ret = new ReIndexWorkItemList (sFilename);
+    assertTrue (ret.getAllItems ().isEmpty ());
+    return ret;
+  }
+
+  @Test
+  public void testDueEntries () throws DAOException
+  {
+    final ReIndexWorkItemList aList = createEmptyList ("junit-reindex-due.xml");
+    final LocalDateTime aNow = PDTFactory.getCurrentLocalDateTime ();
+
+    // Add in reverse order of the retry date time
+    for (int i = 9; i >= 0; --i)
+      aList.addItem (new ReIndexWorkItem (new IndexerWorkItem (SimpleParticipantIdentifier.createWithDefaultScheme ("9915:test" +
+                                                                                                                     i),
+                                                               EIndexerWorkItemType.CREATE_UPDATE,
+                                                               "junit",
+                                                               "localhost"),
+                                          aNow.plusMinutes (i)));
+    assertEquals (10, aList.getAllItems ().size ());
+
+    // Nothing is due yet
+    assertTrue (aList.getAndRemoveAllDueEntries (aNow).isEmpty ());
+
+    // Items 0 to 4 are due in order
+    final List <ReIndexWorkItem> aDue = aList.getAndRemoveAllDueEntries (aNow.plusMinutes (4).plusSeconds (1));
+    assertEquals (5, aDue.size ());
+    for (int i = 0; i < 5; ++i)
+      assertEquals ("iso6523-actorid-upis::9915:test" + i, aDue.get (i).getWorkItem ().getParticipantID ().getURIEncoded ());
+    assertEquals (5, aList.getAllItems ().size ());
+
+    // Retry the first one again - it is re-ordered by the new retry date time
+    final ReIndexWorkItem aRetry = aDue.get (0);
+    aList.incRetryCountAndAddItem (aRetry);
+    assertEquals (1, aRetry.getRetryCount ());
+    assertEquals (6, aList.getAllItems ().size ());
+
+    // Items 5 to 9 are due at fixed times, the retried item at its new
+    // jittered time which is after item 5
+    final LocalDateTime aRetryDT = aRetry.getNextRetryDT ();
+    assertTrue (aRetryDT.isAfter (aNow.plusMinutes (5)));
+    final List <String> aExpectedIDs = new ArrayList <> ();
+    for (int i = 5; i < 10 && aNow.plusMinutes (i).isBefore (aRetryDT); ++i)
+      aExpectedIDs.add ("iso6523-actorid-upis::9915:test" + i);
+    aExpectedIDs.add (aRetry.getWorkItem ().getParticipantID ().getURIEncoded ());
+
+    final List <String> aDueIDs = new ArrayList <> ();
+    for (final ReIndexWorkItem aItem : aList.getAndRemoveAllDueEntries (aRetryDT.plusMillis (1)))
+      aDueIDs.add (aItem.getWorkItem ().getParticipantID ().getURIEncoded ());
+    assertEquals (aExpectedIDs, aDueIDs);
+    final int nRemaining = 6 - aExpectedIDs.size ();
+    assertEquals (nRemaining, aList.getAllItems ().size ());
+
+    // Nothing is expired yet
+    assertTrue (aList.getAndRemoveAllExpiredEntries (aNow).isEmpty ());
+    assertEquals (nRemaining, aList.getAndRemoveAllExpiredEntries (aNow.plusYears (1)).size ());
+    assertTrue (aList.getAllItems ().isEmpty ());
+  }
+}
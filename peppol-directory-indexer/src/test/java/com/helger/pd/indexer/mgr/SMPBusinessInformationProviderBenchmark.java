@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.mgr;
+
+import java.util.Locale;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.microdom.IMicroElement;
+import com.helger.commons.microdom.serialize.MicroWriter;
+import com.helger.commons.timing.StopWatch;
+import com.helger.commons.xml.serialize.read.DOMReader;
+import com.helger.pd.businessinformation.PDBusinessInformationMarshaller;
+import com.helger.pd.businessinformation.PDBusinessInformationType;
+import com.helger.pd.businessinformation.PDSharedBusinessInformationMarshaller;
+import com.helger.peppol.smp.ExtensionType;
+
+/**
+ * Benchmark comparing the previous extraction of the business information
+ * via a micro DOM copy and a serialized string with the direct unmarshalling
+ * from the DOM done by
+ * {@link SMPBusinessInformationProvider#extractBusinessInformation(ExtensionType, boolean)}
+ * with the shared unmarshallers of {@link PDSharedBusinessInformationMarshaller}.
+ * Run it manually via the main method. The optional first argument is the
+ * number of runs per variant (defaults to 20000).
+ *
+ * @author Philip Helger
+ */
+public final class SMPBusinessInformationProviderBenchmark
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (SMPBusinessInformationProviderBenchmark.class);
+
+  private SMPBusinessInformationProviderBenchmark ()
+  {}
+
+  /**
+   * The extraction as it was done before: DOM to micro DOM to string to JAXB.
+   */
+  @Nullable
+  private static PDBusinessInformationType _extractViaMicroDOM (@Nonnull final ExtensionType aExtension)
+  {
+    final IMicroElement eExtensionContainer = (IMicroElement) SMPBusinessInformationProvider.convertToMicroNode (aExtension.getAny ());
+    for (final IMicroElement eExtensionElement : eExtensionContainer.getAllChildElements ("ExtensionElement"))
+      if ("business information".equals (eExtensionElement.getAttributeValue ("type")))
+      {
+        final IMicroElement eBussinessInfo = eExtensionElement.getFirstChildElement ("BusinessInformation");
+        return new PDBusinessInformationMarshaller ().read (MicroWriter.getXMLString (eBussinessInfo));
+      }
+    return null;
+  }
+
+  /**
+   * The extraction from the DOM with a new marshaller per read.
+   */
+  @Nullable
+  private static PDBusinessInformationType _extractWithNewMarshaller (@Nonnull final ExtensionType aExtension)
+  {
+    final Element eBusinessInfo = (Element) aExtension.getAny ()
+                                                      .getElementsByTagNameNS ("*", "BusinessInformation")
+                                                      .item (0);
+    return new PDBusinessInformationMarshaller ().read (eBusinessInfo);
+  }
+
+  private static double _benchmarkMicros (@Nonnull final ExtensionType aExtension,
+                                          @Nonnull final Function <ExtensionType, PDBusinessInformationType> aExtractor,
+                                          final int nRuns)
+  {
+    // Warm up
+    for (int i = 0; i < nRuns / 10; ++i)
+      if (aExtractor.apply (aExtension) == null)
+        throw new IllegalStateException ("Failed to extract business information");
+
+    final StopWatch aSW = StopWatch.createdStarted ();
+    for (int i = 0; i < nRuns; ++i)
+      aExtractor.apply (aExtension);
+    return aSW.stopAndGetNanos () / 1000d / nRuns;
+  }
+
+  public static void main (final String [] args) throws SAXException
+  {
+    final int nRuns = args.length > 0 ? Integer.parseInt (args[0]) : 20000;
+
+    final Document aDoc = DOMReader.readXMLDOM (new ClassPathResource ("smp-extension-test1.xml"));
+    final ExtensionType aExtension = new ExtensionType ();
+    aExtension.setAny (aDoc.getDocumentElement ());
+
+    s_aLogger.info (String.format (Locale.US,
+                                   "micro DOM + string=%8.1f us; DOM new marshaller=%8.1f us; DOM validating=%8.1f us; DOM non-validating=%8.1f us",
+                                   Double.valueOf (_benchmarkMicros (aExtension,
+                                                                     SMPBusinessInformationProviderBenchmark::_extractViaMicroDOM,
+                                                                     nRuns)),
+                                   Double.valueOf (_benchmarkMicros (aExtension,
+                                                                     SMPBusinessInformationProviderBenchmark::_extractWithNewMarshaller,
+                                                                     nRuns)),
+                                   Double.valueOf (_benchmarkMicros (aExtension,
+                                                                     x -> SMPBusinessInformationProvider.extractBusinessInformation (x,
+                                                                                                                                     true),
+                                                                     nRuns)),
+                                   Double.valueOf (_benchmarkMicros (aExtension,
+                                                                     x -> SMPBusinessInformationProvider.extractBusinessInformation (x,
+                                                                                                                                     false),
+                                                                     nRuns))));
+  }
+}
@@ -1,11 +1,22 @@
 package com.helger.pd.indexer.mgr;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import javax.annotation.Nonnull;
 
 import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
 
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.xml.serialize.read.DOMReader;
+import com.helger.pd.businessinformation.PDBusinessInformationType;
 import com.helger.pd.businessinformation.PDExtendedBusinessInformation;
 import com.helger.peppol.identifier.participant.SimpleParticipantIdentifier;
+import com.helger.peppol.smp.ExtensionType;
 
 /**
  * Test class for class {@link SMPBusinessInformationProvider}.
@@ -14,6 +25,41 @@ import com.helger.peppol.identifier.participant.SimpleParticipantIdentifier;
  */
 public final class SMPBusinessInformationProviderTest
 {
+  @Nonnull
+  private static ExtensionType _readExtension () throws SAXException
+  {
+    final Document aDoc = DOMReader.readXMLDOM (new ClassPathResource ("smp-extension-test1.xml"));
+    assertNotNull (aDoc);
+    final ExtensionType aExtension = new ExtensionType ();
+    aExtension.setAny (aDoc.getDocumentElement ());
+    return aExtension;
+  }
+
+  @Test
+  public void testExtractBusinessInformation () throws SAXException
+  {
+    for (final boolean bValidate : new boolean [] { true, false })
+    {
+      final PDBusinessInformationType aBI = SMPBusinessInformationProvider.extractBusinessInformation (_readExtension (),
+                                                                                                       bValidate);
+      assertNotNull (aBI);
+      assertEquals (2, aBI.getEntityCount ());
+      assertEquals ("Austrian Federal Government", aBI.getEntityAtIndex (0).getName ());
+      assertEquals (1, aBI.getEntityAtIndex (0).getBusinessContactCount ());
+      assertEquals ("1020", aBI.getEntityAtIndex (1).getIdentifierAtIndex (0).getValue ());
+    }
+
+    // Missing required name - only detected with validation
+    final ExtensionType aExtension = _readExtension ();
+    final Element eName = (Element) aExtension.getAny ().getElementsByTagNameNS ("*", "Name").item (0);
+    eName.getParentNode ().removeChild (eName);
+    assertNull (SMPBusinessInformationProvider.extractBusinessInformation (aExtension, true));
+    assertNotNull (SMPBusinessInformationProvider.extractBusinessInformation (aExtension, false));
+
+    assertNull (SMPBusinessInformationProvider.extractBusinessInformation (null, true));
+    assertNull (SMPBusinessInformationProvider.extractBusinessInformation (new ExtensionType (), true));
+  }
+
   @Test
   public void testFetch ()
   {
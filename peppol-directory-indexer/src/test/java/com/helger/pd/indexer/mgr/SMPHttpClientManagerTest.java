@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.mgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.helger.peppol.identifier.participant.SimpleParticipantIdentifier;
+import com.helger.peppol.smp.ServiceGroupType;
+import com.helger.peppol.smpclient.SMPClientReadOnly;
+import com.helger.peppol.smpclient.exception.SMPClientException;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test class for class {@link SMPHttpClientManager}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPHttpClientManagerTest
+{
+  private static final String SERVICE_GROUP = "<ServiceGroup xmlns=\"http://busdox.org/serviceMetadata/publishing/1.0/\" xmlns:ids=\"http://busdox.org/transport/identifiers/1.0/\">" +
+                                              "<ids:ParticipantIdentifier scheme=\"iso6523-actorid-upis\">0088:test</ids:ParticipantIdentifier>" +
+                                              "<ServiceMetadataReferenceCollection />" +
+                                              "</ServiceGroup>";
+
+  @Test
+  public void testConnectionReuse () throws Exception
+  {
+    final byte [] aResponse = SERVICE_GROUP.getBytes (StandardCharsets.UTF_8);
+    final HttpServer aServer = HttpServer.create (new InetSocketAddress ("localhost", 0), 0);
+    aServer.createContext ("/", aExchange -> {
+      aExchange.getResponseHeaders ().add ("Content-Type", "text/xml");
+      aExchange.sendResponseHeaders (200, aResponse.length);
+      try (final OutputStream aOS = aExchange.getResponseBody ())
+      {
+        aOS.write (aResponse);
+      }
+    });
+    aServer.start ();
+    try
+    {
+      final SimpleParticipantIdentifier aParticipantID = SimpleParticipantIdentifier.createWithDefaultScheme ("0088:test");
+      final URI aSMPHost = new URI ("http://localhost:" + aServer.getAddress ().getPort ());
+      try (final SMPHttpClientManager aMgr = new SMPHttpClientManager (1000, 5000, 1000, 2, 10, 30000))
+      {
+        assertNull (aMgr.getPoolStats ());
+
+        final long nRequestsBefore = SMPHttpClientManager.getRequestCount ();
+        final long nConnectionsBefore = SMPHttpClientManager.getConnectionCount ();
+        for (int i = 0; i < 5; ++i)
+        {
+          // A new SMP client per lookup as in the indexer
+          final SMPClientReadOnly aSMPClient = aMgr.createSMPClient (aSMPHost);
+          final ServiceGroupType aServiceGroup = aSMPClient.getServiceGroup (aParticipantID);
+          assertNotNull (aServiceGroup);
+          assertEquals ("0088:test", aServiceGroup.getParticipantIdentifier ().getValue ());
+        }
+        assertEquals (5, SMPHttpClientManager.getRequestCount () - nRequestsBefore);
+        // All lookups used the same connection
+        assertEquals (1, SMPHttpClientManager.getConnectionCount () - nConnectionsBefore);
+        assertTrue (SMPHttpClientManager.getConnectionReuseRatio () > 0);
+        assertEquals (1, aMgr.getPoolStats ().getAvailable ());
+        assertEquals (0, aMgr.getPoolStats ().getLeased ());
+
+        aMgr.close ();
+        try
+        {
+          aMgr.createSMPClient (aSMPHost).getServiceGroup (aParticipantID);
+          fail ();
+        }
+        catch (final SMPClientException ex)
+        {
+          // expected - already closed
+        }
+      }
+    }
+    finally
+    {
+      aServer.stop (0);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2015 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.pd.indexer.storage;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import javax.annotation.Nonnull;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.WildcardQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.timing.StopWatch;
+import com.helger.pd.indexer.PDBenchmarkHelper;
+import com.helger.pd.indexer.PYPIndexerTestRule;
+import com.helger.pd.indexer.lucene.PDLucene;
+
+/**
+ * Benchmark comparing the latency of the previous leading wildcard queries
+ * with the n-gram based substring queries created by {@link PDQueryManager}.
+ * Run it manually via the main method. The optional first argument is the
+ * number of entities to index (defaults to 1 million).
+ *
+ * @author Philip Helger
+ */
+public final class PDQueryManagerBenchmark
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (PDQueryManagerBenchmark.class);
+  private static final String [] QUERIES = { "company", "ompan", "42", "vat4242", "harli", "alpha 77", "participant12345" };
+  private static final int WARMUP_RUNS = 10;
+  private static final int RUNS = 50;
+
+  private PDQueryManagerBenchmark ()
+  {}
+
+  /**
+   * Create the query as it was created before the n-gram field was introduced.
+   */
+  @Nonnull
+  private static Query _createWildcardQuery (@Nonnull final PDLucene aLucene, @Nonnull final String sQueryString)
+  {
+    final BooleanQuery.Builder aBuilder = new BooleanQuery.Builder ();
+    for (final String sPart : PDQueryManager.getSplitIntoTerms (aLucene, sQueryString))
+      aBuilder.add (new WildcardQuery (new Term (CPDStorage.FIELD_ALL_FIELDS, "*" + sPart + "*")), Occur.MUST);
+    return PDQueryManager.andNotDeleted (aBuilder.build ());
+  }
+
+  private static double _benchmarkMicros (@Nonnull final PDStorageManager aMgr, @Nonnull final Query aQuery) throws IOException
+  {
+    for (int i = 0; i < WARMUP_RUNS; ++i)
+      aMgr.searchPage (aQuery, null, 20);
+
+    final StopWatch aSW = StopWatch.createdStarted ();
+    for (int i = 0; i < RUNS; ++i)
+      aMgr.searchPage (aQuery, null, 20);
+    return aSW.stopAndGetNanos () / 1000d / RUNS;
+  }
+
+  public static void main (final String [] args) throws IOException
+  {
+    final int nEntities = args.length > 0 ? Integer.parseInt (args[0]) : 1000000;
+
+    final PYPIndexerTestRule aRule = new PYPIndexerTestRule ();
+    aRule.before ();
+    try (final PDLucene aLucene = new PDLucene (); final PDStorageManager aMgr = new PDStorageManager (aLucene))
+    {
+      final StopWatch aIndexSW = StopWatch.createdStarted ();
+      PDBenchmarkHelper.indexSyntheticParticipants (aMgr, nEntities / PDBenchmarkHelper.ENTITIES_PER_PARTICIPANT);
+      aLucene.waitForPendingChanges ();
+      s_aLogger.info ("Indexed " + nEntities + " entities in " + aIndexSW.stopAndGetMillis () + " ms");
+
+      for (final String sQuery : QUERIES)
+      {
+        final Query aWildcardQuery = _createWildcardQuery (aLucene, sQuery);
+        final Query aNGramQuery = PDQueryManager.convertQueryStringToLuceneQuery (aLucene, sQuery);
+        final int nWildcardHits = aMgr.searchPage (aWildcardQuery, null, 1).getTotalHits ();
+        final int nNGramHits = aMgr.searchPage (aNGramQuery, null, 1).getTotalHits ();
+        s_aLogger.info (String.format (Locale.US,
+                                       "%-18s wildcard=%10.1f us (%7d hits); ngram=%10.1f us (%7d hits)",
+                                       "'" + sQuery + "'",
+                                       Double.valueOf (_benchmarkMicros (aMgr, aWildcardQuery)),
+                                       Integer.valueOf (nWildcardHits),
+                                       Double.valueOf (_benchmarkMicros (aMgr, aNGramQuery)),
+                                       Integer.valueOf (nNGramHits)));
+      }
+    }
+    finally
+    {
+      aRule.after ();
+    }
+  }
+}
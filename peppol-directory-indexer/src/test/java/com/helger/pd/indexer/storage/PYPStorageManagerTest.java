@@ -3,17 +3,36 @@ package com.helger.pd.indexer.storage;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.joda.time.LocalDateTime;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestRule;
 
 import com.helger.commons.collection.CollectionHelper;
+import com.helger.commons.mock.CommonsTestHelper;
 import com.helger.datetime.PDTFactory;
 import com.helger.pd.businessinformation.PDBusinessInformationType;
 import com.helger.pd.businessinformation.PDEntityType;
@@ -77,14 +96,88 @@ public final class PYPStorageManagerTest
     return new PDExtendedBusinessInformation (aBI, CollectionHelper.newList (EPredefinedDocumentTypeIdentifier.INVOICE_T010_BIS5A_V20));
   }
 
+  @Nonnull
+  private static List <SimpleParticipantIdentifier> _createParticipantIDs (@Nonnull final String sPrefix,
+                                                                          final int nCount)
+  {
+    final List <SimpleParticipantIdentifier> ret = new ArrayList <> ();
+    for (int i = 0; i < nCount; ++i)
+      ret.add (SimpleParticipantIdentifier.createWithDefaultScheme ("0088:" + sPrefix + i));
+    return ret;
+  }
+
+  /**
+   * @return A query matching all documents of the provided participants.
+   */
+  @Nonnull
+  private static Query _createParticipantQuery (@Nonnull final List <SimpleParticipantIdentifier> aParticipantIDs)
+  {
+    final BooleanQuery.Builder aBuilder = new BooleanQuery.Builder ();
+    for (final SimpleParticipantIdentifier aParticipantID : aParticipantIDs)
+      aBuilder.add (new TermQuery (new Term (CPDStorage.FIELD_PARTICIPANTID, aParticipantID.getURIEncoded ())),
+                    Occur.SHOULD);
+    return aBuilder.build ();
+  }
+
+  /**
+   * Mock participants that are indexed upon construction and deleted again
+   * upon close.
+   */
+  private static final class MockParticipants implements AutoCloseable
+  {
+    private final PDStorageManager m_aMgr;
+    private final PDDocumentMetaData m_aMetaData = _createMockMetaData ();
+    private final List <SimpleParticipantIdentifier> m_aParticipantIDs;
+    private final Query m_aQuery;
+
+    MockParticipants (@Nonnull final PDLucene aLucene,
+                      @Nonnull final PDStorageManager aMgr,
+                      @Nonnull final String sPrefix,
+                      final int nCount) throws IOException
+    {
+      m_aMgr = aMgr;
+      m_aParticipantIDs = _createParticipantIDs (sPrefix, nCount);
+      m_aQuery = _createParticipantQuery (m_aParticipantIDs);
+      for (final SimpleParticipantIdentifier aParticipantID : m_aParticipantIDs)
+        aMgr.createOrUpdateEntry (aParticipantID, _createMockBI (aParticipantID), m_aMetaData);
+      aLucene.waitForPendingChanges ();
+    }
+
+    @Nonnull
+    PDDocumentMetaData getMetaData ()
+    {
+      return m_aMetaData;
+    }
+
+    @Nonnull
+    List <SimpleParticipantIdentifier> getParticipantIDs ()
+    {
+      return m_aParticipantIDs;
+    }
+
+    @Nonnull
+    Query getQuery ()
+    {
+      return m_aQuery;
+    }
+
+    public void close () throws IOException
+    {
+      // Finally delete the entries again
+      for (final SimpleParticipantIdentifier aParticipantID : m_aParticipantIDs)
+        m_aMgr.deleteEntry (aParticipantID, m_aMetaData);
+    }
+  }
+
   @Test
   public void testGetAllDocumentsOfParticipant () throws IOException
   {
     final SimpleParticipantIdentifier aParticipantID = SimpleParticipantIdentifier.createWithDefaultScheme ("0088:test");
-    try (PDStorageManager aMgr = new PDStorageManager (new PDLucene ()))
+    try (final PDLucene aLucene = new PDLucene (); final PDStorageManager aMgr = new PDStorageManager (aLucene))
     {
       final PDDocumentMetaData aMetaData = _createMockMetaData ();
       aMgr.createOrUpdateEntry (aParticipantID, _createMockBI (aParticipantID), aMetaData);
+      aLucene.waitForPendingChanges ();
       try
       {
         final List <PDStoredDocument> aDocs = aMgr.getAllDocumentsOfParticipant (aParticipantID);
@@ -116,10 +209,11 @@ public final class PYPStorageManagerTest
   public void testGetAllDocumentsOfCountryCode () throws IOException
   {
     final SimpleParticipantIdentifier aParticipantID = SimpleParticipantIdentifier.createWithDefaultScheme ("0088:test");
-    try (PDStorageManager aMgr = new PDStorageManager (new PDLucene ()))
+    try (final PDLucene aLucene = new PDLucene (); final PDStorageManager aMgr = new PDStorageManager (aLucene))
     {
       final PDDocumentMetaData aMetaData = _createMockMetaData ();
       aMgr.createOrUpdateEntry (aParticipantID, _createMockBI (aParticipantID), aMetaData);
+      aLucene.waitForPendingChanges ();
       try
       {
         // No country - no fields
@@ -142,4 +236,434 @@ public final class PYPStorageManagerTest
       }
     }
   }
+
+  @Test
+  public void testSearchConcurrentToIndexing () throws IOException
+  {
+    final SimpleParticipantIdentifier aParticipantID = SimpleParticipantIdentifier.createWithDefaultScheme ("0088:test");
+    try (final PDLucene aLucene = new PDLucene (); final PDStorageManager aMgr = new PDStorageManager (aLucene))
+    {
+      final PDDocumentMetaData aMetaData = _createMockMetaData ();
+      aMgr.createOrUpdateEntry (aParticipantID, _createMockBI (aParticipantID), aMetaData);
+      aLucene.waitForPendingChanges ();
+      try
+      {
+        final AtomicInteger aIndex = new AtomicInteger (0);
+        CommonsTestHelper.testInParallel (20, (Runnable) () -> {
+          final int nIndex = aIndex.getAndIncrement ();
+          try
+          {
+            if ((nIndex % 2) == 0)
+            {
+              // Write
+              final SimpleParticipantIdentifier aPI = SimpleParticipantIdentifier.createWithDefaultScheme ("0088:parallel" +
+                                                                                                          nIndex);
+              aMgr.createOrUpdateEntry (aPI, _createMockBI (aPI), aMetaData);
+            }
+            else
+            {
+              // Read
+              assertTrue (aMgr.containsEntry (aParticipantID));
+              assertEquals (2, aMgr.getAllDocumentsOfParticipant (aParticipantID).size ());
+            }
+          }
+          catch (final IOException ex)
+          {
+            throw new IllegalStateException (ex);
+          }
+        });
+      }
+      finally
+      {
+        // Finally delete the entry again
+        aMgr.deleteEntry (aParticipantID, aMetaData);
+      }
+    }
+  }
+
+  @Test
+  public void testSearchPage () throws IOException
+  {
+    try (final PDLucene aLucene = new PDLucene ();
+        final PDStorageManager aMgr = new PDStorageManager (aLucene);
+        final MockParticipants aMock = new MockParticipants (aLucene, aMgr, "page", 3))
+    {
+      final Query aQuery = aMock.getQuery ();
+      final Set <String> aFoundParticipantIDs = new HashSet <> ();
+      String sCursor = null;
+      int nPages = 0;
+      int nDocs = 0;
+      do
+      {
+        final PDSearchResultPage aPage = aMgr.searchPage (aQuery, sCursor, 4);
+        assertEquals (6, aPage.getTotalHits ());
+        assertTrue (aPage.getDocumentCount () <= 4);
+        assertEquals (nDocs, aPage.getStartOffset ());
+        for (final PDStoredDocument aDoc : aPage.getAllDocuments ())
+          aFoundParticipantIDs.add (aDoc.getParticipantID ());
+        nDocs += aPage.getDocumentCount ();
+        sCursor = aPage.getNextCursor ();
+        ++nPages;
+      } while (sCursor != null);
+
+      assertEquals (2, nPages);
+      assertEquals (6, nDocs);
+      assertEquals (3, aFoundParticipantIDs.size ());
+
+      // Invalid cursors start from the beginning
+      assertEquals (4, aMgr.searchPage (aQuery, "garbage", 4).getDocumentCount ());
+    }
+  }
+
+  @Test
+  public void testSearchParticipantPage () throws IOException
+  {
+    try (final PDLucene aLucene = new PDLucene ();
+        final PDStorageManager aMgr = new PDStorageManager (aLucene);
+        final MockParticipants aMock = new MockParticipants (aLucene, aMgr, "group", 3))
+    {
+      final Query aQuery = aMock.getQuery ();
+
+      // First page
+      PDSearchResultPage aPage = aMgr.searchParticipantPage (aQuery, null, 2);
+      assertEquals (0, aPage.getStartOffset ());
+      assertEquals (3, aPage.getTotalHits ());
+      assertEquals (4, aPage.getDocumentCount ());
+      final Map <String, List <PDStoredDocument>> aGrouped = PDStorageManager.getGroupedByParticipantID (aPage.getAllDocuments ());
+      assertEquals (2, aGrouped.size ());
+      for (final List <PDStoredDocument> aDocs : aGrouped.values ())
+      {
+        assertEquals (2, aDocs.size ());
+        assertEquals ("AT", aDocs.get (0).getCountryCode ());
+        assertEquals ("NO", aDocs.get (1).getCountryCode ());
+      }
+      assertTrue (aPage.hasNextPage ());
+
+      // Second and last page
+      aPage = aMgr.searchParticipantPage (aQuery, aPage.getNextCursor (), 2);
+      assertEquals (2, aPage.getStartOffset ());
+      assertEquals (3, aPage.getTotalHits ());
+      assertEquals (2, aPage.getDocumentCount ());
+      final String sLastParticipantID = aPage.getAllDocuments ().get (0).getParticipantID ();
+      assertFalse (aGrouped.containsKey (sLastParticipantID));
+      assertFalse (aPage.hasNextPage ());
+    }
+  }
+
+  @Test
+  public void testSubstringQuery () throws IOException
+  {
+    final SimpleParticipantIdentifier aParticipantID = SimpleParticipantIdentifier.createWithDefaultScheme ("0088:test");
+    try (final PDLucene aLucene = new PDLucene (); final PDStorageManager aMgr = new PDStorageManager (aLucene))
+    {
+      final PDDocumentMetaData aMetaData = _createMockMetaData ();
+      final PDExtendedBusinessInformation aExtBI = _createMockBI (aParticipantID);
+      aExtBI.getBusinessInformation ().getEntity ().get (1).setName ("Supercalifragilistic");
+      aMgr.createOrUpdateEntry (aParticipantID, aExtBI, aMetaData);
+      aLucene.waitForPendingChanges ();
+      try
+      {
+        // Prefix of an n-gram
+        assertEquals (2, aMgr.getAllDocuments (PDQueryManager.convertQueryStringToLuceneQuery (aLucene, "o")).size ());
+        // Single n-gram
+        assertEquals (2, aMgr.getAllDocuments (PDQueryManager.convertQueryStringToLuceneQuery (aLucene, "ock")).size ());
+        assertEquals (1, aMgr.getAllDocuments (PDQueryManager.convertQueryStringToLuceneQuery (aLucene, "3456")).size ());
+        assertEquals (2, aMgr.getAllDocuments (PDQueryManager.convertQueryStringToLuceneQuery (aLucene, "purpose")).size ());
+        // Longer than the longest n-gram
+        assertEquals (1,
+                      aMgr.getAllDocuments (PDQueryManager.convertQueryStringToLuceneQuery (aLucene, "califragilis")).size ());
+        assertEquals (0,
+                      aMgr.getAllDocuments (PDQueryManager.convertQueryStringToLuceneQuery (aLucene, "califragilisx")).size ());
+        // Multiple terms
+        assertEquals (1, aMgr.getAllDocuments (PDQueryManager.convertQueryStringToLuceneQuery (aLucene, "ock rome")).size ());
+        assertEquals (0, aMgr.getAllDocuments (PDQueryManager.convertQueryStringToLuceneQuery (aLucene, "ock paris")).size ());
+      }
+      finally
+      {
+        // Finally delete the entry again
+        aMgr.deleteEntry (aParticipantID, aMetaData);
+      }
+    }
+  }
+
+  @Test
+  public void testFacetCounts () throws IOException
+  {
+    try (final PDLucene aLucene = new PDLucene ();
+        final PDStorageManager aMgr = new PDStorageManager (aLucene);
+        final MockParticipants aMock = new MockParticipants (aLucene, aMgr, "facet", 3))
+    {
+      final PDFacetCounts aCounts = aMgr.getFacetCounts (aMock.getQuery ());
+      assertEquals (6, aCounts.getTotalHits ());
+
+      final Map <String, Integer> aCountryCodes = aCounts.getAllCountryCodeCounts ();
+      assertEquals (2, aCountryCodes.size ());
+      assertEquals (Integer.valueOf (3), aCountryCodes.get ("AT"));
+      assertEquals (Integer.valueOf (3), aCountryCodes.get ("NO"));
+
+      final Map <String, Integer> aDocTypeIDs = aCounts.getAllDocumentTypeIDCounts ();
+      assertEquals (1, aDocTypeIDs.size ());
+      assertEquals (Integer.valueOf (6), CollectionHelper.getFirstElement (aDocTypeIDs.values ()));
+
+      // Restricted query
+      final String sFirstParticipantID = aMock.getParticipantIDs ().get (0).getURIEncoded ();
+      final PDFacetCounts aCountsAT = aMgr.getFacetCounts (new TermQuery (new Term (CPDStorage.FIELD_PARTICIPANTID,
+                                                                                     sFirstParticipantID)));
+      assertEquals (2, aCountsAT.getTotalHits ());
+      assertEquals (Integer.valueOf (1), aCountsAT.getAllCountryCodeCounts ().get ("AT"));
+    }
+  }
+
+  @Test
+  public void testCreateOrUpdateEntries () throws IOException
+  {
+    final List <SimpleParticipantIdentifier> aParticipantIDs = _createParticipantIDs ("bulk", 5);
+
+    try (final PDLucene aLucene = new PDLucene (); final PDStorageManager aMgr = new PDStorageManager (aLucene))
+    {
+      final PDDocumentMetaData aMetaData = _createMockMetaData ();
+      final List <PDIndexEntry> aEntries = new ArrayList <> ();
+      for (final SimpleParticipantIdentifier aParticipantID : aParticipantIDs)
+        aEntries.add (new PDIndexEntry (aParticipantID, _createMockBI (aParticipantID), aMetaData));
+      // Update an existing participant in the same batch - last one wins
+      final PDExtendedBusinessInformation aUpdatedBI = _createMockBI (aParticipantIDs.get (0));
+      aUpdatedBI.getBusinessInformation ().getEntity ().remove (1);
+      aEntries.add (new PDIndexEntry (aParticipantIDs.get (0), aUpdatedBI, aMetaData));
+
+      assertTrue (aMgr.createOrUpdateEntries (aEntries).isSuccess ());
+      aLucene.waitForPendingChanges ();
+
+      assertEquals (1, aMgr.getAllDocumentsOfParticipant (aParticipantIDs.get (0)).size ());
+      for (int i = 1; i < aParticipantIDs.size (); ++i)
+        assertEquals (2, aMgr.getAllDocumentsOfParticipant (aParticipantIDs.get (i)).size ());
+      assertEquals (5, aMgr.getAllContainedParticipantIDs ().size ());
+
+      // The blocks are intact
+      assertEquals (5, aMgr.searchParticipantPage (_createParticipantQuery (aParticipantIDs), null, 10).getTotalHits ());
+
+      // Empty batch
+      assertTrue (aMgr.createOrUpdateEntries (new ArrayList <> ()).isSuccess ());
+    }
+  }
+
+  @Test
+  public void testCreateOrUpdateEntriesUnchanged () throws IOException
+  {
+    final SimpleParticipantIdentifier aParticipantID = SimpleParticipantIdentifier.createWithDefaultScheme ("0088:unchanged");
+    try (final PDLucene aLucene = new PDLucene (); final PDStorageManager aMgr = new PDStorageManager (aLucene))
+    {
+      final PDDocumentMetaData aMetaData = _createMockMetaData ();
+      assertTrue (aMgr.createOrUpdateEntries (CollectionHelper.newList (new PDIndexEntry (aParticipantID,
+                                                                                          _createMockBI (aParticipantID),
+                                                                                          aMetaData)))
+                      .isSuccess ());
+      aLucene.waitForPendingChanges ();
+      assertEquals (2, aMgr.getAllDocumentsOfParticipant (aParticipantID).size ());
+
+      // Same content with a different order of the document types
+      final PDExtendedBusinessInformation aSameBI = _createMockBI (aParticipantID);
+      final PDExtendedBusinessInformation aSameBI2 = new PDExtendedBusinessInformation (aSameBI.getBusinessInformation (),
+                                                                                        CollectionHelper.newList (EPredefinedDocumentTypeIdentifier.INVOICE_T010_BIS5A_V20,
+                                                                                                                  EPredefinedDocumentTypeIdentifier.INVOICE_T010_BIS5A_V20));
+      assertEquals (aSameBI.getContentHash (), aSameBI2.getContentHash ());
+
+      // The documents are not rewritten
+      final double dRatioBefore = PDStorageManager.getUnchangedRatio ();
+      assertTrue (aMgr.createOrUpdateEntries (CollectionHelper.newList (new PDIndexEntry (aParticipantID,
+                                                                                          aSameBI2,
+                                                                                          new PDDocumentMetaData (PDTFactory.getCurrentLocalDateTime (),
+                                                                                                                  "other",
+                                                                                                                  "localhost"))))
+                      .isSuccess ());
+      aLucene.waitForPendingChanges ();
+      assertEquals ("junittest", aMgr.getAllDocumentsOfParticipant (aParticipantID).get (0).getMetaData ().getOwnerID ());
+      assertTrue (PDStorageManager.getUnchangedRatio () > dRatioBefore);
+
+      // Changed content is written
+      final PDExtendedBusinessInformation aChangedBI = _createMockBI (aParticipantID);
+      aChangedBI.getBusinessInformation ().getEntity ().get (0).setName ("Changed name");
+      assertFalse (aChangedBI.getContentHash ().equals (aSameBI.getContentHash ()));
+      assertTrue (aMgr.createOrUpdateEntries (CollectionHelper.newList (new PDIndexEntry (aParticipantID,
+                                                                                          aChangedBI,
+                                                                                          aMetaData)))
+                      .isSuccess ());
+      aLucene.waitForPendingChanges ();
+      assertEquals ("Changed name", aMgr.getAllDocumentsOfParticipant (aParticipantID).get (0).getName ());
+
+      // A deleted participant is written again even if unchanged
+      aMgr.deleteEntry (aParticipantID, aMetaData);
+      assertTrue (aMgr.createOrUpdateEntries (CollectionHelper.newList (new PDIndexEntry (aParticipantID,
+                                                                                          aChangedBI,
+                                                                                          aMetaData)))
+                      .isSuccess ());
+      aLucene.waitForPendingChanges ();
+      assertTrue (aMgr.containsEntry (aParticipantID));
+    }
+  }
+
+  @Test
+  public void testDeleteEntry () throws IOException
+  {
+    final SimpleParticipantIdentifier aParticipantID = SimpleParticipantIdentifier.createWithDefaultScheme ("0088:deleted");
+    try (final PDLucene aLucene = new PDLucene (); final PDStorageManager aMgr = new PDStorageManager (aLucene))
+    {
+      final PDDocumentMetaData aMetaData = _createMockMetaData ();
+      aMgr.createOrUpdateEntry (aParticipantID, _createMockBI (aParticipantID), aMetaData);
+      aLucene.waitForPendingChanges ();
+      assertTrue (aMgr.containsEntry (aParticipantID));
+
+      // Soft delete
+      aMgr.deleteEntry (aParticipantID, aMetaData);
+      aLucene.waitForPendingChanges ();
+      assertFalse (aMgr.containsEntry (aParticipantID));
+      List <PDStoredDocument> aDocs = aMgr.getAllDocumentsOfParticipant (aParticipantID);
+      assertEquals (2, aDocs.size ());
+      for (final PDStoredDocument aDoc : aDocs)
+      {
+        assertTrue (aDoc.isDeleted ());
+        assertEquals (aMetaData.getCreationDT (), aDoc.getDeletionDT ());
+      }
+      // The deleted documents are still searchable as a block
+      assertEquals (1,
+                    aMgr.searchParticipantPage (new TermQuery (new Term (CPDStorage.FIELD_PARTICIPANTID,
+                                                                         aParticipantID.getURIEncoded ())),
+                                                null,
+                                                10)
+                        .getTotalHits ());
+
+      // Re-create
+      aMgr.createOrUpdateEntry (aParticipantID, _createMockBI (aParticipantID), aMetaData);
+      aLucene.waitForPendingChanges ();
+      assertTrue (aMgr.containsEntry (aParticipantID));
+      aDocs = aMgr.getAllDocumentsOfParticipant (aParticipantID);
+      assertEquals (2, aDocs.size ());
+      assertFalse (aDocs.get (0).isDeleted ());
+    }
+  }
+
+  @Test
+  public void testPurgeDeletedEntries () throws IOException
+  {
+    final SimpleParticipantIdentifier aOldID = SimpleParticipantIdentifier.createWithDefaultScheme ("0088:purgeold");
+    final SimpleParticipantIdentifier aNewID = SimpleParticipantIdentifier.createWithDefaultScheme ("0088:purgenew");
+    final SimpleParticipantIdentifier aLiveID = SimpleParticipantIdentifier.createWithDefaultScheme ("0088:purgelive");
+    try (final PDLucene aLucene = new PDLucene (); final PDStorageManager aMgr = new PDStorageManager (aLucene))
+    {
+      final PDDocumentMetaData aMetaData = _createMockMetaData ();
+      for (final SimpleParticipantIdentifier aParticipantID : new SimpleParticipantIdentifier [] { aOldID,
+                                                                                                   aNewID,
+                                                                                                   aLiveID })
+        aMgr.createOrUpdateEntry (aParticipantID, _createMockBI (aParticipantID), aMetaData);
+
+      final LocalDateTime aNow = PDTFactory.getCurrentLocalDateTime ();
+      aMgr.deleteEntry (aOldID, new PDDocumentMetaData (aNow.minusDays (10), "junittest", "localhost"));
+      aMgr.deleteEntry (aNewID, new PDDocumentMetaData (aNow.minusDays (1), "junittest", "localhost"));
+
+      final PDPurgeResult aResult = aMgr.purgeDeletedEntries (aNow.minusDays (5));
+      assertEquals (2, aResult.getPurgedDocumentCount ());
+      assertTrue (aResult.getReclaimedBytes () >= 0);
+      aLucene.waitForPendingChanges ();
+
+      assertEquals (0, aMgr.getAllDocumentsOfParticipant (aOldID).size ());
+      assertEquals (2, aMgr.getAllDocumentsOfParticipant (aNewID).size ());
+      assertTrue (aMgr.containsEntry (aLiveID));
+
+      // Nothing left to purge - the index is neither merged nor committed
+      final long nCommitGeneration = aLucene.getLastCommitGeneration ();
+      final PDPurgeResult aEmptyResult = aMgr.purgeDeletedEntries (aNow.minusDays (5));
+      assertEquals (0, aEmptyResult.getPurgedDocumentCount ());
+      assertEquals (0, aEmptyResult.getReclaimedBytes ());
+      assertEquals (nCommitGeneration, aLucene.getLastCommitGeneration ());
+    }
+  }
+
+  @Test
+  public void testGetContainedParticipantIDs () throws IOException
+  {
+    try (final PDLucene aLucene = new PDLucene ();
+        final PDStorageManager aMgr = new PDStorageManager (aLucene);
+        final MockParticipants aMock = new MockParticipants (aLucene, aMgr, "contained", 4))
+    {
+      final List <SimpleParticipantIdentifier> aParticipantIDs = aMock.getParticipantIDs ();
+      // Update one participant so that it has deleted Lucene documents
+      aMgr.createOrUpdateEntry (aParticipantIDs.get (2), _createMockBI (aParticipantIDs.get (2)), aMock.getMetaData ());
+      // Mark one participant as deleted
+      aMgr.deleteEntry (aParticipantIDs.get (1), aMock.getMetaData ());
+      aLucene.waitForPendingChanges ();
+      // The updated participant is contained in more than one segment
+      assertTrue (aLucene.callWithSearcher (aSearcher -> Integer.valueOf (aSearcher.getIndexReader ().leaves ().size ()))
+                         .intValue () > 1);
+
+      final Set <String> aAll = aMgr.getAllContainedParticipantIDs ();
+      assertEquals (3, aAll.size ());
+      assertFalse (aAll.contains (aParticipantIDs.get (1).getURIEncoded ()));
+
+      // Page through the IDs
+      final List <String> aPaged = new ArrayList <> ();
+      List <String> aPage = aMgr.getContainedParticipantIDs (null, 2);
+      while (!aPage.isEmpty ())
+      {
+        assertTrue (aPage.size () <= 2);
+        aPaged.addAll (aPage);
+        aPage = aMgr.getContainedParticipantIDs (CollectionHelper.getLastElement (aPage), 2);
+      }
+      assertEquals (new ArrayList <> (aAll), aPaged);
+
+      // Start after the deleted ID
+      assertEquals (aPaged.subList (1, 3),
+                    aMgr.getContainedParticipantIDs (aParticipantIDs.get (1).getURIEncoded (), 10));
+    }
+  }
+
+  @Test
+  public void testUpgradeIndex () throws IOException
+  {
+    final SimpleParticipantIdentifier aParticipantID = SimpleParticipantIdentifier.createWithDefaultScheme ("0088:legacy");
+    final SimpleParticipantIdentifier aDeletedParticipantID = SimpleParticipantIdentifier.createWithDefaultScheme ("0088:legacydeleted");
+    try (final PDLucene aLucene = new PDLucene (); final PDStorageManager aMgr = new PDStorageManager (aLucene))
+    {
+      // Document as created by the previous index format version
+      final Document aDoc = new Document ();
+      aDoc.add (new StringField (CPDStorage.FIELD_PARTICIPANTID, aParticipantID.getURIEncoded (), Store.YES));
+      aDoc.add (new StringField (CPDStorage.FIELD_COUNTRY_CODE, "AT", Store.YES));
+      aDoc.add (new TextField (CPDStorage.FIELD_NAME, "Legacy company", Store.YES));
+      aDoc.add (new TextField (CPDStorage.FIELD_ALL_FIELDS, "AT Legacy company", Store.NO));
+      aDoc.add (new LongField (CPDStorage.FIELD_METADATA_CREATIONDT, System.currentTimeMillis (), Store.YES));
+      aDoc.add (new StringField (CPDStorage.FIELD_METADATA_OWNERID, "junittest", Store.YES));
+      aDoc.add (new StringField (CPDStorage.FIELD_METADATA_REQUESTING_HOST, "localhost", Store.YES));
+      aLucene.updateDocument (new Term (CPDStorage.FIELD_PARTICIPANTID, aParticipantID.getURIEncoded ()), aDoc);
+
+      // Deleted document as created by the previous index format version
+      final Document aDeletedDoc = new Document ();
+      aDeletedDoc.add (new StringField (CPDStorage.FIELD_PARTICIPANTID, aDeletedParticipantID.getURIEncoded (), Store.YES));
+      aDeletedDoc.add (new LongField (CPDStorage.FIELD_METADATA_CREATIONDT, System.currentTimeMillis (), Store.YES));
+      aDeletedDoc.add (new StringField (CPDStorage.FIELD_METADATA_OWNERID, "junittest", Store.YES));
+      aDeletedDoc.add (new StringField (CPDStorage.FIELD_METADATA_REQUESTING_HOST, "localhost", Store.YES));
+      aDeletedDoc.add (new IntField (CPDStorage.FIELD_DELETED, 1, Store.NO));
+      aLucene.updateDocument (new Term (CPDStorage.FIELD_PARTICIPANTID, aDeletedParticipantID.getURIEncoded ()),
+                              aDeletedDoc);
+      aLucene.waitForPendingChanges ();
+
+      final Query aQuery = PDQueryManager.convertQueryStringToLuceneQuery (aLucene, "egac");
+      assertEquals (0, aMgr.getAllDocuments (aQuery).size ());
+
+      assertEquals (2, aMgr.upgradeIndexIfNecessary ());
+      aLucene.waitForPendingChanges ();
+      assertEquals (CPDStorage.INDEX_VERSION, aLucene.getCommitUserData (CPDStorage.COMMIT_DATA_INDEX_VERSION));
+
+      final List <PDStoredDocument> aDocs = aMgr.getAllDocuments (aQuery);
+      assertEquals (1, aDocs.size ());
+      assertEquals ("Legacy company", aDocs.get (0).getName ());
+      assertEquals ("AT", aDocs.get (0).getCountryCode ());
+      assertEquals (Integer.valueOf (1), aMgr.getFacetCounts (aQuery).getAllCountryCodeCounts ().get ("AT"));
+
+      // Deleted state is retained
+      assertFalse (aMgr.containsEntry (aDeletedParticipantID));
+      assertTrue (aMgr.getAllDocumentsOfParticipant (aDeletedParticipantID).get (0).isDeleted ());
+      assertEquals (CollectionHelper.newSet (aParticipantID.getURIEncoded ()), aMgr.getAllContainedParticipantIDs ());
+
+      // Already upgraded
+      assertEquals (0, aMgr.upgradeIndexIfNecessary ());
+    }
+  }
 }
@@ -16,6 +16,8 @@
  */
 package com.helger.pd.publisher.app.pub.page;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -48,6 +50,7 @@ import com.helger.html.hc.html.textlevel.HCSpan;
 import com.helger.html.hc.impl.HCNodeList;
 import com.helger.pd.indexer.mgr.PDMetaManager;
 import com.helger.pd.indexer.storage.PDQueryManager;
+import com.helger.pd.indexer.storage.PDSearchResultPage;
 import com.helger.pd.indexer.storage.PDStorageManager;
 import com.helger.pd.indexer.storage.PDStoredDocument;
 import com.helger.pd.publisher.ui.AbstractAppWebPage;
@@ -78,6 +81,9 @@ public final class PagePublicSearch extends AbstractAppWebPage
   private static final Logger s_aLogger = LoggerFactory.getLogger (PagePublicSearch.class);
   private static final String FIELD_QUERY = "q";
   private static final String FIELD_PARTICIPANT_ID = "partid";
+  private static final String FIELD_CURSOR = "cursor";
+  /** The maximum number of matching participants to show on a single page */
+  private static final int RESULTS_PER_PAGE = 10;
 
   private static final ICSSClassProvider CSS_CLASS_BIG_QUERY_BOX = DefaultCSSClassProvider.create ("big-querybox");
   private static final ICSSClassProvider CSS_CLASS_BIG_QUERY_BUTTONS = DefaultCSSClassProvider.create ("big-querybuttons");
@@ -224,15 +230,29 @@ public final class PagePublicSearch extends AbstractAppWebPage
         // Build Lucene query
         final Query aLuceneQuery = PDQueryManager.convertQueryStringToLuceneQuery (PDMetaManager.getLucene (),
                                                                                     sQuery);
-        // Search all documents
-        final List <PDStoredDocument> aResultDocs = PDMetaManager.getStorageMgr ().getAllDocuments (aLuceneQuery);
+        // Search only the participants of the current page
+        final String sCursor = aWPEC.getAttributeAsString (FIELD_CURSOR);
+        PDSearchResultPage aResultPage;
+        try
+        {
+          aResultPage = PDMetaManager.getStorageMgr ().searchParticipantPage (aLuceneQuery, sCursor, RESULTS_PER_PAGE);
+        }
+        catch (final IOException ex)
+        {
+          s_aLogger.error ("Error searching for documents with query " + aLuceneQuery, ex);
+          aResultPage = new PDSearchResultPage (new ArrayList <> (), 0, 0, null);
+        }
 
-        s_aLogger.info ("  Result for " + aLuceneQuery + " are " + aResultDocs.size () + " documents");
+        s_aLogger.info ("  Result for " +
+                        aLuceneQuery +
+                        " are " +
+                        aResultPage.getTotalHits () +
+                        " participants; showing " +
+                        aResultPage.getDocumentCount () +
+                        " documents");
 
         // Group by participant ID
-        final Map <String, List <PDStoredDocument>> aGroupedDocs = PDStorageManager.getGroupedByParticipantID (aResultDocs);
-
-        final int nMaxResults = 10;
+        final Map <String, List <PDStoredDocument>> aGroupedDocs = PDStorageManager.getGroupedByParticipantID (aResultPage.getAllDocuments ());
 
         // Display results
         if (aGroupedDocs.isEmpty ())
@@ -241,7 +261,10 @@ public final class PagePublicSearch extends AbstractAppWebPage
         }
         else
         {
-          final HCOL aOL = new HCOL ().setStart (1);
+          aNodeList.addChild (new HCDiv ().addChild (aResultPage.getTotalHits () + " matching participants found"));
+
+          // Continue numbering across pages
+          final HCOL aOL = new HCOL ().setStart (aResultPage.getStartOffset () + 1);
           for (final Map.Entry <String, List <PDStoredDocument>> aEntry : aGroupedDocs.entrySet ())
           {
             final String sDocParticipantID = aEntry.getKey ();
@@ -293,12 +316,16 @@ public final class PagePublicSearch extends AbstractAppWebPage
             }
 
             aOL.addItem (aResultItem);
-
-            // Break at 10 results
-            if (aOL.getChildCount () >= nMaxResults)
-              break;
           }
           aNodeList.addChild (aOL);
+
+          if (aResultPage.hasNextPage ())
+            aNodeList.addChild (new BootstrapButton ().addChild ("More results")
+                                                      .setIcon (EDefaultIcon.NEXT)
+                                                      .setOnClick (aWPEC.getSelfHref ()
+                                                                        .add (FIELD_QUERY, sQuery)
+                                                                        .add (FIELD_CURSOR,
+                                                                              aResultPage.getNextCursor ())));
         }
       }
       else
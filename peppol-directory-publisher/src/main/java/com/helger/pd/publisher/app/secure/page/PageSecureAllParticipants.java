@@ -16,18 +16,27 @@
  */
 package com.helger.pd.publisher.app.secure.page;
 
+import java.util.List;
+
 import javax.annotation.Nonnull;
 
 import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.collection.CollectionHelper;
 import com.helger.html.hc.html.grouping.HCUL;
 import com.helger.html.hc.impl.HCNodeList;
 import com.helger.pd.indexer.mgr.PDMetaManager;
 import com.helger.pd.publisher.ui.AbstractAppWebPage;
 import com.helger.photon.bootstrap3.alert.BootstrapInfoBox;
+import com.helger.photon.bootstrap3.button.BootstrapButton;
+import com.helger.photon.uicore.icon.EDefaultIcon;
 import com.helger.photon.uicore.page.WebPageExecutionContext;
 
 public final class PageSecureAllParticipants extends AbstractAppWebPage
 {
+  private static final String FIELD_START_AFTER = "after";
+  /** The maximum number of participant IDs to show on a single page */
+  private static final int PARTICIPANTS_PER_PAGE = 500;
+
   public PageSecureAllParticipants (@Nonnull @Nonempty final String sID)
   {
     super (sID, "All participants");
@@ -38,12 +47,29 @@ public final class PageSecureAllParticipants extends AbstractAppWebPage
   {
     final HCNodeList aNodeList = aWPEC.getNodeList ();
 
+    final String sStartAfter = aWPEC.getAttributeAsString (FIELD_START_AFTER);
+    // Read one more to know whether there is a next page
+    final List <String> aParticipantIDs = PDMetaManager.getStorageMgr ()
+                                                       .getContainedParticipantIDs (sStartAfter,
+                                                                                    PARTICIPANTS_PER_PAGE + 1);
+    final boolean bHasNextPage = aParticipantIDs.size () > PARTICIPANTS_PER_PAGE;
+    if (bHasNextPage)
+      aParticipantIDs.remove (PARTICIPANTS_PER_PAGE);
+
     final HCUL aUL = new HCUL ();
-    for (final String sParticipantID : PDMetaManager.getStorageMgr ().getAllContainedParticipantIDs ())
+    for (final String sParticipantID : aParticipantIDs)
       aUL.addItem (sParticipantID);
 
     if (aUL.hasChildren ())
+    {
       aNodeList.addChild (aUL);
+      if (bHasNextPage)
+        aNodeList.addChild (new BootstrapButton ().addChild ("More participants")
+                                                  .setIcon (EDefaultIcon.NEXT)
+                                                  .setOnClick (aWPEC.getSelfHref ()
+                                                                    .add (FIELD_START_AFTER,
+                                                                          CollectionHelper.getLastElement (aParticipantIDs))));
+    }
     else
       aNodeList.addChild (new BootstrapInfoBox ().addChild ("No participant identifier is yet in the index"));
   }